@@ -0,0 +1,30 @@
+package TechFixer.TechFixer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings of the task archive, bound from the {@code techfixer.archive.*} properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "techfixer.archive")
+@Data
+public class ArchiveProperties {
+
+    // Si esta desactivado las tareas cerradas se quedan en las tablas de trabajo
+    private boolean enabled = true;
+
+    // Tiempo que tiene que pasar desde el cierre de una tarea para archivarla
+    private Duration age = Duration.ofDays(90);
+
+    // Tareas que se mueven en cada transaccion
+    private int batchSize = 500;
+
+    // Nombres de los estados que cierran una tarea: solo se archivan las tareas en alguno de ellos
+    private List<String> closedStates = List.of("Finalizado", "Anulado");
+
+}
@@ -0,0 +1,21 @@
+package TechFixer.TechFixer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settings of the authentication of API requests, bound from the {@code techfixer.auth.*} properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "techfixer.auth")
+@Data
+public class AuthProperties {
+
+    // Construir la autenticacion con los claims del token firmado, sin leer el usuario en cada peticion.
+    // Con false se vuelve a cargar el usuario de la base de datos como antes
+    private boolean claims = true;
+
+    // Tokens ya verificados que se guardan con sus claims hasta que caducan, ver VerifiedTokens
+    private long tokenCacheSize = 10_000;
+}
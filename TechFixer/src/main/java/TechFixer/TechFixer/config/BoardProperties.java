@@ -0,0 +1,25 @@
+package TechFixer.TechFixer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the in-memory pending boards, bound from the {@code techfixer.board.*} properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "techfixer.board")
+@Data
+public class BoardProperties {
+
+    // Cada cuanto se comparan los tableros en memoria con la base de datos (lo lee el @Scheduled de PendingBoard)
+    private Duration verifyInterval = Duration.ofMinutes(5);
+
+    // Encargados con el tablero en memoria como maximo; al pasarse se descartan los menos usados
+    private long maxOwners = 10_000;
+
+    // Un tablero que nadie pide en este tiempo se descarta y se vuelve a cargar la proxima vez
+    private Duration expireAfterAccess = Duration.ofHours(1);
+}
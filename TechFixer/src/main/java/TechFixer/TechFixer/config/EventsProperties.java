@@ -0,0 +1,29 @@
+package TechFixer.TechFixer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the task change stream ({@code /api/task/events}), bound from the {@code techfixer.events.*} properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "techfixer.events")
+@Data
+public class EventsProperties {
+
+    // Eventos pendientes de enviar por suscriptor; si se llena, el cliente es demasiado lento y se le desconecta
+    private int queueCapacity = 256;
+
+    // Hilos que envian los eventos a los suscriptores
+    private int senderThreads = 2;
+
+    // Tiempo maximo de una conexion, el cliente debe volver a conectarse al terminar
+    private Duration timeout = Duration.ofMinutes(30);
+
+    // Cada cuanto se envia un comentario para mantener viva la conexion
+    private Duration heartbeat = Duration.ofSeconds(25);
+
+}
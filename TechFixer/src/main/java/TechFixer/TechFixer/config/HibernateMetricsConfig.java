@@ -0,0 +1,22 @@
+package TechFixer.TechFixer.config;
+
+import io.micrometer.core.instrument.Tags;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.HibernateMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Publishes the Hibernate statistics as {@code hibernate.*} meters, among them the hits, misses and puts
+ * of every second-level cache region ({@code hibernate.second.level.cache.requests}, tagged by region)
+ * and of the query cache.
+ */
+@Configuration
+public class HibernateMetricsConfig {
+
+    @Bean
+    public HibernateMetrics hibernateMetrics(EntityManagerFactory emf){
+        return new HibernateMetrics(emf.unwrap(SessionFactory.class), "entityManagerFactory", Tags.empty());
+    }
+}
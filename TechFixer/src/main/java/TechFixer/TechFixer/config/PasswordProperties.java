@@ -0,0 +1,28 @@
+package TechFixer.TechFixer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the pool that hashes and verifies passwords, bound from the {@code techfixer.password.*} properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "techfixer.password")
+@Data
+public class PasswordProperties {
+
+    // Coste de BCrypt (log2 de las rondas). Si se cambia, cada usuario se vuelve a cifrar en su siguiente login
+    private int strength = 10;
+
+    // Hilos dedicados a BCrypt; con mas que nucleos solo se reparte la misma CPU
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    // Peticiones esperando un hilo libre; si se llena, las nuevas se rechazan con 503
+    private int queueCapacity = 64;
+
+    // Tiempo maximo que una peticion espera su resultado antes de responder con 503
+    private Duration timeout = Duration.ofSeconds(5);
+}
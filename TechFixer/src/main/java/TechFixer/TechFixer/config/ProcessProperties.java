@@ -0,0 +1,35 @@
+package TechFixer.TechFixer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the write-behind queue of new processes, bound from the {@code techfixer.process.*} properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "techfixer.process")
+@Data
+public class ProcessProperties {
+
+    // Si esta desactivado, /api/process/new guarda cada proceso en su propia transaccion como antes
+    private boolean writeBehind = true;
+
+    // Procesos aceptados pendientes de guardar; si se llena, las peticiones nuevas se rechazan con 503
+    private int queueCapacity = 10_000;
+
+    // Cada cuanto se guardan en BD los procesos pendientes
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    // Procesos como maximo por transaccion de guardado
+    private int flushSize = 500;
+
+    // Fichero donde se anota cada proceso aceptado antes de responder, para no perderlo si la aplicacion cae
+    private String journal = "./data/process-journal.ndjson";
+
+    // Forzar la escritura del diario a disco en cada proceso aceptado
+    private boolean journalSync = true;
+
+}
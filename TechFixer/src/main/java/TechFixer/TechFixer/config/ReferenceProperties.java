@@ -0,0 +1,29 @@
+package TechFixer.TechFixer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the in-memory cache of states, departments and roles, and of the pages of IDs of the tasks
+ * and users that belong to them, bound from the {@code techfixer.references.*} properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "techfixer.references")
+@Data
+public class ReferenceProperties {
+
+    // Elementos como maximo de cada tipo; son tablas pequeñas, el limite solo protege la memoria
+    private long maxSize = 1_000;
+
+    // Tiempo que se guarda cada elemento, por si la tabla se cambia sin pasar por los servicios
+    private Duration ttl = Duration.ofMinutes(10);
+
+    // IDs por pagina de las tareas o usuarios de un estado o departamento cuando el cliente no indica tamaño
+    private int pageSize = 500;
+
+    // Tamaño maximo que se acepta, las peticiones con uno mayor se recortan
+    private int maxPageSize = 5_000;
+}
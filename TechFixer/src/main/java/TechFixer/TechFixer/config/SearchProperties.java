@@ -0,0 +1,26 @@
+package TechFixer.TechFixer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of the full-text search over tasks and processes, bound from the {@code techfixer.search.*} properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "techfixer.search")
+@Data
+public class SearchProperties {
+
+    // Carpeta del indice en disco
+    private String indexDir = "./data/search";
+
+    // Tareas que se leen del indice en cada pagina antes de aplicar el filtro; si no quedan bastantes se lee la siguiente
+    private int maxHits = 1000;
+
+    // Cada cuanto se guardan en disco los cambios del indice; hasta entonces solo estan en memoria
+    private Duration commitInterval = Duration.ofSeconds(5);
+
+}
@@ -0,0 +1,36 @@
+package TechFixer.TechFixer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Tunable settings for the task endpoints, bound from the {@code techfixer.task.*} properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "techfixer.task")
+@Data
+public class TaskProperties {
+
+    // Tamaño de pagina por defecto cuando el cliente no indica ninguno
+    private int pageSize = 50;
+
+    // Tamaño maximo de pagina que admitimos
+    private int maxPageSize = 500;
+
+    // Filas que se exportan antes de vaciar el contexto de persistencia
+    private int exportBatchSize = 500;
+
+    // Numero maximo de tareas por peticion de carga masiva
+    private int bulkMaxSize = 5000;
+
+    // Versiones anteriores de tareas que se recuerdan para fusionar actualizaciones concurrentes
+    private int mergeHistorySize = 10_000;
+
+    // Tiempo que se guardan las tareas borradas para la sincronizacion incremental; un cliente que
+    // no se ha sincronizado en este tiempo tiene que recargarlo todo
+    private Duration tombstoneRetention = Duration.ofDays(30);
+
+}
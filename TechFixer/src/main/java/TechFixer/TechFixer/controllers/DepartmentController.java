@@ -3,13 +3,18 @@ package TechFixer.TechFixer.controllers;
 import TechFixer.TechFixer.dto.DepartmentDto;
 import TechFixer.TechFixer.exception.DepartmentAlreadyExistException;
 import TechFixer.TechFixer.exception.NotFoundDepartmentException;
+import TechFixer.TechFixer.services.ChangeCounters;
+import TechFixer.TechFixer.services.ChangeCounters.Resource;
 import TechFixer.TechFixer.services.DepartmentService;
 import lombok.Data;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.util.List;
 import java.util.NoSuchElementException;
 
 @RestController
@@ -19,6 +24,7 @@ import java.util.NoSuchElementException;
 public class DepartmentController {
 
     private final DepartmentService depService;
+    private final ChangeCounters changeCounters;
 
     /**
      * Creates a new department using the provided department data.
@@ -76,6 +82,32 @@ public class DepartmentController {
         }
     }
 
+    /**
+     * Replaces the users of a department with the given list in a single transaction. Only the users that
+     * join or leave the department are written, so re-organising a large department costs one query per
+     * batch of changed members instead of one save per user.
+     *
+     * @param dptId the unique identifier of the department.
+     * @param userIds the IDs of every user that must belong to the department; an empty list removes them all.
+     * @return a {@code ResponseEntity} containing:
+     *         - The number of users added and removed with {@code HttpStatus.OK}.
+     *         - An error message with {@code HttpStatus.BAD_REQUEST} if the list is not valid.
+     *         - An error message with {@code HttpStatus.NOT_FOUND} if the department or any user does not exist.
+     *         - An error message with {@code HttpStatus.CONFLICT} if any other exception occurs.
+     */
+    @PutMapping("/{dptId}/members")
+    public ResponseEntity<?> updateMembers(@PathVariable Long dptId, @RequestBody List<Long> userIds){
+        try {
+            return ResponseEntity.ok(depService.updateMembers(dptId, userIds));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Error al actualizar los usuarios del departamento");
+        }
+    }
+
     /**
      * Deletes a department identified by its unique ID. If the department does not exist,
      * or if the department has associated users, an appropriate exception is thrown, returning
@@ -103,16 +135,23 @@ public class DepartmentController {
     /**
      * Retrieves the details of a specific department by its unique identifier.
      * If the department exists, it returns the department details; otherwise, it returns an error response.
+     * The response carries an ETag; a request whose If-None-Match still matches is answered with
+     * {@code HttpStatus.NOT_MODIFIED} without reading the department.
      *
      * @param dptId the unique identifier of the department to retrieve. Must not be null.
+     * @param request the current request, used to check the If-None-Match header
      * @return a {@code ResponseEntity} containing the department details if found,
      *         or an error message with an appropriate HTTP status if the department is not found or an error occurs.
      */
     @GetMapping("/get/{dptId}")
-    public ResponseEntity<?> findeOne(@PathVariable Long dptId){
+    public ResponseEntity<?> findeOne(@PathVariable Long dptId, WebRequest request){
         try {
+            // Si el cliente ya tiene esta version, checkNotModified deja preparada la respuesta 304
+            String etag = changeCounters.etag(Resource.DEPARTMENTS, Resource.USERS, Resource.TASKS);
+            if (request.checkNotModified(etag)) return null;
+
             System.out.println("Obtenemos los datos del departamento: " + dptId);
-            return ResponseEntity.ok(depService.findById(dptId));
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(depService.findById(dptId));
         } catch (NoSuchElementException e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         } catch (Exception e) {
@@ -121,18 +160,93 @@ public class DepartmentController {
     }
 
     /**
-     * Retrieves a list of all departments.
+     * Retrieves a list of all departments. Like {@link #findeOne(Long, WebRequest)}, it answers
+     * {@code HttpStatus.NOT_MODIFIED} when the If-None-Match header still matches.
+     * With {@code summary=true} each department carries the number of its users and tasks instead of their
+     * IDs, which are then read page by page from {@link #findUserIds(Long, String, Integer, WebRequest)} and
+     * {@link #findTaskIds(Long, String, Integer, WebRequest)}.
      *
+     * @param summary whether to return the number of users and tasks of each department instead of their IDs
+     * @param request the current request, used to check the If-None-Match header
      * @return a {@code ResponseEntity} object containing a list of all departments if successful,
      *         or an error message with an appropriate HTTP status in case of failure.
      */
     @GetMapping("/getAll")
-    public ResponseEntity<?> findAllDepartment(){
+    public ResponseEntity<?> findAllDepartment(@RequestParam(defaultValue = "false") boolean summary, WebRequest request){
         try{
+            String etag = changeCounters.etag(Resource.DEPARTMENTS, Resource.USERS, Resource.TASKS);
+            if (request.checkNotModified(etag)) return null;
+
             System.out.println("Vamos a listar todos los departamentos: ");
-            return ResponseEntity.ok(depService.findAll());
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(summary ? depService.findSummaries() : depService.findAll());
         } catch (Exception e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener departamentos");
         }
     }
+
+    /**
+     * Retrieves one page of the IDs of the users of a department, in ascending order. The client walks
+     * through the pages sending back the {@code nextCursor} returned with the previous page.
+     *
+     * @param dptId the unique identifier of the department.
+     * @param cursor the cursor of the page to retrieve, omitted for the first page.
+     * @param size the number of IDs per page, omitted to use the configured default.
+     * @param request the current request, used to check the If-None-Match header
+     * @return a {@code ResponseEntity} containing the page of user IDs and the cursor of the next one,
+     *         {@code HttpStatus.NOT_MODIFIED} if the client already has the current page,
+     *         {@code HttpStatus.BAD_REQUEST} if the cursor or the size are not valid,
+     *         or {@code HttpStatus.NOT_FOUND} if the department does not exist or an error occurs.
+     */
+    @GetMapping("/{dptId}/users")
+    public ResponseEntity<?> findUserIds(@PathVariable Long dptId,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) Integer size,
+                                         WebRequest request){
+        try {
+            String etag = changeCounters.etag(Resource.DEPARTMENTS, Resource.USERS);
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+                    .body(depService.findUserIds(dptId, cursor, size));
+        } catch (NoSuchElementException e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener usuarios del departamento");
+        }
+    }
+
+    /**
+     * Retrieves one page of the IDs of the tasks of a department, in ascending order. Works like
+     * {@link #findUserIds(Long, String, Integer, WebRequest)}.
+     *
+     * @param dptId the unique identifier of the department.
+     * @param cursor the cursor of the page to retrieve, omitted for the first page.
+     * @param size the number of IDs per page, omitted to use the configured default.
+     * @param request the current request, used to check the If-None-Match header
+     * @return a {@code ResponseEntity} containing the page of task IDs and the cursor of the next one,
+     *         {@code HttpStatus.NOT_MODIFIED} if the client already has the current page,
+     *         {@code HttpStatus.BAD_REQUEST} if the cursor or the size are not valid,
+     *         or {@code HttpStatus.NOT_FOUND} if the department does not exist or an error occurs.
+     */
+    @GetMapping("/{dptId}/tasks")
+    public ResponseEntity<?> findTaskIds(@PathVariable Long dptId,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) Integer size,
+                                         WebRequest request){
+        try {
+            String etag = changeCounters.etag(Resource.DEPARTMENTS, Resource.TASKS);
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+                    .body(depService.findTaskIds(dptId, cursor, size));
+        } catch (NoSuchElementException e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener tareas del departamento");
+        }
+    }
 }
@@ -1,11 +1,19 @@
 package TechFixer.TechFixer.controllers;
 
+import TechFixer.TechFixer.config.ProcessProperties;
 import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.exception.ProcessQueueFullException;
+import TechFixer.TechFixer.services.ChangeCounters;
+import TechFixer.TechFixer.services.ChangeCounters.Resource;
+import TechFixer.TechFixer.services.ProcessQueue;
 import TechFixer.TechFixer.services.ProcessService;
 import lombok.Data;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.NoSuchElementException;
 
@@ -16,12 +24,35 @@ import java.util.NoSuchElementException;
 public class ProcessController {
 
     private final ProcessService processService;
+    private final ProcessQueue processQueue;
+    private final ProcessProperties processProperties;
+    private final ChangeCounters changeCounters;
 
+    /**
+     * Adds a process to a task. With the write-behind queue enabled the process is only checked and written
+     * to the journal, and it is saved a moment later together with other new processes.
+     *
+     * @param dto the process, with its author, task and description
+     * @return a ResponseEntity containing:
+     *         - An ACCEPTED status and the accepted process, still without ID, if the queue has taken it.
+     *           Its author already sees it in the detail of the task.
+     *         - An OK status and a success message if the process has been saved straight away.
+     *         - A SERVICE UNAVAILABLE status, with a Retry-After header, if too many processes are waiting to be saved.
+     *         - A NOT FOUND status and error message if the author or the task are missing or do not exist.
+     *         - A NOT FOUND status and a generic error message if any other exception occurs.
+     */
     @PostMapping("/new")
     public ResponseEntity<?> newProcess(@RequestBody ProcessDto dto){
         try{
+            if (processProperties.isWriteBehind()) {
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(processQueue.append(dto));
+            }
             processService.save(dto);
             return ResponseEntity.ok("Proceso creado correctamente");
+         }catch (ProcessQueueFullException e){
+            long retryAfter = Math.max(1, processProperties.getFlushInterval().toSeconds());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter)).body(e.getMessage());
          }catch (IllegalArgumentException | NoSuchElementException e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         }catch(Exception e){
@@ -30,19 +61,26 @@ public class ProcessController {
 
     }
 
+    // Las lecturas llevan ETag: si el cliente ya tiene esta version, checkNotModified deja preparada la respuesta 304
     @GetMapping("/getAll")
-    public ResponseEntity<?> findAll(){
+    public ResponseEntity<?> findAll(WebRequest request){
         try{
-            return ResponseEntity.ok(processService.findAll());
+            String etag = changeCounters.etag(Resource.PROCESSES, Resource.USERS);
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(processService.findAll());
         }catch(Exception e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al listar procesos");
         }
     }
 
     @GetMapping("/get/{processID}")
-    public ResponseEntity<?> findByID(@PathVariable Long processID) {
+    public ResponseEntity<?> findByID(@PathVariable Long processID, WebRequest request) {
         try {
-            return ResponseEntity.ok(processService.findById(processID));
+            String etag = changeCounters.etag(Resource.PROCESSES, Resource.USERS);
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(processService.findById(processID));
         } catch (NoSuchElementException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         }catch(Exception e){
@@ -4,11 +4,15 @@ import TechFixer.TechFixer.dto.StateDto;
 import TechFixer.TechFixer.entity.State;
 import TechFixer.TechFixer.exception.NotFoundStateException;
 import TechFixer.TechFixer.exception.StateAlreadyExistException;
+import TechFixer.TechFixer.services.ChangeCounters;
+import TechFixer.TechFixer.services.ChangeCounters.Resource;
 import TechFixer.TechFixer.services.StateService;
 import lombok.Data;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -20,6 +24,7 @@ import java.util.NoSuchElementException;
 public class StateController {
 
     private final StateService stateService;
+    private final ChangeCounters changeCounters;
 
     /**
      * Adds a new state to the system using the provided state data.
@@ -90,15 +95,26 @@ public class StateController {
      * the stateService to fetch all states and returns the result wrapped
      * in a ResponseEntity object. In case of an error during the retrieval
      * process, an appropriate error message is returned with a conflict status.
+     * The response carries an ETag; a request whose If-None-Match still matches is answered
+     * with NOT MODIFIED without reading the states.
+     * With {@code summary=true} each state carries the number of its tasks instead of their IDs, which
+     * are then read page by page from {@link #findTaskIds(Long, String, Integer, WebRequest)}.
      *
+     * @param summary whether to return the number of tasks of each state instead of their IDs
+     * @param request the current request, used to check the If-None-Match header
      * @return a ResponseEntity containing:
      *         - A list of all states if the operation is successful, with an OK status.
+     *         - A NOT MODIFIED status without body if the client already has the current list.
      *         - A conflict status and an error message if an exception occurs during the process.
      */
     @GetMapping("/getAll")
-    public ResponseEntity<?> findAllState(){
+    public ResponseEntity<?> findAllState(@RequestParam(defaultValue = "false") boolean summary, WebRequest request){
         try{
-            return ResponseEntity.ok(stateService.getAll());
+            // Si el cliente ya tiene esta version, checkNotModified deja preparada la respuesta 304
+            String etag = changeCounters.etag(Resource.STATES, Resource.TASKS);
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(summary ? stateService.getSummaries() : stateService.getAll());
 
         } catch (Exception e){
             return ResponseEntity.status(HttpStatus.CONFLICT).body("Error al obtener estados");
@@ -111,18 +127,23 @@ public class StateController {
      * Retrieves a state based on its unique identifier provided in the request path.
      * If the state exists, it is returned with an OK status. If the state does not exist,
      * or if an error occurs during retrieval, an appropriate error response is returned.
+     * Like {@link #findAllState(boolean, WebRequest)}, it answers NOT MODIFIED when the If-None-Match header still matches.
      *
      * @param stateID the unique identifier of the state to retrieve
+     * @param request the current request, used to check the If-None-Match header
      * @return a ResponseEntity containing:
      *         - The retrieved state object with an OK status if the state exists.
+     *         - A NOT MODIFIED status without body if the client already has the current state.
      *         - A NOT FOUND status with an error message if the state does not exist.
      *         - A NOT FOUND status with a generic error message if any other exception occurs during retrieval.
      */
     @GetMapping("/get/{stateID}")
-    public ResponseEntity<?> findeOne(@PathVariable Long stateID){
+    public ResponseEntity<?> findeOne(@PathVariable Long stateID, WebRequest request){
         try {
+            String etag = changeCounters.etag(Resource.STATES, Resource.TASKS);
+            if (request.checkNotModified(etag)) return null;
 
-            return ResponseEntity.ok(stateService.getById(stateID));
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(stateService.getById(stateID));
 
         } catch (NoSuchElementException e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
@@ -133,5 +154,38 @@ public class StateController {
 
     }
 
+    /**
+     * Retrieves one page of the IDs of the tasks in a state, in ascending order. The client walks through
+     * the pages sending back the {@code nextCursor} returned with the previous page.
+     * Like {@link #findAllState(boolean, WebRequest)}, it answers NOT MODIFIED when the If-None-Match header still matches.
+     *
+     * @param stateID the unique identifier of the state
+     * @param cursor the cursor of the page to retrieve, omitted for the first page
+     * @param size the number of IDs per page, omitted to use the configured default
+     * @param request the current request, used to check the If-None-Match header
+     * @return a ResponseEntity containing:
+     *         - The page of task IDs and the cursor of the next one if the retrieval is successful.
+     *         - A NOT MODIFIED status without body if the client already has the current page.
+     *         - A BAD REQUEST status and an error message if the cursor or the size are not valid.
+     *         - A NOT FOUND status and an error message if the state does not exist or any other exception occurs.
+     */
+    @GetMapping("/{stateID}/tasks")
+    public ResponseEntity<?> findTaskIds(@PathVariable Long stateID,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) Integer size,
+                                         WebRequest request){
+        try {
+            String etag = changeCounters.etag(Resource.STATES, Resource.TASKS);
+            if (request.checkNotModified(etag)) return null;
 
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache())
+                    .body(stateService.getTaskIds(stateID, cursor, size));
+        } catch (NoSuchElementException e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener tareas del estado");
+        }
+    }
 }
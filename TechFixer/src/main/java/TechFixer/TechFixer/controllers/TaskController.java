@@ -1,17 +1,37 @@
 package TechFixer.TechFixer.controllers;
 
+import TechFixer.TechFixer.dto.ConflictDto;
 import TechFixer.TechFixer.dto.FilterDto;
+import TechFixer.TechFixer.dto.PageDto;
+import TechFixer.TechFixer.dto.ProcessDto;
 import TechFixer.TechFixer.dto.TaskDto;
 import TechFixer.TechFixer.exception.NotFoundUserException;
+import TechFixer.TechFixer.exception.TaskConflictException;
+import TechFixer.TechFixer.services.ChangeCounters;
+import TechFixer.TechFixer.services.ChangeCounters.Resource;
 import TechFixer.TechFixer.services.DepartmentService;
+import TechFixer.TechFixer.services.TaskArchiver;
+import TechFixer.TechFixer.services.TaskEventBroadcaster;
 import TechFixer.TechFixer.services.TaskService;
+import TechFixer.TechFixer.services.TaskStatsService;
 import TechFixer.TechFixer.services.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.Data;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.Principal;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -25,6 +45,11 @@ public class TaskController {
     private final TaskService taskService;
     private final DepartmentService depService;
     private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final TaskEventBroadcaster eventBroadcaster;
+    private final TaskStatsService statsService;
+    private final TaskArchiver taskArchiver;
+    private final ChangeCounters changeCounters;
 
     /**
      * Handles the creation of a new task. The task details are provided in the form of
@@ -49,26 +74,69 @@ public class TaskController {
         }
     }
 
+    /**
+     * Creates and updates many tasks in a single request. Tasks without ID are created and tasks with ID
+     * are updated, with the same rules as {@code /new} and {@code /update}. A task that cannot be saved
+     * does not stop the rest, its error is returned in its own result.
+     *
+     * @param dataTasks the tasks to create or update
+     * @return a ResponseEntity containing:
+     *         - One result per task, in the same order, with the saved task ID or the error found.
+     *         - A BAD REQUEST status and an error message if the request is empty or too large.
+     *         - A CONFLICT status and an error message if the batch could not be written.
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<?> bulkTasks(@RequestBody List<TaskDto> dataTasks){
+        try {
+            return ResponseEntity.ok(taskService.saveAll(dataTasks));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Error al guardar tareas: " + e.getCause() + " --- " + e.getMessage());
+        }
+    }
+
     /**
      * Updates an existing task using the data provided in the TaskDto object. The task details
      * such as description, department, and owner are updated based on the provided information.
      * If the task, department, or owner does not exist, or if an error occurs during the process,
      * an appropriate error message is returned.
      *
+     * When the object carries the version the client read and someone else has changed the task since,
+     * the changes are merged if they touch different fields; otherwise a conflict is returned with the
+     * current version of the task, so the client can show it and try again.
+     *
      * @param dataTask the TaskDto object containing the updated details of the task. The object
-     *                 should include the task ID, updated description, department ID, and owner ID.
+     *                 should include the task ID, updated description, department ID, and owner ID,
+     *                 and optionally the version it was read at.
      * @return a ResponseEntity containing:
      *         - A success message if the task is updated successfully.
+     *         - A conflict status with the message, the current version and the current task if the task
+     *           was changed by someone else in the same fields.
      *         - An error message and conflict status if the task, department, or owner does not exist or
      *           if any other exception occurs during the update process.
      *         - An appropriate error message and conflict status for generic errors during updating.
      */
     @PostMapping("/update")
-    public ResponseEntity<String> updateTask(@RequestBody TaskDto dataTask){
+    public ResponseEntity<?> updateTask(@RequestBody TaskDto dataTask){
         try {
-            taskService.update(dataTask);
+            try {
+                taskService.update(dataTask);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                // Otra actualizacion de la tarea se ha confirmado a la vez. Repetimos una vez: ahora la version
+                // del cliente ya no es la actual y los cambios se fusionan o dan conflicto
+                taskService.update(dataTask);
+            }
             return ResponseEntity.ok("Tarea actualizada");
 
+        } catch (TaskConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ConflictDto(e.getMessage(), e.getCurrentVersion(), taskService.findById(e.getTaskId())));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            TaskDto current = taskService.findById(dataTask.getId());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ConflictDto("La tarea ha sido modificada por otro usuario", current.getVersion(), current));
         } catch (NoSuchElementException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (Exception e) {
@@ -104,17 +172,34 @@ public class TaskController {
      * If the task exists, it is returned with an OK status.
      * If the task does not exist or an error occurs during retrieval,
      * an appropriate error message and status are returned.
+     * The response carries an ETag built from the version of the task; a request whose If-None-Match
+     * still matches is answered with NOT MODIFIED without loading the task.
+     * The processes the current user has just added are included even if they have not been saved yet.
      *
      * @param taskId the unique identifier of the task to retrieve
+     * @param includeArchived whether to look for the task in the archive too
+     * @param request the current request, used to check the If-None-Match header
+     * @param principal the current user
      * @return a ResponseEntity containing:
      *         - The retrieved task object if it exists, along with an OK status.
+     *         - A NOT MODIFIED status without body if the client already has the current version of the task.
      *         - A NOT FOUND status and error message if the task does not exist.
      *         - A NOT FOUND status and a generic error message if any other exception occurs during retrieval.
      */
     @GetMapping("/get/{taskId}")
-    public ResponseEntity<?> findeOne(@PathVariable Long taskId){
+    public ResponseEntity<?> findeOne(@PathVariable Long taskId,
+                                      @RequestParam(defaultValue = "false") boolean includeArchived,
+                                      WebRequest request, Principal principal){
         try {
-            return ResponseEntity.ok(taskService.findById(taskId));
+            String userName = principal != null ? principal.getName() : null;
+
+            // Si el cliente ya tiene esta version, checkNotModified deja preparada la respuesta 304
+            String etag = taskService.etag(taskId, includeArchived, userName);
+            if (etag != null && request.checkNotModified(etag)) return null;
+
+            TaskDto task = taskService.findById(taskId, includeArchived, userName);
+            return etag != null ? ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(task)
+                    : ResponseEntity.ok(task);
         } catch (NoSuchElementException e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         } catch (Exception e) {
@@ -122,36 +207,135 @@ public class TaskController {
         }
     }
 
+    /**
+     * Retrieves one page of the processes of a task, from the most recent to the oldest. The lists of tasks
+     * only carry the number of processes and the most recent one; the client walks through the rest of the
+     * history sending back the {@code nextCursor} returned with the previous page.
+     * The ETag is the one of the task, which changes with every new process.
+     * Like {@link #findeOne(Long, boolean, WebRequest, Principal)}, the first page includes the processes the
+     * current user has just added even if they have not been saved yet.
+     *
+     * @param taskId the unique identifier of the task
+     * @param cursor the cursor of the page to retrieve, omitted for the first page
+     * @param size the number of processes per page, omitted to use the configured default
+     * @param request the current request, used to check the If-None-Match header
+     * @param principal the current user
+     * @return a ResponseEntity containing:
+     *         - The page of processes and the cursor of the next one if the retrieval is successful.
+     *         - A NOT MODIFIED status without body if the client already has the current page.
+     *         - A BAD REQUEST status and an error message if the cursor or the size are not valid.
+     *         - A NOT FOUND status and an error message if the task does not exist or any other exception occurs.
+     */
+    @GetMapping("/{taskId}/processes")
+    public ResponseEntity<?> findProcesses(@PathVariable Long taskId,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer size,
+                                           WebRequest request, Principal principal){
+        try{
+            String userName = principal != null ? principal.getName() : null;
+
+            String etag = taskService.etag(taskId, false, userName);
+            if (etag != null && request.checkNotModified(etag)) return null;
+
+            PageDto<ProcessDto> page = taskService.findProcessPage(taskId, cursor, size, userName);
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(page);
+        } catch (NoSuchElementException e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener procesos");
+        }
+    }
+
     /**
      * Retrieves all tasks available in the system. Internally, it invokes the
      * taskService to fetch all tasks and returns the results. In case of
      * an exception, an error message is returned with a NOT FOUND status.
+     * Like {@link #findeOne(Long, boolean, WebRequest, Principal)}, it answers NOT MODIFIED when the If-None-Match header still matches.
      *
+     * @param request the current request, used to check the If-None-Match header
      * @return a ResponseEntity containing:
      *         - A list of all tasks if the retrieval is successful.
+     *         - A NOT MODIFIED status without body if the client already has the current list.
      *         - A NOT FOUND status and an error message if an exception occurs during retrieval.
      */
     @GetMapping("/getAll")
-    public ResponseEntity<?> findAllTasks(){
+    public ResponseEntity<?> findAllTasks(WebRequest request){
+        try{
+            String etag = tasksEtag();
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(taskService.findAll());
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener tareas: " + e.getCause() + " --- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves one page of tasks, from the most recent to the oldest. The client walks through
+     * the pages sending back the {@code nextCursor} returned with the previous page.
+     *
+     * @param cursor the cursor of the page to retrieve, omitted for the first page
+     * @param size the number of tasks per page, omitted to use the configured default
+     * @param request the current request, used to check the If-None-Match header
+     * @return a ResponseEntity containing:
+     *         - The page of tasks and the cursor of the next one if the retrieval is successful.
+     *         - A NOT MODIFIED status without body if the client already has the current page.
+     *         - A BAD REQUEST status and an error message if the cursor or the size are not valid.
+     *         - A NOT FOUND status and an error message if any other exception occurs during retrieval.
+     */
+    @GetMapping("/getAllPage")
+    public ResponseEntity<?> findPageTasks(@RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer size,
+                                           WebRequest request){
         try{
-            return ResponseEntity.ok(taskService.findAll());
+            String etag = tasksEtag();
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(taskService.findPage(cursor, size));
+        } catch (IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (Exception e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener tareas: " + e.getCause() + " --- " + e.getMessage());
         }
     }
 
+    /**
+     * Retrieves the tasks created, modified, deleted or archived since the watermark the client received
+     * the last time, so it can keep its copy of the list up to date without downloading it again.
+     * The client starts with {@code since=0} (every task), applies the changes and keeps the returned
+     * {@code watermark}; while {@code hasMore} is true there are more changes to ask for right away.
+     *
+     * @param since the watermark returned by the previous call, omitted to get every task
+     * @param size the number of changes per response, omitted to use the configured default
+     * @return a ResponseEntity containing:
+     *         - The changed tasks, the IDs of the deleted ones and the new watermark if the retrieval is successful.
+     *           If {@code resyncRequired} is true the watermark is too old, and the client must drop its copy
+     *           and start again from 0.
+     *         - A BAD REQUEST status and an error message if the watermark or the size are not valid.
+     *         - A NOT FOUND status and an error message if any other exception occurs during retrieval.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<?> findChanges(@RequestParam(defaultValue = "0") Long since,
+                                         @RequestParam(required = false) Integer size){
+        try{
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(taskService.findChanges(since, size));
+        } catch (IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener cambios: " + e.getMessage());
+        }
+    }
+
     /** Devuelve las tareas pendientes de un usuario (Activo, En proceso y Pausadas)*/
     @GetMapping("/getAllByUserPending/{userId}")
-    public ResponseEntity<?> findAllTasksByUser(@PathVariable Long userId){
+    public ResponseEntity<?> findAllTasksByUser(@PathVariable Long userId, WebRequest request){
         try{
-            List<TaskDto> tasks = taskService.findAllByUserPending(userId);
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("active", tasks.stream().filter(t -> t.getStateID() == 1L).toList());
-            response.put("process", tasks.stream().filter(t -> t.getStateID() == 2L).toList());
-            response.put("paused", tasks.stream().filter(t -> t.getStateID() == 3L).toList());
+            String etag = tasksEtag();
+            if (request.checkNotModified(etag)) return null;
 
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(taskService.findPendingBoard(userId));
         } catch (NoSuchElementException e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
 
@@ -170,4 +354,169 @@ public class TaskController {
         }
 
     }
+
+    /**
+     * Retrieves one page of the tasks matching the filter, from the most recent to the oldest.
+     * Works like {@code /getAllPage} with the filter predicates of {@code /filter}.
+     *
+     * @param filterDto the filter to apply
+     * @param cursor the cursor of the page to retrieve, omitted for the first page
+     * @param size the number of tasks per page, omitted to use the configured default
+     * @return a ResponseEntity containing the page of tasks, or an error message if the retrieval fails.
+     */
+    @PostMapping("/filterPage")
+    public ResponseEntity<?> findFilterPage(@RequestBody FilterDto filterDto,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(required = false) Integer size){
+        try{
+            return ResponseEntity.ok(taskService.findFilterPage(filterDto, cursor, size));
+        } catch (IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener tareas: " + e.getCause() + " --- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves now, instead of waiting for the scheduled run, the closed tasks older than
+     * {@code techfixer.archive.age} to the archive.
+     *
+     * @return a ResponseEntity containing the number of archived tasks, or an error message if the move fails.
+     */
+    @PostMapping("/archive")
+    public ResponseEntity<?> archiveTasks(){
+        try{
+            return ResponseEntity.ok(Map.of("archived", taskArchiver.archive()));
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Error al archivar tareas: " + e.getCause() + " --- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the number of tasks, resolved tasks and average resolution time (dateEnd - dateIni, in seconds),
+     * in total and per state, department and owner. The figures come from a rollup kept up to date on every
+     * task write, so the cost does not depend on the number of tasks.
+     *
+     * @return a ResponseEntity containing the statistics, or an error message if they cannot be retrieved.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<?> getStats(){
+        try{
+            return ResponseEntity.ok(statsService.getStats());
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener estadisticas: " + e.getCause() + " --- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recalculates the statistics rollup from scratch. Only needed if {@code /stats/verify} reports differences,
+     * for example after tasks have been changed directly in the database.
+     *
+     * @return a ResponseEntity containing a success message, or an error message if the rebuild fails.
+     */
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<String> rebuildStats(){
+        try{
+            statsService.rebuild();
+            return ResponseEntity.ok("Estadisticas recalculadas");
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Error al recalcular estadisticas: " + e.getCause() + " --- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compares the statistics rollup with the tasks table.
+     *
+     * @return a ResponseEntity containing the number of groups that differ, 0 if the rollup is correct.
+     */
+    @GetMapping("/stats/verify")
+    public ResponseEntity<?> verifyStats(){
+        try{
+            return ResponseEntity.ok(Map.of("differences", statsService.verify()));
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Error al comprobar estadisticas: " + e.getCause() + " --- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Searches the text in the descriptions of the tasks and of their processes, best match first.
+     * Words must all appear; quotes, {@code -word}, {@code a | b} and {@code prefix*} are also accepted.
+     * The optional body restricts the results with the same predicates as {@code /filter}.
+     *
+     * @param q the text to look for
+     * @param size the maximum number of tasks, omitted to use the configured default page size
+     * @param filterDto the filter to combine with the search, optional
+     * @return a ResponseEntity containing:
+     *         - The matching tasks, ranked by relevance.
+     *         - A BAD REQUEST status and an error message if the text is empty or the size is not valid.
+     *         - A NOT FOUND status and an error message if any other exception occurs during the search.
+     */
+    @RequestMapping(value = "/search", method = {RequestMethod.GET, RequestMethod.POST})
+    public ResponseEntity<?> searchTasks(@RequestParam String q,
+                                         @RequestParam(required = false) Integer size,
+                                         @RequestBody(required = false) FilterDto filterDto){
+        try{
+            return ResponseEntity.ok(taskService.search(q, filterDto, size));
+        } catch (IllegalArgumentException e){
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (Exception e){
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al buscar tareas: " + e.getCause() + " --- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Exports every task matching the filter, with its processes, as newline-delimited JSON
+     * (one TaskDto per line). The body is written while the tasks are read from the database,
+     * so the export never holds the whole result in memory.
+     *
+     * @param filterDto the filter to apply, an empty filter exports every task
+     * @return a ResponseEntity streaming the matching tasks with the {@code application/x-ndjson} content type.
+     */
+    @PostMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTasks(@RequestBody FilterDto filterDto){
+        // No dejamos que Jackson cierre la salida despues de cada linea
+        ObjectWriter writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        StreamingResponseBody body = out -> {
+            try {
+                taskService.exportFilter(filterDto, task -> {
+                    try {
+                        writer.writeValue(out, task);
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header("Content-Disposition", "attachment; filename=\"tasks.ndjson\"")
+                .body(body);
+    }
+
+    /**
+     * Opens a Server-Sent Events stream with the task changes committed from now on. Each change is sent as a
+     * {@code task} event with the task ID, the type of change (CREATED, UPDATED or DELETED) and the new state,
+     * owner and department of the task, so the client can update its lists without reloading them.
+     * The stream can be limited to the tasks of a user and/or a department.
+     *
+     * @param userId only send the changes of the tasks owned by this user, before or after the change
+     * @param dptId only send the changes of the tasks of this department, before or after the change
+     * @return the event stream. The server closes it after {@code techfixer.events.timeout} or when the client
+     *         falls too far behind; in both cases the client should reload its data and reconnect.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter taskEvents(@RequestParam(required = false) Long userId,
+                                 @RequestParam(required = false) Long dptId){
+        return eventBroadcaster.subscribe(userId, dptId);
+    }
+
+    // Los listados de tareas muestran tambien sus procesos y los nombres de usuarios, departamentos y estados
+    private String tasksEtag(){
+        return changeCounters.etag(Resource.TASKS, Resource.PROCESSES, Resource.USERS, Resource.DEPARTMENTS, Resource.STATES);
+    }
 }
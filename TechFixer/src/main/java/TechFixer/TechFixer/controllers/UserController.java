@@ -2,21 +2,28 @@ package TechFixer.TechFixer.controllers;
 
 import TechFixer.TechFixer.dto.UserDto;
 import TechFixer.TechFixer.exception.NotFoundUserException;
+import TechFixer.TechFixer.exception.PasswordHashingBusyException;
 import TechFixer.TechFixer.exception.UserAlreadyExistException;
 import TechFixer.TechFixer.dto.AuthRequest;
 import TechFixer.TechFixer.dto.AuthResponse;
 import TechFixer.TechFixer.security.JwtUtil;
+import TechFixer.TechFixer.security.LoginUser;
+import TechFixer.TechFixer.services.ChangeCounters;
+import TechFixer.TechFixer.services.ChangeCounters.Resource;
 import TechFixer.TechFixer.services.UserService;
 import lombok.Data;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.NoSuchElementException;
 
@@ -29,6 +36,7 @@ public class UserController {
     private final AuthenticationManager authManager;
     private final JwtUtil jwtUtil;
     private final UserService userService;
+    private final ChangeCounters changeCounters;
 
     /**
      * Handles the user registration process. Accepts an authentication request containing
@@ -39,6 +47,7 @@ public class UserController {
      * @return a ResponseEntity containing:
      *         - A success message if the user is registered successfully.
      *         - A conflict status and an error message if the user already exists.
+     *         - A SERVICE UNAVAILABLE status and an error message if the password hashing pool is saturated.
      *         - A conflict status and a general error message for other registration failures.
      */
     @PostMapping("/register")
@@ -49,6 +58,8 @@ public class UserController {
 
         } catch (UserAlreadyExistException | IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (PasswordHashingBusyException e) {
+            return busy(e);
         } catch (Exception e) {
             System.out.println(e.getMessage());
             return ResponseEntity.status(HttpStatus.CONFLICT).body("Error en el registro");
@@ -66,24 +77,26 @@ public class UserController {
      * @return a ResponseEntity containing:
      *         - An AuthResponse object with the generated JWT token if authentication is successful.
      *         - An unauthorized status and error message if the credentials are invalid.
+     *         - A SERVICE UNAVAILABLE status and error message if the password hashing pool is saturated.
      *         - A conflict status and error message in case of other issues during the login process.
      */
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody AuthRequest request){
         try {
-            authManager.authenticate(new UsernamePasswordAuthenticationToken(
+            Authentication auth = authManager.authenticate(new UsernamePasswordAuthenticationToken(
                     request.getUserName(), request.getPassword()
             ));
 
-            // Generamos el token
-            final UserDetails userDetails = userService.searchByNameDetails(request.getUserName());
-            final String jwt = jwtUtil.generateToken(userDetails);
-            final UserDto user = userService.searchByName( request.getUserName() );
+            // Generamos el token con el usuario leido al autenticar, sin volver a consultarlo
+            final LoginUser user = (LoginUser) auth.getPrincipal();
+            final String jwt = jwtUtil.generateToken(user, user.getId(), user.getEpoch());
 
-            return ResponseEntity.ok(new AuthResponse(jwt, user.getId(), user.getRolID() ));
+            return ResponseEntity.ok(new AuthResponse(jwt, user.getId(), user.getRolId() ));
 
         } catch (BadCredentialsException e){
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Credenciales incorrectas");
+        } catch (PasswordHashingBusyException e) {
+            return busy(e);
         } catch (Exception e){
             return ResponseEntity.status(HttpStatus.CONFLICT).body("Error en inicio de sesión");
         }
@@ -103,6 +116,7 @@ public class UserController {
      * @return a ResponseEntity indicating the result of the update operation:
      *         - A success message with HTTP status 200 if the user is updated successfully.
      *         - A NOT_FOUND status with an error message if the user is not found.
+     *         - A SERVICE_UNAVAILABLE status with an error message if the password hashing pool is saturated.
      *         - A general error message with a NOT_FOUND status in case of other issues during the update process.
      */
     @PostMapping("/update")
@@ -112,6 +126,8 @@ public class UserController {
             return ResponseEntity.ok("Usuario actualizado correctamente");
         } catch (NotFoundUserException | NoSuchElementException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (PasswordHashingBusyException e) {
+            return busy(e);
         } catch (Exception e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al actualizar usuario");
         }
@@ -146,17 +162,25 @@ public class UserController {
      * Retrieves a user by their unique identifier. If the user is found, the user's details are returned.
      * If the user does not exist, a {@code UsernameNotFoundException} is caught and an appropriate error message is returned.
      * Any other exceptions will return a general error message.
+     * The response carries an ETag; a request whose If-None-Match still matches is answered
+     * with HTTP 304 (NOT_MODIFIED) without reading the user.
      *
      * @param userId the unique identifier of the user to be retrieved
+     * @param request the current request, used to check the If-None-Match header
      * @return a ResponseEntity containing:
      *         - The user details and an HTTP 200 (OK) status if the user is found.
+     *         - An HTTP 304 (NOT_MODIFIED) status without body if the client already has the current user.
      *         - An HTTP 404 (NOT_FOUND) status with an error message if the user is not found.
      *         - An HTTP 404 (NOT_FOUND) status with a general error message for unexpected issues.
      */
     @GetMapping("/get/{userId}")
-    public ResponseEntity<?> getUser(@PathVariable Long userId){
+    public ResponseEntity<?> getUser(@PathVariable Long userId, WebRequest request){
         try {
-            return ResponseEntity.ok(userService.findByIdDto(userId));
+            // Si el cliente ya tiene esta version, checkNotModified deja preparada la respuesta 304
+            String etag = changeCounters.etag(Resource.USERS, Resource.ROLES, Resource.DEPARTMENTS, Resource.TASKS);
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(userService.findByIdDto(userId));
         } catch (UsernameNotFoundException e){
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         } catch (Exception e) {
@@ -168,15 +192,21 @@ public class UserController {
     /**
      * Retrieves a list of all users available in the system.
      * If an error occurs during the retrieval process, an error message is returned.
+     * Like {@link #getUser(Long, WebRequest)}, it answers HTTP 304 (NOT_MODIFIED) when the If-None-Match header still matches.
      *
+     * @param request the current request, used to check the If-None-Match header
      * @return a ResponseEntity containing:
      *         - A list of all users with an HTTP 200 (OK) status if the retrieval is successful.
+     *         - An HTTP 304 (NOT_MODIFIED) status without body if the client already has the current list.
      *         - An HTTP 404 (NOT_FOUND) status with an error message in case of any issues during the retrieval process.
      */
     @GetMapping("/getAll")
-    public ResponseEntity<?> findAllUsers(){
+    public ResponseEntity<?> findAllUsers(WebRequest request){
         try {
-            return ResponseEntity.ok(userService.findAllUsers());
+            String etag = changeCounters.etag(Resource.USERS, Resource.ROLES, Resource.DEPARTMENTS, Resource.TASKS);
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(userService.findAllUsers());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener usuarios.");
 
@@ -184,16 +214,20 @@ public class UserController {
     }
 
     @GetMapping("/getAllRoles")
-    public ResponseEntity<?> findAllRoles(){
+    public ResponseEntity<?> findAllRoles(WebRequest request){
         try {
-            return ResponseEntity.ok(userService.findAllRoles());
+            String etag = changeCounters.etag(Resource.ROLES);
+            if (request.checkNotModified(etag)) return null;
+
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(userService.findAllRoles());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error al obtener roles.");
 
         }
     }
 
-
-
-
+    // El grupo de hilos de BCrypt esta lleno: el cliente puede reintentar en un momento
+    private ResponseEntity<String> busy(PasswordHashingBusyException e){
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(e.getMessage());
+    }
 }
@@ -0,0 +1,18 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkResultDto {
+
+    // Posicion del elemento en la peticion
+    private int index;
+    // ID de la tarea creada o actualizada
+    private Long id;
+    // Motivo por el que se ha descartado el elemento, nulo si se ha guardado
+    private String error;
+}
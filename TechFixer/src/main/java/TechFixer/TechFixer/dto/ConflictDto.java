@@ -0,0 +1,17 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConflictDto {
+
+    private String message;
+    // Version actual de la tarea, con la que el cliente puede repetir la actualizacion
+    private Long version;
+    private TaskDto current;
+
+}
@@ -0,0 +1,16 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorDto {
+
+    private LocalDateTime date;
+    private Long id;
+}
@@ -0,0 +1,17 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Un departamento con el numero de usuarios y de tareas en lugar de sus IDs, para los listados
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DepartmentSummaryDto {
+
+    private Long id;
+    private String name;
+    private Long usersCount;
+    private Long tasksCount;
+}
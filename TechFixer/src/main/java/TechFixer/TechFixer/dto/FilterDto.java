@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 @AllArgsConstructor
@@ -19,4 +20,12 @@ public class FilterDto {
     private LocalDateTime dateCreationEnd;
     private LocalDateTime dateEndingIni;
     private LocalDateTime dateEndingEnd;
+
+    // Listas de valores aceptados (cualquiera de ellos), se suman a los valores sueltos
+    private List<Long> ownerIDs;
+    private List<Long> stateIDs;
+    private List<Long> departmentIDs;
+
+    // Incluir tambien las tareas archivadas (solo en /filter)
+    private Boolean includeArchived;
 }
@@ -0,0 +1,18 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Las columnas del usuario que necesita el login: comprobar la contraseña, firmar el token y responder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LoginUserDto {
+
+    private Long id;
+    private String userName;
+    private String password;
+    private Long rolId;
+    private String rolName;
+}
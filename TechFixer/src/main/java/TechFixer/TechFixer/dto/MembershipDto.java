@@ -0,0 +1,17 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Resultado de cambiar los miembros de un departamento
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MembershipDto {
+
+    // Usuarios que se han añadido al departamento
+    private int added;
+    // Usuarios que han dejado de pertenecer al departamento
+    private int removed;
+}
@@ -0,0 +1,18 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PageDto<T> {
+
+    private List<T> content;
+    private int size;
+    // Cursor opaco para pedir la siguiente pagina, nulo si no hay mas resultados
+    private String nextCursor;
+}
@@ -0,0 +1,24 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Numero de procesos de una tarea y el mas reciente, para los listados
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProcessSummaryDto {
+
+    private Long taskID;
+    private Long count;
+    private ProcessDto lastProcess;
+
+    // Constructor para las consultas de proyeccion (SELECT new ProcessSummaryDto(...))
+    public ProcessSummaryDto(Long taskID, Long count, Long id, String description, LocalDateTime date,
+                             Long authorID, String authorName){
+        this(taskID, count, new ProcessDto(id, description, date, taskID, authorID, authorName));
+    }
+}
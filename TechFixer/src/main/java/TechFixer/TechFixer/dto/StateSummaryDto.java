@@ -0,0 +1,16 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Un estado con el numero de tareas en lugar de sus IDs, para los listados
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StateSummaryDto {
+
+    private Long id;
+    private String name;
+    private Long tasksCount;
+}
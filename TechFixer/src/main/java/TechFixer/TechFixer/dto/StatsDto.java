@@ -0,0 +1,20 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsDto {
+
+    private long count;
+    private long resolved;
+    private Double avgResolutionSeconds;
+    private List<StatsGroupDto> byState;
+    private List<StatsGroupDto> byDepartment;
+    private List<StatsGroupDto> byOwner;
+}
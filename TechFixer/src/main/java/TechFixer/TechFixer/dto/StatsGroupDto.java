@@ -0,0 +1,20 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatsGroupDto {
+
+    // Estado, departamento o encargado del grupo; nulo para las tareas sin departamento o sin encargado
+    private Long id;
+    private String name;
+    private long count;
+    // Tareas con fecha de fin
+    private long resolved;
+    // Tiempo medio de resolucion en segundos (dateEnd - dateIni), nulo si no hay ninguna resuelta
+    private Double avgResolutionSeconds;
+}
@@ -0,0 +1,24 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskChangesDto {
+
+    // Tareas creadas o modificadas, en el orden en que cambiaron
+    private List<TaskDto> changed;
+    // IDs de las tareas borradas o archivadas
+    private List<Long> deleted;
+    // Marca de agua que el cliente envia como 'since' en la siguiente peticion
+    private long watermark;
+    // Hay mas cambios, se piden con la nueva marca de agua
+    private boolean hasMore;
+    // La marca de agua es demasiado antigua (o desconocida): el cliente tiene que recargarlo todo
+    private boolean resyncRequired;
+}
@@ -20,5 +20,17 @@ public class TaskDto {
     private Long authorID; private String authorName;
     private Long ownerID; private String ownerName;
     private Long stateID; private String stateName;
+    // Version leida por el cliente: al actualizar, si ya no es la actual se fusionan los cambios o hay conflicto
+    private Long version;
+    // Numero de procesos y el mas reciente; en los listados los procesos no se envian, se piden con /api/task/{id}/processes
+    private Long processCount;
+    private ProcessDto lastProcess;
     private List<ProcessDto> processDtos;
+
+    // Constructor para las consultas de proyeccion (SELECT new TaskDto(...)), los procesos se asignan despues
+    public TaskDto(Long id, LocalDateTime dateIni, LocalDateTime dateEnd, String description,
+                   Long dptID, String dptName, Long authorID, String authorName,
+                   Long ownerID, String ownerName, Long stateID, String stateName, Long version){
+        this(id, dateIni, dateEnd, description, dptID, dptName, authorID, authorName, ownerID, ownerName, stateID, stateName, version, null, null, null);
+    }
 }
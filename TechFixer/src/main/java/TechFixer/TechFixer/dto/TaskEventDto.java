@@ -0,0 +1,19 @@
+package TechFixer.TechFixer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskEventDto {
+
+    // CREATED, UPDATED o DELETED
+    private String type;
+    private Long taskID;
+    // Estado, encargado y departamento de la tarea tras el cambio (antes del borrado si es DELETED)
+    private Long stateID;
+    private Long ownerID;
+    private Long dptID;
+}
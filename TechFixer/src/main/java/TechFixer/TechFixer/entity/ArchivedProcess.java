@@ -0,0 +1,35 @@
+package TechFixer.TechFixer.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * A process of an {@link ArchivedTask}. Same fields as {@link Process}, read only.
+ */
+@Entity
+@Table(name = "processes_archive")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString(exclude = {"author", "task"})
+public class ArchivedProcess {
+
+    @Id
+    private Long id;
+    private String description;
+    private LocalDateTime date;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "author_id")
+    private User author;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "task_id")
+    private ArchivedTask task;
+
+}
@@ -0,0 +1,57 @@
+package TechFixer.TechFixer.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A closed task moved to the archive by the TaskArchiver. Same fields as {@link Task}, read only.
+ */
+@Table(name = "tasks_archive")
+@Entity
+@NamedEntityGraph(name = "ArchivedTask.withProcesses", attributeNodes = {
+        @NamedAttributeNode("dpt"),
+        @NamedAttributeNode("author"),
+        @NamedAttributeNode("ownerUser"),
+        @NamedAttributeNode("state"),
+        @NamedAttributeNode(value = "processes", subgraph = "processes")
+}, subgraphs = @NamedSubgraph(name = "processes", attributeNodes = @NamedAttributeNode("author")))
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString(exclude = {"dpt", "author", "ownerUser"})
+public class ArchivedTask {
+
+    @Id
+    private Long id;
+    private LocalDateTime dateIni;
+    private LocalDateTime dateEnd;
+    private String description;
+    private LocalDateTime archivedAt;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "dpt_id")
+    private Department dpt;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "author_id")
+    private User author;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "owner_id")
+    private User ownerUser;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "state_id")
+    private State state;
+
+    @OneToMany(mappedBy = "task")
+    @OrderBy("date DESC")
+    private List<ArchivedProcess> processes;
+
+}
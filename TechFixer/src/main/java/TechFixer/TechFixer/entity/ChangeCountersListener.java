@@ -0,0 +1,26 @@
+package TechFixer.TechFixer.entity;
+
+import TechFixer.TechFixer.services.ChangeCounters;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Entity listener that records every insert, update and delete in the {@link ChangeCounters} of its
+ * collection. Hibernate creates it through Spring, which injects the counters.
+ */
+public class ChangeCountersListener {
+
+    private final ChangeCounters changeCounters;
+
+    public ChangeCountersListener(ChangeCounters changeCounters) {
+        this.changeCounters = changeCounters;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void changed(Object entity){
+        changeCounters.changed(ChangeCounters.Resource.of(entity));
+    }
+}
@@ -9,6 +9,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "processes")
+@EntityListeners(ChangeCountersListener.class)
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -19,11 +20,11 @@ public class Process {
     private String description;
     private LocalDateTime date;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "author_id")
     private User author;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "task_id")
     private Task task;
 
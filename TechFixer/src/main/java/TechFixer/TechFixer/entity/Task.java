@@ -11,6 +11,21 @@ import java.util.List;
 
 @Table(name = "tasks")
 @Entity
+@EntityListeners(ChangeCountersListener.class)
+// Planes de carga: listados (sin procesos) y vistas completas (con los procesos y sus autores)
+@NamedEntityGraph(name = "Task.list", attributeNodes = {
+        @NamedAttributeNode("dpt"),
+        @NamedAttributeNode("author"),
+        @NamedAttributeNode("ownerUser"),
+        @NamedAttributeNode("state")
+})
+@NamedEntityGraph(name = "Task.withProcesses", attributeNodes = {
+        @NamedAttributeNode("dpt"),
+        @NamedAttributeNode("author"),
+        @NamedAttributeNode("ownerUser"),
+        @NamedAttributeNode("state"),
+        @NamedAttributeNode(value = "processes", subgraph = "processes")
+}, subgraphs = @NamedSubgraph(name = "processes", attributeNodes = @NamedAttributeNode("author")))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -24,19 +39,23 @@ public class Task {
     private LocalDateTime dateEnd;
     private String description;
 
-    @ManyToOne
+    // Cambia con cada modificacion de la tarea y cada proceso nuevo
+    @Version
+    private Long version;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "dpt_id")
     private Department dpt;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "author_id")
     private User author;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id")
     private User ownerUser;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "state_id")
     private State state;
 
@@ -2,12 +2,17 @@ package TechFixer.TechFixer.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.*;
 
 import java.util.List;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(ChangeCountersListener.class)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,6 +26,7 @@ public class User {
     private String password;
 
     @ManyToMany
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(
         name = "users_dpts",
         joinColumns = @JoinColumn(name = "user_id"),
@@ -0,0 +1,33 @@
+package TechFixer.TechFixer.event;
+
+import TechFixer.TechFixer.entity.Process;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Published by the services when processes are added to tasks, with one entry per new process.
+ * Listeners receive it once the transaction that created the processes has committed.
+ */
+@Data
+@AllArgsConstructor
+public class ProcessCreatedEvent {
+
+    private List<Created> processes;
+
+    public static ProcessCreatedEvent of(List<Process> processes){
+        return new ProcessCreatedEvent(processes.stream()
+                .map(process -> new Created(process.getId(), process.getTask().getId(), process.getDescription()))
+                .toList());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Created {
+
+        private Long processId;
+        private Long taskId;
+        private String description;
+    }
+}
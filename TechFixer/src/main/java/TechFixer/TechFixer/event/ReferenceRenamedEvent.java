@@ -0,0 +1,16 @@
+package TechFixer.TechFixer.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Published when a department or a user is renamed, since their names are copied into the task views.
+ */
+@Data
+@AllArgsConstructor
+public class ReferenceRenamedEvent {
+
+    // Tipo de la entidad renombrada (Department, User)
+    private String type;
+    private Long id;
+}
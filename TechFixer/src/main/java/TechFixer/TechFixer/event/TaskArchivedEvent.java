@@ -0,0 +1,16 @@
+package TechFixer.TechFixer.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Published when closed tasks, with their processes, are moved from the working tables to the archive.
+ */
+@Data
+@AllArgsConstructor
+public class TaskArchivedEvent {
+
+    private List<Long> taskIds;
+}
@@ -0,0 +1,34 @@
+package TechFixer.TechFixer.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Published by the services every time tasks or their processes are written, with one change per task.
+ * Listeners receive it once the transaction that made the changes has committed.
+ */
+@Data
+@AllArgsConstructor
+public class TaskChangedEvent {
+
+    private List<Change> changes;
+
+    public static TaskChangedEvent of(Long taskId, TaskSnapshot before, TaskSnapshot after){
+        return new TaskChangedEvent(List.of(new Change(taskId, before, after)));
+    }
+
+    /**
+     * A single task change. {@code before} is null for new tasks and {@code after} is null for deleted ones;
+     * both are equal when only the processes of the task have changed.
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Change {
+
+        private Long taskId;
+        private TaskSnapshot before;
+        private TaskSnapshot after;
+    }
+}
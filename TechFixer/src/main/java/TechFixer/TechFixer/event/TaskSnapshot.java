@@ -0,0 +1,34 @@
+package TechFixer.TechFixer.event;
+
+import TechFixer.TechFixer.entity.Task;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * The fields of a task that decide where it is shown (owner, department and state), its dates and its
+ * description, taken at a point in time.
+ */
+@Data
+@AllArgsConstructor
+public class TaskSnapshot {
+
+    private Long ownerId;
+    private Long dptId;
+    private Long stateId;
+    private LocalDateTime dateIni;
+    private LocalDateTime dateEnd;
+    private String description;
+
+    // Los IDs de los proxies LAZY se leen sin inicializarlos
+    public static TaskSnapshot of(Task task){
+        return new TaskSnapshot(
+                task.getOwnerUser() != null ? task.getOwnerUser().getId() : null,
+                task.getDpt() != null ? task.getDpt().getId() : null,
+                task.getState() != null ? task.getState().getId() : null,
+                task.getDateIni(),
+                task.getDateEnd(),
+                task.getDescription());
+    }
+}
@@ -0,0 +1,8 @@
+package TechFixer.TechFixer.exception;
+
+public class PasswordHashingBusyException extends RuntimeException{
+
+    public PasswordHashingBusyException(String exception){
+        super(exception);
+    }
+}
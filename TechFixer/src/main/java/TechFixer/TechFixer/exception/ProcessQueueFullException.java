@@ -0,0 +1,8 @@
+package TechFixer.TechFixer.exception;
+
+public class ProcessQueueFullException extends RuntimeException{
+
+    public ProcessQueueFullException(String exception){
+        super(exception);
+    }
+}
@@ -0,0 +1,20 @@
+package TechFixer.TechFixer.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown when a task is updated from a version that is no longer the current one and the changes cannot be
+ * merged with the ones made since.
+ */
+@Getter
+public class TaskConflictException extends RuntimeException{
+
+    private final Long taskId;
+    private final Long currentVersion;
+
+    public TaskConflictException(String exception, Long taskId, Long currentVersion){
+        super(exception);
+        this.taskId = taskId;
+        this.currentVersion = currentVersion;
+    }
+}
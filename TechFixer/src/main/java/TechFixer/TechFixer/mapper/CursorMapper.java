@@ -0,0 +1,88 @@
+package TechFixer.TechFixer.mapper;
+
+import TechFixer.TechFixer.dto.CursorDto;
+import TechFixer.TechFixer.dto.PageDto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+public class CursorMapper {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * Encodes the position of the last row of a page into an opaque, URL-safe cursor.
+     *
+     * @param date the date of the last row returned
+     * @param id the unique identifier of the last row returned, used to break ties on the date
+     * @return the encoded cursor
+     */
+    public static String encode(LocalDateTime date, Long id){
+        String raw = date + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode(LocalDateTime, Long)}.
+     *
+     * @param cursor the opaque cursor sent by the client, may be null or empty for the first page
+     * @return the decoded position, or null when no cursor was given
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static CursorDto decode(String cursor){
+        if (cursor == null || cursor.isBlank()) return null;
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf(SEPARATOR);
+            return new CursorDto(LocalDateTime.parse(raw.substring(0, sep)), Long.valueOf(raw.substring(sep + 1)));
+
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor no valido");
+        }
+    }
+
+    /**
+     * Encodes the last ID of a page of IDs into an opaque, URL-safe cursor.
+     *
+     * @param id the last ID returned
+     * @return the encoded cursor
+     */
+    public static String encodeId(Long id){
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encodeId(Long)}.
+     *
+     * @param cursor the opaque cursor sent by the client, may be null or empty for the first page
+     * @return the last ID of the previous page, or null when no cursor was given
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static Long decodeId(String cursor){
+        if (cursor == null || cursor.isBlank()) return null;
+
+        try {
+            return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor no valido");
+        }
+    }
+
+    /**
+     * Builds a page from IDs read in ascending order with one element more than the page size, the extra
+     * element only tells whether there is a next page.
+     *
+     * @param ids the IDs read, at most {@code pageSize + 1}
+     * @param pageSize the number of IDs of the page
+     * @return the page with the cursor of the next one, null if there are no more IDs
+     */
+    public static PageDto<Long> toIdPage(List<Long> ids, int pageSize){
+        boolean hasNext = ids.size() > pageSize;
+        List<Long> content = hasNext ? ids.subList(0, pageSize) : ids;
+        return new PageDto<>(content, content.size(), hasNext ? encodeId(content.get(content.size() - 1)) : null);
+    }
+}
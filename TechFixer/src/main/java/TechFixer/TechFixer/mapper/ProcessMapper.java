@@ -1,6 +1,7 @@
 package TechFixer.TechFixer.mapper;
 
 import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.entity.ArchivedProcess;
 import TechFixer.TechFixer.entity.Process;
 import TechFixer.TechFixer.entity.Task;
 import TechFixer.TechFixer.entity.User;
@@ -20,6 +21,19 @@ public class ProcessMapper {
         return dto;
     }
 
+    public static ProcessDto toDto(ArchivedProcess process){
+        ProcessDto dto = new ProcessDto();
+
+        dto.setId(process.getId());
+        dto.setDescription(process.getDescription());
+        dto.setDate(process.getDate());
+        dto.setTaskID(process.getTask().getId());
+        dto.setAuthorID(process.getAuthor().getId());
+        dto.setAuthorName(process.getAuthor().getUserName());
+
+        return dto;
+    }
+
     public static Process toProcess(ProcessDto dto, User author, Task task){
         Process process = new Process();
 
@@ -1,6 +1,9 @@
 package TechFixer.TechFixer.mapper;
 
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.ProcessSummaryDto;
 import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.ArchivedTask;
 import TechFixer.TechFixer.entity.Department;
 import TechFixer.TechFixer.entity.Process;
 import TechFixer.TechFixer.entity.State;
@@ -8,11 +11,50 @@ import TechFixer.TechFixer.entity.Task;
 import TechFixer.TechFixer.entity.User;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class TaskMapper {
 
 
+    // Tarea con todos sus procesos, para la vista de detalle y la exportacion
     public static TaskDto toDto(Task task){
+        TaskDto dto = toListDto(task);
+        if(task.getProcesses() != null){
+            withProcesses(dto, task.getProcesses().stream().map(ProcessMapper::toDto).toList());
+        }
+        return dto;
+    }
+
+    // Tarea sin procesos, para los listados. No toca la coleccion de procesos, asi no se carga
+    public static TaskDto toListDto(Task task){
+        TaskDto dto = new TaskDto();
+        dto.setId(task.getId());
+        dto.setVersion(task.getVersion());
+        dto.setDateIni(task.getDateIni());
+        dto.setDateEnd(task.getDateEnd());
+        dto.setDescription(task.getDescription());
+        if(task.getDpt() != null){
+            dto.setDptID(task.getDpt().getId());
+            dto.setDptName(task.getDpt().getName());
+        }
+        if (task.getAuthor() != null){
+            dto.setAuthorID(task.getAuthor().getId());
+            dto.setAuthorName(task.getAuthor().getUserName());
+        }
+        if (task.getOwnerUser() != null){
+            dto.setOwnerID(task.getOwnerUser().getId());
+            dto.setOwnerName(task.getOwnerUser().getUserName());
+        }
+        if (task.getState() != null) {
+            dto.setStateID(task.getState().getId());
+            dto.setStateName(task.getState().getName());
+        }
+        return dto;
+    }
+
+    public static TaskDto toDto(ArchivedTask task){
         TaskDto dto = new TaskDto();
         dto.setId(task.getId());
         dto.setDateIni(task.getDateIni());
@@ -35,11 +77,62 @@ public class TaskMapper {
             dto.setStateName(task.getState().getName());
         }
         if(task.getProcesses() != null){
-            dto.setProcessDtos(task.getProcesses().stream().map(ProcessMapper::toDto).toList());
+            withProcesses(dto, task.getProcesses().stream().map(ProcessMapper::toDto).toList());
         }
         return dto;
     }
 
+    // Asigna a cada tarea sus procesos, que llegan ya ordenados del mas reciente al mas antiguo
+    public static List<TaskDto> withProcesses(List<TaskDto> tasks, List<ProcessDto> processes){
+        Map<Long, List<ProcessDto>> byTask = processes.stream().collect(Collectors.groupingBy(ProcessDto::getTaskID));
+        tasks.forEach(task -> withProcesses(task, byTask.getOrDefault(task.getId(), List.of())));
+        return tasks;
+    }
+
+    public static TaskDto withProcesses(TaskDto task, List<ProcessDto> processes){
+        task.setProcessDtos(processes);
+        task.setProcessCount((long) processes.size());
+        task.setLastProcess(processes.isEmpty() ? null : processes.get(0));
+        return task;
+    }
+
+    // Asigna a cada tarea de un listado su numero de procesos y el mas reciente, sin la lista de procesos
+    public static List<TaskDto> withProcessSummary(List<TaskDto> tasks, List<ProcessSummaryDto> summaries){
+        Map<Long, ProcessSummaryDto> byTask = summaries.stream()
+                .collect(Collectors.toMap(ProcessSummaryDto::getTaskID, Function.identity(), (a, b) -> a));
+        tasks.forEach(task -> {
+            ProcessSummaryDto summary = byTask.get(task.getId());
+            task.setProcessDtos(null);
+            task.setProcessCount(summary != null ? summary.getCount() : 0L);
+            task.setLastProcess(summary != null ? summary.getLastProcess() : null);
+        });
+        return tasks;
+    }
+
+    // Igual para una tarea que ya trae sus procesos, por ejemplo una archivada
+    public static TaskDto toSummary(TaskDto task){
+        List<ProcessDto> processes = task.getProcessDtos() != null ? task.getProcessDtos() : List.of();
+        withProcesses(task, processes);
+        task.setProcessDtos(null);
+        return task;
+    }
+
+    // Copia independiente de una tarea y de sus procesos, para entregar las tareas guardadas en memoria
+    public static TaskDto copy(TaskDto task){
+        TaskDto copy = new TaskDto(task.getId(), task.getDateIni(), task.getDateEnd(), task.getDescription(),
+                task.getDptID(), task.getDptName(), task.getAuthorID(), task.getAuthorName(),
+                task.getOwnerID(), task.getOwnerName(), task.getStateID(), task.getStateName(), task.getVersion());
+        copy.setProcessCount(task.getProcessCount());
+        copy.setLastProcess(task.getLastProcess() != null ? copy(task.getLastProcess()) : null);
+        copy.setProcessDtos(task.getProcessDtos() != null ? task.getProcessDtos().stream().map(TaskMapper::copy).toList() : null);
+        return copy;
+    }
+
+    private static ProcessDto copy(ProcessDto process){
+        return new ProcessDto(process.getId(), process.getDescription(), process.getDate(),
+                process.getTaskID(), process.getAuthorID(), process.getAuthorName());
+    }
+
     public static Task toTask(TaskDto dto, Department dpt, User author, User owner, State state, List<Process> process){
         Task task = new Task();
         task.setId(dto.getId());
@@ -0,0 +1,17 @@
+package TechFixer.TechFixer.repositories;
+
+import TechFixer.TechFixer.entity.ArchivedTask;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ArchivedTaskRepository extends JpaRepository<ArchivedTask, Long> {
+
+    // Una tarea archivada con sus procesos, para la vista de detalle
+    @EntityGraph("ArchivedTask.withProcesses")
+    Optional<ArchivedTask> findDetailById(Long id);
+
+}
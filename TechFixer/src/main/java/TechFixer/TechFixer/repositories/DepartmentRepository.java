@@ -1,9 +1,16 @@
 package TechFixer.TechFixer.repositories;
 
+import TechFixer.TechFixer.dto.DepartmentSummaryDto;
 import TechFixer.TechFixer.entity.Department;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +18,19 @@ public interface DepartmentRepository extends JpaRepository<Department, Long> {
 
     Optional<Department> findByName(String name);
 
+    // Todos los departamentos con su numero de usuarios y de tareas en una sola consulta: las tareas se
+    // agrupan y los usuarios se cuentan en users_dpts, juntarlos en el mismo JOIN multiplicaria las filas
+    @Query("SELECT new TechFixer.TechFixer.dto.DepartmentSummaryDto(d.id, d.name, CAST(SIZE(d.users) AS Long), COUNT(t.id)) " +
+            "FROM Department d LEFT JOIN d.tasks t GROUP BY d.id, d.name ORDER BY d.id")
+    List<DepartmentSummaryDto> findSummaries();
+
+    // Departamento cuyos miembros se van a cambiar: la fila queda bloqueada hasta el final de la transaccion
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Department d WHERE d.id = :id")
+    Optional<Department> findForUpdateById(@Param("id") Long id);
+
+    // IDs de los usuarios de un departamento a partir de uno dado, en orden
+    @Query("SELECT u.id FROM Department d JOIN d.users u WHERE d.id = :dptId AND u.id > :after ORDER BY u.id")
+    List<Long> findUserIdsAfter(@Param("dptId") Long dptId, @Param("after") Long after, Limit limit);
+
 }
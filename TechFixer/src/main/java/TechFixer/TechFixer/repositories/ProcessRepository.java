@@ -1,12 +1,66 @@
 package TechFixer.TechFixer.repositories;
 
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.ProcessSummaryDto;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import TechFixer.TechFixer.entity.Process;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 
 @Repository
 public interface ProcessRepository extends JpaRepository<Process, Long> {
 
+    // Proyeccion de un proceso directamente a ProcessDto, sin cargar entidades
+    String PROCESS_DTO = "SELECT new TechFixer.TechFixer.dto.ProcessDto(" +
+            "p.id, p.description, p.date, p.task.id, a.id, a.userName) " +
+            "FROM Process p LEFT JOIN p.author a ";
+
+    // Proceso mas reciente de cada tarea, con el numero de procesos de la tarea. El ID desempata los procesos
+    // de la misma fecha; las tareas sin procesos no aparecen
+    String PROCESS_SUMMARY = "SELECT new TechFixer.TechFixer.dto.ProcessSummaryDto(p.task.id, " +
+            "(SELECT COUNT(c) FROM Process c WHERE c.task = p.task), p.id, p.description, p.date, a.id, a.userName) " +
+            "FROM Process p LEFT JOIN p.author a " +
+            "WHERE NOT EXISTS (SELECT 1 FROM Process q WHERE q.task = p.task " +
+            "AND (q.date > p.date OR (q.date = p.date AND q.id > p.id))) ";
+
+    // Todos los procesos, del mas reciente al mas antiguo
+    @Query(PROCESS_DTO + "ORDER BY p.date DESC")
+    List<ProcessDto> findAllDtos();
+
+    // Procesos de las tareas de un usuario segun una lista de estados, del mas reciente al mas antiguo
+    @Query(PROCESS_DTO + "WHERE p.task.ownerUser.id = :idUser AND p.task.state.id IN :estados ORDER BY p.date DESC")
+    List<ProcessDto> findDtosByTaskOwnerAndStates(@Param("idUser") Long idUser, @Param("estados") List<Long> estados);
+
+    // Procesos de unas tareas concretas, del mas reciente al mas antiguo
+    @Query(PROCESS_DTO + "WHERE p.task.id IN :ids ORDER BY p.date DESC")
+    List<ProcessDto> findDtosByTaskIds(@Param("ids") Collection<Long> ids);
+
+    // Resumen de procesos de todas las tareas
+    @Query(PROCESS_SUMMARY)
+    List<ProcessSummaryDto> findSummaries();
+
+    // Resumen de procesos de las tareas de un usuario segun una lista de estados
+    @Query(PROCESS_SUMMARY + "AND p.task.ownerUser.id = :idUser AND p.task.state.id IN :estados")
+    List<ProcessSummaryDto> findSummariesByTaskOwnerAndStates(@Param("idUser") Long idUser, @Param("estados") List<Long> estados);
+
+    // Resumen de procesos de unas tareas concretas
+    @Query(PROCESS_SUMMARY + "AND p.task.id IN :ids")
+    List<ProcessSummaryDto> findSummariesByTaskIds(@Param("ids") Collection<Long> ids);
+
+    // Historial de una tarea por paginas, del mas reciente al mas antiguo, con cursor sobre (date, id)
+    @Query(PROCESS_DTO + "WHERE p.task.id = :taskId ORDER BY p.date DESC, p.id DESC")
+    List<ProcessDto> findFirstPageByTask(@Param("taskId") Long taskId, Limit limit);
+
+    @Query(PROCESS_DTO + "WHERE p.task.id = :taskId AND (p.date < :date OR (p.date = :date AND p.id < :id)) " +
+            "ORDER BY p.date DESC, p.id DESC")
+    List<ProcessDto> findPageByTaskAfter(@Param("taskId") Long taskId, @Param("date") LocalDateTime date,
+                                         @Param("id") Long id, Limit limit);
 
 }
@@ -1,9 +1,12 @@
 package TechFixer.TechFixer.repositories;
 
+import TechFixer.TechFixer.dto.StateSummaryDto;
 import TechFixer.TechFixer.entity.State;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +14,9 @@ public interface StateRepository extends JpaRepository<State, Long> {
 
     Optional<State> findByName(String name);
 
+    // Todos los estados con su numero de tareas, contadas en una sola consulta agrupada
+    @Query("SELECT new TechFixer.TechFixer.dto.StateSummaryDto(s.id, s.name, COUNT(t.id)) " +
+            "FROM State s LEFT JOIN s.tasks t GROUP BY s.id, s.name ORDER BY s.id")
+    List<StateSummaryDto> findSummaries();
+
 }
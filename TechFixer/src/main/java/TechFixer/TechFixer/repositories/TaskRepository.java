@@ -1,16 +1,71 @@
 package TechFixer.TechFixer.repositories;
 
+import TechFixer.TechFixer.dto.TaskDto;
 import TechFixer.TechFixer.entity.Task;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface TaskRepository extends JpaRepository<Task, Long> {
 
+    // Proyeccion de una tarea directamente a TaskDto, sin cargar entidades
+    String TASK_DTO = "SELECT new TechFixer.TechFixer.dto.TaskDto(" +
+            "t.id, t.dateIni, t.dateEnd, t.description, d.id, d.name, a.id, a.userName, o.id, o.userName, s.id, s.name, t.version) " +
+            "FROM Task t LEFT JOIN t.dpt d LEFT JOIN t.author a LEFT JOIN t.ownerUser o LEFT JOIN t.state s ";
 
-    // Busca las tareas de un usuario segun una lista de estados
-    List<Task> findByOwnerUser_IdAndState_IdInOrderByDateIniDesc(Long idUser, List<Long> estados);
+    // Todas las tareas como TaskDto, sin procesos
+    @Query(TASK_DTO)
+    List<TaskDto> findAllDtos();
+
+    // Tareas de un usuario segun una lista de estados como TaskDto, sin procesos
+    @Query(TASK_DTO + "WHERE o.id = :idUser AND s.id IN :estados ORDER BY t.dateIni DESC")
+    List<TaskDto> findDtosByOwnerAndStates(@Param("idUser") Long idUser, @Param("estados") List<Long> estados);
+
+    // Tareas concretas como TaskDto, sin procesos
+    @Query(TASK_DTO + "WHERE t.id IN :ids")
+    List<TaskDto> findDtosByIds(@Param("ids") Collection<Long> ids);
+
+    // Una tarea con sus procesos, para la vista de detalle
+    @EntityGraph("Task.withProcesses")
+    Optional<Task> findDetailById(Long id);
+
+    // Primera pagina de tareas, de la mas reciente a la mas antigua
+    @EntityGraph("Task.list")
+    @Query("SELECT t FROM Task t ORDER BY t.dateIni DESC, t.id DESC")
+    List<Task> findFirstPage(Limit limit);
+
+    // Siguiente pagina a partir de la ultima tarea devuelta (keyset sobre dateIni, id)
+    @EntityGraph("Task.list")
+    @Query("SELECT t FROM Task t " +
+            "WHERE t.dateIni < :dateIni OR (t.dateIni = :dateIni AND t.id < :id) " +
+            "ORDER BY t.dateIni DESC, t.id DESC")
+    List<Task> findPageAfter(@Param("dateIni") LocalDateTime dateIni, @Param("id") Long id, Limit limit);
+
+    // IDs de las tareas de un estado a partir de uno dado, en orden
+    @Query("SELECT t.id FROM Task t WHERE t.state.id = :stateId AND t.id > :after ORDER BY t.id")
+    List<Long> findIdsByStateAfter(@Param("stateId") Long stateId, @Param("after") Long after, Limit limit);
+
+    // IDs de las tareas de un departamento a partir de uno dado, en orden
+    @Query("SELECT t.id FROM Task t WHERE t.dpt.id = :dptId AND t.id > :after ORDER BY t.id")
+    List<Long> findIdsByDptAfter(@Param("dptId") Long dptId, @Param("after") Long after, Limit limit);
+
+    // Solo la version de una tarea, para calcular su ETag sin cargarla
+    @Query("SELECT t.version FROM Task t WHERE t.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    // Nueva version de unas tareas a las que se han añadido procesos, con una sola sentencia
+    @Modifying
+    @Query("UPDATE Task t SET t.version = t.version + 1 WHERE t.id IN :ids")
+    int incrementVersions(@Param("ids") Collection<Long> ids);
 
 }
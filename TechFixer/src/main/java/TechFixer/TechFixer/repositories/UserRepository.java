@@ -1,7 +1,14 @@
 package TechFixer.TechFixer.repositories;
 
+import TechFixer.TechFixer.dto.LoginUserDto;
 import TechFixer.TechFixer.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -9,9 +16,23 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
-    // Busca un usuario por su nomobre
+    // Busca un usuario por su nombre. Lo usan la gestion de usuarios y el rehash de contrasenas cuando no llega
+    // un LoginUser; el login y las peticiones con token leen findLoginByUserName, asi que no se cachea
     Optional<User> findByUserName(String name);
     Optional<User> findByUserNameAndIdNot(String name, Long id);
 
+    // Solo las columnas del login, con el rol en la misma consulta. Tambien se guarda en la cache de consultas
+    @Query("SELECT new TechFixer.TechFixer.dto.LoginUserDto(u.id, u.userName, u.password, r.id, r.name) " +
+            "FROM User u JOIN u.rol r WHERE u.userName = :name")
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_CACHE_REGION, value = "query.loginByName")
+    })
+    Optional<LoginUserDto> findLoginByUserName(String name);
+
+    // Cambia la contraseña solo si sigue siendo la leida: si otra peticion la ha cambiado mientras tanto no se toca
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :id AND u.password = :oldPassword")
+    int updatePassword(@Param("id") Long id, @Param("oldPassword") String oldPassword, @Param("password") String password);
 
 }
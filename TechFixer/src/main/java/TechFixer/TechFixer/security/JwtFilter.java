@@ -1,6 +1,8 @@
 package TechFixer.TechFixer.security;
 
+import TechFixer.TechFixer.config.AuthProperties;
 import TechFixer.TechFixer.services.CustomUserDetailsService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -8,6 +10,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
@@ -15,28 +18,42 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 
+/**
+ * Authenticates the requests that carry a token in the {@code Authorization} header. By default the
+ * authentication is built from the verified claims of the token, so a request only costs the signature
+ * check, and not even that once the token is in {@link VerifiedTokens}; revoked tokens are rejected through
+ * {@link TokenEpochs}. With {@code techfixer.auth.claims=false}
+ * the user is loaded from the database on every request instead.
+ */
 @Component
 @AllArgsConstructor
 public class JwtFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final AuthProperties properties;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,HttpServletResponse response, FilterChain chain) throws ServletException, IOException{
 
         String header = request.getHeader("Authorization");
-        String username = null;
-        String token = null;
+        Claims claims = null;
 
         if (header != null && header.startsWith("Bearer ")) {
-            token = header.substring(7);
-            username = jwtUtil.extractName(token);
+            claims = jwtUtil.parse(header.substring(7));
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            if (jwtUtil.validateToken(token, userDetails)) {
+        if (claims != null && claims.getSubject() != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            UserDetails userDetails = null;
+            if (properties.isClaims()) {
+                // El usuario y sus roles salen del token ya verificado, sin consultar la base de datos
+                if (jwtUtil.isCurrent(claims)) userDetails = new User(claims.getSubject(), "", jwtUtil.authorities(claims));
+            } else {
+                userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
+                if (!jwtUtil.validateToken(claims, userDetails)) userDetails = null;
+            }
+
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken auth =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails, null, userDetails.getAuthorities());
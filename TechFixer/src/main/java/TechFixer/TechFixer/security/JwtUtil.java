@@ -1,36 +1,92 @@
 package TechFixer.TechFixer.security;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 @Component
 public class JwtUtil {
 
     private static final Key password = Keys.secretKeyFor(SignatureAlgorithm.HS256);
 
-    public String generateToken(UserDetails userDetails){
+    // Claims con el ID del usuario y su epoca al emitir el token, ver TokenEpochs
+    private static final String USER_ID = "uid";
+    private static final String EPOCH = "epoch";
+
+    // El parser no guarda estado entre tokens, se reutiliza en todas las peticiones
+    private static final JwtParser parser = Jwts.parserBuilder().setSigningKey(password).build();
+
+    private final TokenEpochs tokenEpochs;
+    private final VerifiedTokens verifiedTokens;
+
+    public JwtUtil(TokenEpochs tokenEpochs, VerifiedTokens verifiedTokens) {
+        this.tokenEpochs = tokenEpochs;
+        this.verifiedTokens = verifiedTokens;
+    }
+
+    /**
+     * Signs a token for the user with the epoch read when the user was loaded, so a revocation that lands
+     * between loading the user and signing the token also revokes this token.
+     */
+    public String generateToken(UserDetails userDetails, Long userId, long epoch){
         return Jwts.builder()
                 .setSubject(userDetails.getUsername())
                 .claim("rol", userDetails.getAuthorities())
+                .claim(USER_ID, userId)
+                .claim(EPOCH, epoch)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60))
                 .signWith(password)
                 .compact();
     }
 
+    /**
+     * Verifies the signature and expiration of a token and returns its claims. A token verified before is
+     * not parsed again while it has not expired, see {@link VerifiedTokens}.
+     *
+     * @throws io.jsonwebtoken.JwtException if the token is malformed, expired or not signed by this server
+     */
+    public Claims parse(String token){
+        return verifiedTokens.get(token, jws -> parser.parseClaimsJws(jws).getBody());
+    }
+
     public String extractName(String token){
-        return Jwts.parser().setSigningKey(password)
-                .parseClaimsJws(token).getBody().getSubject();
+        return parse(token).getSubject();
+    }
+
+    public boolean validateToken(Claims claims, UserDetails userDetails){
+        return claims.getSubject().equals(userDetails.getUsername());
     }
 
-    public boolean validateToken(String token, UserDetails userDetails){
-        return extractName(token).equals(userDetails.getUsername());
+    /** Tells whether the verified claims belong to a token that has not been revoked since it was issued. */
+    public boolean isCurrent(Claims claims){
+        Number userId = claims.get(USER_ID, Number.class);
+        Number epoch = claims.get(EPOCH, Number.class);
+        return userId != null && epoch != null && tokenEpochs.isCurrent(userId.longValue(), epoch.longValue());
+    }
+
+    /** Rebuilds the authorities written in the {@code rol} claim by {@link #generateToken(UserDetails, Long, long)}. */
+    public List<GrantedAuthority> authorities(Claims claims){
+        Collection<?> rol = claims.get("rol", Collection.class);
+        if (rol == null) return List.of();
+
+        // Spring serializa cada autoridad como {"authority": "ROLE_..."}
+        return rol.stream()
+                .map(item -> item instanceof Map<?, ?> map ? map.get("authority") : item)
+                .map(authority -> (GrantedAuthority) new SimpleGrantedAuthority(String.valueOf(authority)))
+                .toList();
     }
 
 }
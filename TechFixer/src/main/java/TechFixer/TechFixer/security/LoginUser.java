@@ -0,0 +1,50 @@
+package TechFixer.TechFixer.security;
+
+import TechFixer.TechFixer.dto.LoginUserDto;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.List;
+
+/**
+ * The user loaded to authenticate a login, which also keeps its ID and role so the token and the response
+ * of the login are built from the same row, without reading the user again. It also keeps the token epoch
+ * of the user read with that row, which is the one its token is signed with.
+ */
+public class LoginUser extends User {
+
+    private final Long id;
+    private final Long rolId;
+    private final long epoch;
+
+    public LoginUser(LoginUserDto user, long epoch){
+        super(user.getUserName(), user.getPassword(), List.of(new SimpleGrantedAuthority(user.getRolName())));
+        this.id = user.getId();
+        this.rolId = user.getRolId();
+        this.epoch = epoch;
+    }
+
+    private LoginUser(LoginUser user, String password){
+        super(user.getUsername(), password, user.getAuthorities());
+        this.id = user.id;
+        this.rolId = user.rolId;
+        this.epoch = user.epoch;
+    }
+
+    // El mismo usuario con la contraseña cifrada de nuevo
+    public LoginUser withPassword(String password){
+        return new LoginUser(this, password);
+    }
+
+    public Long getId(){
+        return id;
+    }
+
+    public Long getRolId(){
+        return rolId;
+    }
+
+    public long getEpoch(){
+        return epoch;
+    }
+}
@@ -0,0 +1,130 @@
+package TechFixer.TechFixer.security;
+
+import TechFixer.TechFixer.config.PasswordProperties;
+import TechFixer.TechFixer.exception.PasswordHashingBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt password encoder that hashes and verifies on its own bounded pool of threads instead of the
+ * request threads. The request thread still waits for the result, but at most {@code threads} hashes run
+ * at once and at most {@code queue-capacity} requests wait for them: a burst of logins can no longer take
+ * every request thread, the ones that do not fit are rejected straight away with a
+ * {@link PasswordHashingBusyException}, answered as 503 by the controllers.
+ * <p>
+ * Hashes whose cost differs from the configured one report {@link #upgradeEncoding(String)}, so the
+ * authentication provider hashes the password again with the current cost after a successful login.
+ * The time of every hash is published as the {@code techfixer.password.hash} timer, with a histogram and
+ * tagged by operation, together with the waiting requests and the rejections.
+ */
+public class PooledPasswordEncoder implements PasswordEncoder, AutoCloseable {
+
+    // Coste de un hash BCrypt: $2a$10$...
+    private static final Pattern COST = Pattern.compile("\\A\\$2[abyx]?\\$(\\d\\d)\\$");
+
+    private final BCryptPasswordEncoder bcrypt;
+    private final int strength;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejected;
+
+    public PooledPasswordEncoder(PasswordProperties properties, MeterRegistry registry) {
+        this.strength = properties.getStrength();
+        this.bcrypt = new BCryptPasswordEncoder(strength);
+        this.timeoutMillis = properties.getTimeout().toMillis();
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = timer("encode", registry);
+        this.matchesTimer = timer("matches", registry);
+        this.rejected = Counter.builder("techfixer.password.rejected")
+                .description("Password hashes rejected because the pool and its queue were full")
+                .register(registry);
+        Gauge.builder("techfixer.password.queue", executor, pool -> pool.getQueue().size())
+                .description("Password hashes waiting for a free thread")
+                .register(registry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword){
+        return run(encodeTimer, () -> bcrypt.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword){
+        return run(matchesTimer, () -> bcrypt.matches(rawPassword, encodedPassword));
+    }
+
+    /** Tells whether the hash was made with a cost other than the configured one, higher or lower. */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword){
+        if (encodedPassword == null) return false;
+        Matcher matcher = COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    @Override
+    public void close(){
+        executor.shutdownNow();
+    }
+
+    private <T> T run(Timer timer, Callable<T> hash){
+        Future<T> future;
+        try {
+            future = executor.submit(() -> timer.recordCallable(hash));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingBusyException("Demasiadas peticiones de acceso a la vez, vuelve a intentarlo en unos segundos");
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Si aun estaba en la cola no llega a ejecutarse
+            future.cancel(true);
+            rejected.increment();
+            throw new PasswordHashingBusyException("Demasiadas peticiones de acceso a la vez, vuelve a intentarlo en unos segundos");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException("Peticion interrumpida mientras se comprobaba la contraseña");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Timer timer(String operation, MeterRegistry registry){
+        return Timer.builder("techfixer.password.hash")
+                .description("Time spent hashing or verifying a password")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
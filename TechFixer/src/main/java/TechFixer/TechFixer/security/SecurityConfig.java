@@ -1,6 +1,9 @@
 package TechFixer.TechFixer.security;
 
+import TechFixer.TechFixer.config.PasswordProperties;
 import TechFixer.TechFixer.services.CustomUserDetailsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
 import lombok.AllArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,7 +15,6 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.annotation.web.configurers.HeadersConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -38,6 +40,8 @@ public class SecurityConfig {
                 .cors(Customizer.withDefaults())
                 .authorizeHttpRequests(auth -> auth
                                // .anyRequest().permitAll()
+                        // Las respuestas en streaming vuelven a pasar por aqui al terminar; la peticion original ya fue autorizada
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/api/user/**", "/h2-console/**").permitAll()
                         .anyRequest().authenticated()
                 )
@@ -67,9 +71,10 @@ public class SecurityConfig {
         return source;
     }
 
+    // BCrypt en su propio grupo de hilos, ver PooledPasswordEncoder
     @Bean
-    public PasswordEncoder encoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder encoder(PasswordProperties properties, MeterRegistry registry) {
+        return new PooledPasswordEncoder(properties, registry);
     }
 
     @Bean
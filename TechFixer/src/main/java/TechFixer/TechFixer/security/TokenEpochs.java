@@ -0,0 +1,51 @@
+package TechFixer.TechFixer.security;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-user token epoch used to revoke the tokens of a user without a database lookup per request. Every
+ * token carries the epoch of its user when it was issued, and a token is only accepted while that epoch
+ * is still the current one. Changing the name, password or role of a user, or deleting it, moves its epoch
+ * forward and so revokes every token issued before; logging in again does not, so a user can hold several
+ * valid tokens at once.
+ * <p>
+ * The epochs live in memory only. That is enough because the signing key of {@link JwtUtil} is generated
+ * at startup: a restart already invalidates every token issued before it.
+ */
+@Component
+public class TokenEpochs {
+
+    // Solo estan los usuarios revocados alguna vez desde el arranque, el resto tienen la epoca 0
+    private final ConcurrentMap<Long, Long> epochs = new ConcurrentHashMap<>();
+
+    /** Returns the epoch that new tokens of the user must carry. */
+    public long current(Long userId){
+        return epochs.getOrDefault(userId, 0L);
+    }
+
+    /** Tells whether a token of the user issued with the given epoch has not been revoked. */
+    public boolean isCurrent(Long userId, long epoch){
+        return userId != null && epoch == current(userId);
+    }
+
+    /**
+     * Revokes every token issued so far for the user. Inside a transaction the epoch moves again when it
+     * ends, so a login served with the old data before the commit does not get a token that stays valid.
+     */
+    public void revoke(Long userId){
+        epochs.merge(userId, 1L, Long::sum);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status){
+                    epochs.merge(userId, 1L, Long::sum);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package TechFixer.TechFixer.security;
+
+import TechFixer.TechFixer.config.AuthProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Claims of the tokens whose signature has already been verified, so a client that sends the same token
+ * on every request pays for the HMAC check and the JSON parsing only once. Entries are keyed by the
+ * SHA-256 digest of the token, not the token itself, and are dropped at the expiration of the token or
+ * when the cache is full. Reads do not lock; the hits and misses are published as the {@code tokens}
+ * cache metrics.
+ * <p>
+ * Only the signature check is saved: revocation still goes through {@link TokenEpochs} on every request.
+ */
+@Component
+public class VerifiedTokens {
+
+    private final Cache<String, Claims> cache;
+
+    public VerifiedTokens(AuthProperties properties, MeterRegistry registry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getTokenCacheSize())
+                .expireAfter(new UntilExpiration())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "tokens");
+    }
+
+    /**
+     * Returns the claims of a token verified before, or verifies it now and keeps its claims.
+     *
+     * @param token the compact JWS as received
+     * @param verify checks the signature and expiration of the token and returns its claims, or throws
+     */
+    public Claims get(String token, Function<String, Claims> verify){
+        return cache.get(digest(token), digest -> verify.apply(token));
+    }
+
+    // Cada entrada dura hasta el exp de su token; leerla no alarga su vida. Un token sin exp no caduca
+    private static class UntilExpiration implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String digest, Claims claims, long currentTime){
+            Date expiration = claims.getExpiration();
+            if (expiration == null) return Long.MAX_VALUE;
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiration.getTime() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String digest, Claims claims, long currentTime, long currentDuration){
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String digest, Claims claims, long currentTime, long currentDuration){
+            return currentDuration;
+        }
+    }
+
+    private static String digest(String token){
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // Todas las JVM incluyen SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.entity.Department;
+import TechFixer.TechFixer.entity.Process;
+import TechFixer.TechFixer.entity.Roles;
+import TechFixer.TechFixer.entity.State;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.event.TaskArchivedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Change counters of every collection served by the API, used to build the ETags of the read endpoints
+ * without loading or mapping the data.
+ * <p>
+ * A counter grows once for every transaction that changes its collection, after that transaction commits,
+ * so an ETag never labels data older than the one it was computed for. The counters live in memory: the
+ * ETags also carry the time the application started, so the ones issued before a restart no longer match.
+ */
+@Component
+public class ChangeCounters {
+
+    /** Collections with their own counter. */
+    public enum Resource {
+        STATES, DEPARTMENTS, ROLES, USERS, TASKS, PROCESSES;
+
+        public static Resource of(Object entity){
+            return switch (entity) {
+                case State state -> STATES;
+                case Department department -> DEPARTMENTS;
+                case Roles roles -> ROLES;
+                case User user -> USERS;
+                case Task task -> TASKS;
+                case Process process -> PROCESSES;
+                default -> throw new IllegalArgumentException("Entidad sin contador de cambios: " + entity.getClass());
+            };
+        }
+    }
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final EnumMap<Resource, AtomicLong> counters = new EnumMap<>(Resource.class);
+
+    public ChangeCounters() {
+        for (Resource resource : Resource.values()) counters.put(resource, new AtomicLong());
+    }
+
+    /**
+     * Builds the ETag of a response made from the given collections.
+     *
+     * @param resources the collections the response is read from
+     * @return the ETag value, without quotes
+     */
+    public String etag(Resource... resources){
+        return epoch + "-" + Arrays.stream(resources)
+                .map(resource -> String.valueOf(counters.get(resource).get()))
+                .collect(Collectors.joining("."));
+    }
+
+    /**
+     * Builds the ETag of a response about one element, identified by a key that changes with the element
+     * (for example its ID and version), that also shows data from the given collections.
+     */
+    public String etag(String key, Resource... resources){
+        return key + "-" + etag(resources);
+    }
+
+    /**
+     * Records that the current transaction changes the given collections. Their counters grow once the
+     * transaction commits, or straight away if there is no transaction.
+     * <p>
+     * Caches refreshed after the commit, like the {@link PendingBoard}, call it again once they are up to
+     * date, so an ETag handed out while they were still being refreshed stops matching.
+     */
+    public void changed(Resource... resources){
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            increment(EnumSet.copyOf(Arrays.asList(resources)));
+            return;
+        }
+
+        // Una sola sincronizacion por transaccion, aunque cambien miles de filas
+        Pending pending = TransactionSynchronizationManager.getSynchronizations().stream()
+                .filter(Pending.class::isInstance).map(Pending.class::cast)
+                .findFirst().orElseGet(() -> {
+                    Pending created = new Pending();
+                    TransactionSynchronizationManager.registerSynchronization(created);
+                    return created;
+                });
+        pending.resources.addAll(Arrays.asList(resources));
+    }
+
+    /** The archiver moves tasks and processes with SQL statements that the entity listeners do not see. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTaskArchived(TaskArchivedEvent event){
+        increment(EnumSet.of(Resource.TASKS, Resource.PROCESSES));
+    }
+
+    private void increment(Set<Resource> resources){
+        resources.forEach(resource -> counters.get(resource).incrementAndGet());
+    }
+
+    // Colecciones cambiadas por la transaccion en curso
+    private final class Pending implements TransactionSynchronization {
+
+        private final Set<Resource> resources = EnumSet.noneOf(Resource.class);
+
+        @Override
+        public void afterCommit(){
+            increment(resources);
+        }
+    }
+}
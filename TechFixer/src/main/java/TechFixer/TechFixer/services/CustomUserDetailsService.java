@@ -1,34 +1,56 @@
 package TechFixer.TechFixer.services;
 
-import TechFixer.TechFixer.entity.User;
 import TechFixer.TechFixer.repositories.UserRepository;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import TechFixer.TechFixer.security.LoginUser;
+import TechFixer.TechFixer.security.TokenEpochs;
+import jakarta.transaction.Transactional;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository repo;
+    private final TokenEpochs tokenEpochs;
 
-    public CustomUserDetailsService(UserRepository repo){
+    public CustomUserDetailsService(UserRepository repo, TokenEpochs tokenEpochs){
         this.repo = repo;
+        this.tokenEpochs = tokenEpochs;
     }
 
+    /**
+     * Loads the columns a login needs, role included, with a single query. The returned {@link LoginUser}
+     * also carries the ID and role of the user, so the login builds its token and response from it, and the
+     * token epoch of the user read right after the row, which the token is signed with.
+     */
     @Override
-    public UserDetails loadUserByUsername(String username){
-        User user = repo.findByUserName(username).orElseThrow();
-        return new org.springframework.security.core.userdetails.User(
-                user.getUserName(),
-                user.getPassword(),
-                List.of(new SimpleGrantedAuthority(user.getRol().getName()))
-        );
-
+    public LoginUser loadUserByUsername(String username){
+        return repo.findLoginByUserName(username)
+                .map(user -> new LoginUser(user, tokenEpochs.current(user.getId())))
+                .orElseThrow();
     }
 
-
+    /**
+     * Stores the password of a user hashed again after a successful login, when its hash was made with a
+     * BCrypt cost other than the configured one. The password itself does not change, so the tokens of the
+     * user stay valid.
+     * <p>
+     * The new hash is only written while the stored one is still the hash checked by the login. If the password
+     * was changed in the meantime the change is kept and the rehash is dropped.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword){
+        Long id = userDetails instanceof LoginUser loginUser
+                ? loginUser.getId()
+                : repo.findByUserName(userDetails.getUsername()).orElseThrow().getId();
+        if (repo.updatePassword(id, userDetails.getPassword(), newPassword) == 0) return userDetails;
+        // El usuario autenticado sigue siendo un LoginUser, el login lo usa para el token
+        return userDetails instanceof LoginUser loginUser
+                ? loginUser.withPassword(newPassword)
+                : org.springframework.security.core.userdetails.User.withUserDetails(userDetails).password(newPassword).build();
+    }
 
 }
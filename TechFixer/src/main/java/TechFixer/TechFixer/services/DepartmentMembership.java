@@ -0,0 +1,144 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.MembershipDto;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.DepartmentRepository;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.transaction.Transactional;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Changes the users of a department as a set: the wanted members are compared with the rows of
+ * {@code users_dpts} and only the difference is written, with batched inserts and deletes, in the
+ * transaction of the caller. The department row is locked first, so two changes of the same department
+ * are applied one after the other instead of mixing their differences.
+ * <p>
+ * The rows are written without loading the users, so the {@code User.departments} collections of the
+ * affected users are dropped from the second-level cache, once straight away and again when the
+ * transaction ends, and the change is recorded in the {@link ChangeCounters} of the users.
+ */
+@Service
+public class DepartmentMembership {
+
+    // Filas por lote en las escrituras de users_dpts, y IDs por consulta al comprobar los usuarios
+    private static final int BATCH_SIZE = 1_000;
+
+    private static final String DEPARTMENTS_REGION = User.class.getName() + ".departments";
+
+    private final DepartmentRepository repoDpt;
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final ChangeCounters changeCounters;
+    private final Cache cache;
+
+    public DepartmentMembership(DepartmentRepository repoDpt, JdbcTemplate jdbc, ChangeCounters changeCounters,
+                                EntityManagerFactory emf) {
+        this.repoDpt = repoDpt;
+        this.jdbc = jdbc;
+        this.namedJdbc = new NamedParameterJdbcTemplate(jdbc);
+        this.changeCounters = changeCounters;
+        this.cache = emf.unwrap(SessionFactory.class).getCache();
+    }
+
+    /**
+     * Makes the given users the only members of a department: the ones missing are added and the ones
+     * not in the list are removed.
+     *
+     * @param dptId the unique identifier of the department
+     * @param userIds the IDs of every user that must belong to the department, repeated IDs are ignored
+     * @return the number of users added and removed
+     * @throws IllegalArgumentException if the list or any of its IDs is null
+     * @throws NoSuchElementException if the department or any of the users does not exist
+     */
+    @Transactional
+    public MembershipDto replace(Long dptId, Collection<Long> userIds){
+        Set<Long> wanted = validate(dptId, userIds);
+        Set<Long> current = members(dptId);
+
+        List<Long> toAdd = wanted.stream().filter(id -> !current.contains(id)).toList();
+        List<Long> toRemove = current.stream().filter(id -> !wanted.contains(id)).toList();
+        return apply(dptId, toAdd, toRemove);
+    }
+
+    /**
+     * Adds the given users to a department, keeping the current members.
+     *
+     * @param dptId the unique identifier of the department
+     * @param userIds the IDs of the users to add, the ones already in the department are ignored
+     * @return the number of users added
+     * @throws IllegalArgumentException if the list or any of its IDs is null
+     * @throws NoSuchElementException if the department or any of the users does not exist
+     */
+    @Transactional
+    public MembershipDto add(Long dptId, Collection<Long> userIds){
+        Set<Long> wanted = validate(dptId, userIds);
+        Set<Long> current = members(dptId);
+
+        return apply(dptId, wanted.stream().filter(id -> !current.contains(id)).toList(), List.of());
+    }
+
+    // Bloquea el departamento y comprueba que existan todos los usuarios, con una consulta por lote de IDs
+    private Set<Long> validate(Long dptId, Collection<Long> userIds){
+        if (userIds == null || userIds.stream().anyMatch(Objects::isNull)) throw new IllegalArgumentException("La lista de usuarios no es valida");
+        if (dptId == null || repoDpt.findForUpdateById(dptId).isEmpty()) throw new NoSuchElementException("El departamento no existe");
+
+        Set<Long> wanted = new LinkedHashSet<>(userIds);
+        List<Long> ids = List.copyOf(wanted);
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            Set<Long> found = new HashSet<>(namedJdbc.queryForList("SELECT id FROM users WHERE id IN (:ids)", Map.of("ids", batch), Long.class));
+            for (Long id : batch) {
+                if (!found.contains(id)) throw new NoSuchElementException("Usuario " + id + " no existe");
+            }
+        }
+        return wanted;
+    }
+
+    private Set<Long> members(Long dptId){
+        return new HashSet<>(jdbc.queryForList("SELECT user_id FROM users_dpts WHERE dpt_id = ?", Long.class, dptId));
+    }
+
+    private MembershipDto apply(Long dptId, List<Long> toAdd, List<Long> toRemove){
+        jdbc.batchUpdate("INSERT INTO users_dpts (user_id, dpt_id) VALUES (?, ?)", toAdd, BATCH_SIZE,
+                (ps, userId) -> { ps.setLong(1, userId); ps.setLong(2, dptId); });
+        jdbc.batchUpdate("DELETE FROM users_dpts WHERE dpt_id = ? AND user_id = ?", toRemove, BATCH_SIZE,
+                (ps, userId) -> { ps.setLong(1, dptId); ps.setLong(2, userId); });
+
+        if (!toAdd.isEmpty() || !toRemove.isEmpty()) {
+            List<Long> changed = new ArrayList<>(toAdd);
+            changed.addAll(toRemove);
+            evict(changed);
+            changeCounters.changed(ChangeCounters.Resource.USERS);
+        }
+        return new MembershipDto(toAdd.size(), toRemove.size());
+    }
+
+    // Se quita ahora y al terminar la transaccion: mientras tanto otro hilo puede haber leido la lista anterior
+    private void evict(List<Long> userIds){
+        userIds.forEach(id -> cache.evictCollectionData(DEPARTMENTS_REGION, id));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status){
+                    userIds.forEach(id -> cache.evictCollectionData(DEPARTMENTS_REGION, id));
+                }
+            });
+        }
+    }
+}
@@ -1,18 +1,25 @@
 package TechFixer.TechFixer.services;
 
+import TechFixer.TechFixer.config.ReferenceProperties;
 import TechFixer.TechFixer.dto.DepartmentDto;
+import TechFixer.TechFixer.dto.DepartmentSummaryDto;
+import TechFixer.TechFixer.dto.MembershipDto;
+import TechFixer.TechFixer.dto.PageDto;
 import TechFixer.TechFixer.entity.Department;
-import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.event.ReferenceRenamedEvent;
 import TechFixer.TechFixer.exception.DepartmentAlreadyExistException;
 import TechFixer.TechFixer.exception.NotFoundDepartmentException;
+import TechFixer.TechFixer.mapper.CursorMapper;
 import TechFixer.TechFixer.mapper.DepartmentMapper;
 import TechFixer.TechFixer.repositories.DepartmentRepository;
+import TechFixer.TechFixer.repositories.TaskRepository;
 import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -21,7 +28,11 @@ import java.util.NoSuchElementException;
 public class DepartmentService {
 
     private final DepartmentRepository repo;
-    private final UserService userService;
+    private final DepartmentMembership membership;
+    private final ReferenceCache referenceCache;
+    private final ApplicationEventPublisher events;
+    private final TaskRepository repoTask;
+    private final ReferenceProperties properties;
 
     /**
      * Initializes default departments in the database if no departments currently exist.
@@ -42,6 +53,7 @@ public class DepartmentService {
                     new Department("Comercial")
             ));
         }
+        referenceCache.invalidateDepartments();
     }
 
     /**
@@ -54,6 +66,7 @@ public class DepartmentService {
      * @throws DepartmentAlreadyExistException if a department with the same name already exists.
      * @throws NoSuchElementException if any user ID in the provided list does not reference an existing user.
      */
+    @Transactional
     public void save(DepartmentDto dto){
 
         // Sino tenemos nombre, excepcion
@@ -69,13 +82,12 @@ public class DepartmentService {
         Department newDep = DepartmentMapper.toDepartment(dto, null, null);
 
         repo.save(newDep);
+        referenceCache.invalidateDepartments();
 
-        // Una vez creado el departamento, le asignamos a los usuarios el departamento
-        // // Si algun usuarios no existe, saltará excepcion.
+        // Una vez creado el departamento, le asignamos los usuarios en la misma transaccion.
+        // Si algun usuario no existe, saltará excepcion y tampoco se crea el departamento.
         if(dto.getUsersID() != null && !dto.getUsersID().isEmpty()) {
-            dto.getUsersID().forEach(userID -> {
-                userService.addDepartment(userID, newDep.getId());
-            });
+            membership.add(newDep.getId(), dto.getUsersID());
         }
     }
 
@@ -90,44 +102,46 @@ public class DepartmentService {
      * @throws NoSuchElementException if the department with the given ID does not exist.
      * @throws NoSuchElementException if any user ID in the provided list does not reference an existing user.
      */
+    @Transactional
     public void update(DepartmentDto dto){
 
         // Obtenemos los datos del departamento de la base de datos
         Department dptBd = repo.findById(dto.getId()).orElseThrow(() -> new NoSuchElementException("El departamento no existe"));
 
         // Comprbamos si hay que cambiar el nombre
+        boolean renamed = false;
         if( dto.getName() != null && !dto.getName().isEmpty() && !dto.getName().equals(dptBd.getName())){
             // Comprobamos que no haya otro departamento con el nombre que le queremos dar
             if (repo.findByName(dto.getName()).isPresent()) throw new DepartmentAlreadyExistException("El departamento ya exsite");
 
             dptBd.setName(dto.getName());
+            renamed = true;
         }
 
-        // Comprobamos si hay que cambiar usuarios
+        // Si nos llegan usuarios, pasan a ser los unicos del departamento: solo se escribe la diferencia
         if(dto.getUsersID() != null){
-
-            // Obtenemos los usuarios del dto, sin alguno no exsite saltara excepcion
-            List<User> listUsers = dto.getUsersID().stream().map(userService::findById).toList();
-
-            // Comparamos los usuarios de bd con los que nos han pasado para obtener los nuevos usuarios
-            List<User> toAdd = new ArrayList<>(listUsers);
-            toAdd.removeAll(dptBd.getUsers());
-            System.out.println("USUARIOS A AÑADIR: " + toAdd);
-
-            toAdd.forEach(user -> { userService.addDepartment(user.getId(), dptBd.getId()); });
-            System.out.println("USUARIOS añadidos.");
-
-
-            // Ahora comparamos de nuevo los usuarios para obtener los que ya no formarán parte
-            List<User> toDelete = new ArrayList<>(dptBd.getUsers());
-            toDelete.removeAll(listUsers);
-            System.out.println("USUARIOS A ELIMINAR: " + toDelete);
-
-            toDelete.forEach(user -> { userService.removeDepartment(user.getId(), dptBd.getId()); });
-            System.out.println("Usuarios eliminados");
+            membership.replace(dptBd.getId(), dto.getUsersID());
         }
 
         repo.save(dptBd);
+        if (renamed) referenceCache.invalidateDepartments();
+
+        // El nombre del departamento se copia en las tareas que se sirven desde memoria
+        if (renamed) events.publishEvent(new ReferenceRenamedEvent("Department", dptBd.getId()));
+    }
+
+    /**
+     * Replaces the users of a department with the given ones in a single transaction. Only the users that
+     * join or leave the department are written, see {@link DepartmentMembership}.
+     *
+     * @param id the unique identifier of the department.
+     * @param userIds the IDs of every user that must belong to the department.
+     * @return the number of users added and removed.
+     * @throws IllegalArgumentException if the list or any of its IDs is null.
+     * @throws NoSuchElementException if the department or any of the users does not exist.
+     */
+    public MembershipDto updateMembers(Long id, List<Long> userIds){
+        return membership.replace(id, userIds);
     }
 
     /**
@@ -150,6 +164,7 @@ public class DepartmentService {
 
 
         repo.delete(delDep);
+        referenceCache.invalidateDepartments();
     }
 
     /**
@@ -162,6 +177,60 @@ public class DepartmentService {
                 repo.findAll().stream().map(DepartmentMapper::toDto).toList();
     }
 
+    /**
+     * Retrieves all departments with the number of users and tasks in each one instead of their IDs.
+     * The counts come from a single query, so the cost does not depend on loading the users and tasks;
+     * the IDs are available page by page through {@link #findUserIds(Long, String, Integer)} and
+     * {@link #findTaskIds(Long, String, Integer)}.
+     *
+     * @return a list of {@code DepartmentSummaryDto} objects, ordered by ID.
+     */
+    public List<DepartmentSummaryDto> findSummaries(){
+        return repo.findSummaries();
+    }
+
+    /**
+     * Retrieves one page of the IDs of the users of a department, in ascending order. The client walks
+     * through the pages sending back the {@code nextCursor} returned with the previous page.
+     *
+     * @param id the unique identifier of the department.
+     * @param cursor the cursor returned with the previous page, or null for the first page.
+     * @param size the number of IDs wanted; null uses the configured default and values over the
+     *             configured maximum are capped.
+     * @return a page with the user IDs and the cursor of the next page, null if there are no more users.
+     * @throws NoSuchElementException if no department with the given ID exists.
+     * @throws IllegalArgumentException if the cursor or the size are not valid.
+     */
+    public PageDto<Long> findUserIds(Long id, String cursor, Integer size){
+        Long after = CursorMapper.decodeId(cursor);
+        int pageSize = pageSize(size);
+        if (!repo.existsById(id)) throw new NoSuchElementException("Departamento no encontrado");
+
+        // Pedimos un elemento de mas para saber si existe una pagina siguiente
+        return CursorMapper.toIdPage(
+                repo.findUserIdsAfter(id, after != null ? after : Long.MIN_VALUE, Limit.of(pageSize + 1)), pageSize);
+    }
+
+    /**
+     * Retrieves one page of the IDs of the tasks of a department, in ascending order. Works like
+     * {@link #findUserIds(Long, String, Integer)}.
+     *
+     * @param id the unique identifier of the department.
+     * @param cursor the cursor returned with the previous page, or null for the first page.
+     * @param size the number of IDs wanted; null uses the configured default.
+     * @return a page with the task IDs and the cursor of the next page, null if there are no more tasks.
+     * @throws NoSuchElementException if no department with the given ID exists.
+     * @throws IllegalArgumentException if the cursor or the size are not valid.
+     */
+    public PageDto<Long> findTaskIds(Long id, String cursor, Integer size){
+        Long after = CursorMapper.decodeId(cursor);
+        int pageSize = pageSize(size);
+        if (!repo.existsById(id)) throw new NoSuchElementException("Departamento no encontrado");
+
+        return CursorMapper.toIdPage(
+                repoTask.findIdsByDptAfter(id, after != null ? after : Long.MIN_VALUE, Limit.of(pageSize + 1)), pageSize);
+    }
+
     /**
      * Retrieves a department by its unique identifier and converts it into a DepartmentDto.
      * Throws a NoSuchElementException if the department is not found.
@@ -176,5 +245,9 @@ public class DepartmentService {
                 );
     }
 
-
+    private int pageSize(Integer size){
+        if (size == null) return properties.getPageSize();
+        if (size < 1) throw new IllegalArgumentException("El tamaño de pagina debe ser mayor que 0");
+        return Math.min(size, properties.getMaxPageSize());
+    }
 }
@@ -0,0 +1,245 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.BoardProperties;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.event.ReferenceRenamedEvent;
+import TechFixer.TechFixer.event.TaskChangedEvent;
+import TechFixer.TechFixer.event.TaskSnapshot;
+import TechFixer.TechFixer.mapper.TaskMapper;
+import TechFixer.TechFixer.repositories.ProcessRepository;
+import TechFixer.TechFixer.repositories.TaskRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.transaction.Transactional;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of the pending tasks (active, in process and paused) of each owner, with their number of
+ * processes and the most recent one.
+ * <p>
+ * The board of an owner is loaded from the database the first time it is read and then kept up to date by
+ * the {@link TaskChangedEvent}s published after each commit, reloading only the tasks that changed.
+ * Boards are immutable and replaced as a whole, so reads never take a lock, and every read gets its own
+ * copy of the tasks. At most {@code techfixer.board.max-owners} boards are kept, and a board that is not
+ * read for {@code techfixer.board.expire-after-access} is dropped. A scheduled check compares the cached
+ * boards with the database and repairs any difference.
+ */
+@Component
+public class PendingBoard {
+
+    // Estados pendientes y la columna del tablero en la que se muestran
+    private static final Map<Long, String> COLUMNS = Map.of(1L, "active", 2L, "process", 3L, "paused");
+
+    // Contadores de cambios repartidos por encargado; dos encargados pueden compartir uno, eso solo hace
+    // que alguna carga no se guarde y se repita
+    private static final int VERSION_SLOTS = 4096;
+
+    private static final Comparator<TaskDto> NEWEST_FIRST = Comparator
+            .comparing(TaskDto::getDateIni, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(TaskDto::getId, Comparator.reverseOrder());
+
+    private final TaskRepository repoTask;
+    private final ProcessRepository repoProcess;
+    private final ChangeCounters changeCounters;
+
+    private final Cache<Long, Board> cache;
+    private final ConcurrentMap<Long, Board> boards;
+    // Cambios aplicados a cada encargado, para no guardar un tablero que se ha leido mientras cambiaba
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_SLOTS);
+    private volatile Instant lastVerification = Instant.now();
+    private final Counter repairs;
+
+    public PendingBoard(TaskRepository repoTask, ProcessRepository repoProcess, ChangeCounters changeCounters,
+                        BoardProperties properties, MeterRegistry registry) {
+        this.repoTask = repoTask;
+        this.repoProcess = repoProcess;
+        this.changeCounters = changeCounters;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxOwners())
+                .expireAfterAccess(properties.getExpireAfterAccess())
+                .recordStats()
+                .build();
+        this.boards = cache.asMap();
+        CaffeineCacheMetrics.monitor(registry, cache, "board");
+        this.repairs = Counter.builder("techfixer.board.repairs")
+                .description("Boards that differed from the database and were replaced by the consistency check")
+                .register(registry);
+        Gauge.builder("techfixer.board.owners", boards, Map::size)
+                .description("Owners whose pending board is cached")
+                .register(registry);
+        Gauge.builder("techfixer.board.tasks", this, PendingBoard::taskCount)
+                .description("Pending tasks held by the cached boards")
+                .register(registry);
+        Gauge.builder("techfixer.board.staleness", this, board -> Duration.between(board.lastVerification, Instant.now()).toSeconds())
+                .description("Seconds since the cached boards were last checked against the database")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Returns the pending tasks of an owner split in the {@code active}, {@code process} and {@code paused}
+     * columns, each from the most recent to the oldest. The map and its lists cannot be modified, and the
+     * tasks are copies of the cached ones, so changing them does not change the board.
+     *
+     * @param ownerId the unique identifier of the owner
+     * @return the board of the owner, empty columns if the owner has no pending tasks
+     */
+    public Map<String, List<TaskDto>> get(Long ownerId){
+        Board board = cache.getIfPresent(ownerId);
+        return (board != null ? board : load(ownerId)).copy();
+    }
+
+    /** Applies the changes of a committed transaction to the cached boards of the affected owners. */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void onTaskChanged(TaskChangedEvent event){
+        // Primero marcamos los encargados afectados, asi una carga en curso no guardara datos anteriores
+        Set<Long> owners = new HashSet<>();
+        event.getChanges().forEach(change -> {
+            addOwner(owners, change.getBefore());
+            addOwner(owners, change.getAfter());
+        });
+        owners.forEach(owner -> versions.incrementAndGet(slot(owner)));
+
+        // Solo recargamos las tareas que siguen pendientes y cuyo encargado tiene el tablero en memoria
+        Set<Long> toReload = event.getChanges().stream()
+                .filter(change -> isPending(change.getAfter()) && boards.containsKey(change.getAfter().getOwnerId()))
+                .map(TaskChangedEvent.Change::getTaskId)
+                .collect(Collectors.toSet());
+        Map<Long, List<TaskDto>> reloadedByOwner = toReload.isEmpty() ? Map.of()
+                : find(toReload).stream().filter(task -> task.getOwnerID() != null)
+                        .collect(Collectors.groupingBy(TaskDto::getOwnerID));
+
+        Set<Long> changedIds = event.getChanges().stream().map(TaskChangedEvent.Change::getTaskId).collect(Collectors.toSet());
+        owners.forEach(owner -> boards.computeIfPresent(owner,
+                (id, board) -> board.replace(changedIds, reloadedByOwner.getOrDefault(id, List.of()))));
+
+        // Los ETag repartidos mientras se actualizaban los tableros pueden corresponder a los datos anteriores
+        changeCounters.changed(ChangeCounters.Resource.TASKS);
+    }
+
+    /** Department and user names are copied into every task, so a rename drops all the cached boards. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReferenceRenamed(ReferenceRenamedEvent event){
+        boards.keySet().forEach(owner -> versions.incrementAndGet(slot(owner)));
+        boards.clear();
+        changeCounters.changed(ChangeCounters.Resource.TASKS);
+    }
+
+    /**
+     * Compares every cached board with the database and replaces the ones that differ. Boards that change
+     * while they are being checked are skipped, the next check will look at them again.
+     */
+    @Scheduled(initialDelayString = "${techfixer.board.verify-interval:PT5M}", fixedDelayString = "${techfixer.board.verify-interval:PT5M}")
+    @Transactional
+    public void verify(){
+        for (Map.Entry<Long, Board> entry : boards.entrySet()) {
+            Long owner = entry.getKey();
+            long version = versions.get(slot(owner));
+            Board fresh = Board.of(findByOwner(owner));
+
+            if (version == versions.get(slot(owner)) && !fresh.equals(entry.getValue())
+                    && boards.replace(owner, entry.getValue(), fresh)) {
+                repairs.increment();
+            }
+        }
+        lastVerification = Instant.now();
+    }
+
+    // Carga el tablero de la base de datos y lo guarda solo si no ha cambiado nada mientras se leia
+    private Board load(Long ownerId){
+        long version = versions.get(slot(ownerId));
+        Board board = Board.of(findByOwner(ownerId));
+        if (version == versions.get(slot(ownerId))) {
+            Board previous = boards.putIfAbsent(ownerId, board);
+            if (previous != null) return previous;
+        }
+        return board;
+    }
+
+    private List<TaskDto> findByOwner(Long ownerId){
+        List<Long> pending = List.copyOf(COLUMNS.keySet());
+        return TaskMapper.withProcessSummary(
+                repoTask.findDtosByOwnerAndStates(ownerId, pending),
+                repoProcess.findSummariesByTaskOwnerAndStates(ownerId, pending));
+    }
+
+    private List<TaskDto> find(Set<Long> ids){
+        return TaskMapper.withProcessSummary(repoTask.findDtosByIds(ids), repoProcess.findSummariesByTaskIds(ids))
+                .stream().filter(task -> COLUMNS.containsKey(task.getStateID())).toList();
+    }
+
+    private static int slot(Long ownerId){
+        return Math.floorMod(ownerId.hashCode(), VERSION_SLOTS);
+    }
+
+    private static void addOwner(Set<Long> owners, TaskSnapshot snapshot){
+        if (snapshot != null && snapshot.getOwnerId() != null) owners.add(snapshot.getOwnerId());
+    }
+
+    private static boolean isPending(TaskSnapshot snapshot){
+        return snapshot != null && snapshot.getOwnerId() != null && COLUMNS.containsKey(snapshot.getStateId());
+    }
+
+    private long taskCount(){
+        return boards.values().stream().mapToLong(board -> board.tasks.size()).sum();
+    }
+
+    // Tablero inmutable de un encargado: cada cambio crea uno nuevo
+    private static final class Board {
+
+        private final Map<Long, TaskDto> tasks;
+        private final Map<String, List<TaskDto>> columns;
+
+        private Board(Map<Long, TaskDto> tasks){
+            this.tasks = tasks;
+            Map<String, List<TaskDto>> byColumn = new HashMap<>();
+            COLUMNS.values().forEach(column -> byColumn.put(column, new ArrayList<>()));
+            tasks.values().forEach(task -> byColumn.get(COLUMNS.get(task.getStateID())).add(task));
+            byColumn.replaceAll((column, list) -> list.stream().sorted(NEWEST_FIRST).toList());
+            this.columns = Collections.unmodifiableMap(byColumn);
+        }
+
+        // Columnas con copias de las tareas, para que quien las recibe no pueda cambiar el tablero
+        Map<String, List<TaskDto>> copy(){
+            Map<String, List<TaskDto>> copy = new HashMap<>();
+            columns.forEach((column, list) -> copy.put(column, list.stream().map(TaskMapper::copy).toList()));
+            return Collections.unmodifiableMap(copy);
+        }
+
+        static Board of(Collection<TaskDto> tasks){
+            return new Board(tasks.stream().collect(Collectors.toUnmodifiableMap(TaskDto::getId, task -> task)));
+        }
+
+        // Quita las tareas que han cambiado y añade su version actual si sigue en este tablero
+        Board replace(Set<Long> removed, Collection<TaskDto> added){
+            Map<Long, TaskDto> next = new HashMap<>(tasks);
+            next.keySet().removeAll(removed);
+            added.forEach(task -> next.put(task.getId(), task));
+            return new Board(Collections.unmodifiableMap(next));
+        }
+
+        @Override
+        public boolean equals(Object o){
+            return o instanceof Board other && tasks.equals(other.tasks);
+        }
+
+        @Override
+        public int hashCode(){
+            return tasks.hashCode();
+        }
+    }
+}
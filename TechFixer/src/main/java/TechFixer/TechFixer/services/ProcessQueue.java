@@ -0,0 +1,311 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.ProcessProperties;
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.exception.ProcessQueueFullException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue of the processes added through {@code /api/process/new}.
+ * <p>
+ * A new process is checked, written to an append-only journal on disk and put in a bounded queue, and the
+ * request is answered straight away. A flusher thread saves the queued processes in batches, each batch in
+ * one transaction that also records in {@code process_journal} the last journal entry it contains. On start,
+ * the journal entries after that one are queued again, so an accepted process is not lost if the
+ * application stops before saving it. The journal is emptied whenever the queue is.
+ * <p>
+ * When the queue is full new processes are rejected, so the clients slow down instead of the memory growing.
+ * Until a process is saved, its author sees it in the detail of the task ({@link #pending}).
+ */
+@Component
+public class ProcessQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessQueue.class);
+
+    // Longitud de la columna processes.description
+    private static final int MAX_DESCRIPTION = 255;
+
+    // Un proceso aceptado, tal y como se anota en el diario
+    private record Entry(long seq, Long taskID, Long authorID, String authorName, String description, LocalDateTime date) {
+
+        ProcessDto toDto(){
+            return new ProcessDto(null, description, date, taskID, authorID, authorName);
+        }
+    }
+
+    private final ProcessProperties properties;
+    private final ProcessService processService;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transaction;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+    private final Counter rejected;
+    private final ScheduledExecutorService flusher;
+
+    // El diario y el ultimo numero de entrada se protegen con este cerrojo
+    private final Object journalLock = new Object();
+    private FileChannel journal;
+    private long lastSeq;
+    private BlockingQueue<Entry> queue;
+
+    // Ultima entrada ya guardada en BD
+    private volatile long savedSeq;
+
+    public ProcessQueue(ProcessProperties properties, ProcessService processService, JdbcTemplate jdbc,
+                        TransactionTemplate transaction, ObjectMapper objectMapper, MeterRegistry registry) {
+        this.properties = properties;
+        this.processService = processService;
+        this.jdbc = jdbc;
+        this.transaction = transaction;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "process-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.rejected = Counter.builder("techfixer.process.rejected")
+                .description("New processes rejected because the write-behind queue was full")
+                .register(registry);
+    }
+
+    /**
+     * Opens the journal and queues again the entries left by the previous run that were not saved. They
+     * stay in the journal until they are.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Path path = Path.of(properties.getJournal());
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+
+        savedSeq = jdbc.queryForObject("SELECT last_seq FROM process_journal WHERE id = 1", Long.class);
+        lastSeq = savedSeq;
+        List<Entry> recovered = new ArrayList<>();
+        if (Files.exists(path)) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                Entry entry = parse(line);
+                if (entry == null) continue;
+                lastSeq = Math.max(lastSeq, entry.seq());
+                if (entry.seq() > savedSeq) recovered.add(entry);
+            }
+        }
+
+        // Aunque el diario tenga mas entradas que la capacidad de la cola, no se pierde ninguna
+        queue = new ArrayBlockingQueue<>(Math.max(properties.getQueueCapacity(), recovered.size()));
+        queue.addAll(recovered);
+        Gauge.builder("techfixer.process.pending", queue, BlockingQueue::size)
+                .description("Accepted processes not yet saved")
+                .register(registry);
+        if (!recovered.isEmpty()) log.info("{} procesos del diario pendientes de guardar", recovered.size());
+
+        journal = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /** Starts the flusher once the listeners of the events published with every batch are in place. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(){
+        long interval = properties.getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the flusher and saves whatever is still queued. */
+    @PreDestroy
+    public void stop() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            flushQuietly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Accepts a new process. The author and task are checked with a single query and the date of the
+     * process is the current one; the process is saved later by the flusher.
+     *
+     * @param dto the process, with its author, task and description
+     * @return the accepted process, still without ID
+     * @throws IllegalArgumentException if the author or the task are missing, or the description is too long
+     * @throws NoSuchElementException if the author or the task do not exist
+     * @throws ProcessQueueFullException if there are too many processes waiting to be saved
+     */
+    public ProcessDto append(ProcessDto dto){
+        // Comporbamos que tenemos autor y tarea, son obligatorios
+        if (dto.getAuthorID() == null) { throw new IllegalArgumentException("El autor no puede estar vacio"); }
+        if (dto.getTaskID() == null) { throw new IllegalArgumentException("La tarea no puede estar vacio"); }
+        if (dto.getDescription() != null && dto.getDescription().length() > MAX_DESCRIPTION) {
+            throw new IllegalArgumentException("La descripcion no puede superar " + MAX_DESCRIPTION + " caracteres");
+        }
+
+        // Autor y tarea en una sola consulta, sin cargar entidades
+        Object[] refs = jdbc.queryForObject(
+                "SELECT (SELECT user_name FROM users WHERE id = ?), (SELECT COUNT(*) FROM tasks WHERE id = ?)",
+                (rs, row) -> new Object[]{rs.getString(1), rs.getLong(2)}, dto.getAuthorID(), dto.getTaskID());
+        if (refs[0] == null) { throw new NoSuchElementException("El autor " + dto.getAuthorID() + " no existe"); }
+        if ((long) refs[1] == 0) { throw new NoSuchElementException("La tarea " + dto.getTaskID() + " no existe"); }
+
+        synchronized (journalLock) {
+            // Solo el flusher saca entradas de la cola, asi que si ahora hay hueco lo seguira habiendo al añadirla
+            if (queue.remainingCapacity() == 0) {
+                rejected.increment();
+                throw new ProcessQueueFullException("Hay demasiados procesos pendientes de guardar, intentalo de nuevo en unos segundos");
+            }
+
+            // La fecha se redondea a microsegundos, la precision con la que se guarda
+            Entry entry = new Entry(lastSeq + 1, dto.getTaskID(), dto.getAuthorID(), (String) refs[0],
+                    dto.getDescription(), LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+            write(entry);
+            lastSeq = entry.seq();
+            queue.add(entry);
+            return entry.toDto();
+        }
+    }
+
+    /**
+     * Returns the processes of a task added by a user that are not saved yet, from the most recent to the oldest.
+     *
+     * @param taskId the task
+     * @param userName the author of the processes, usually the user asking for the task
+     */
+    public List<ProcessDto> pending(Long taskId, String userName){
+        if (userName == null || queue.isEmpty()) return List.of();
+
+        long saved = savedSeq;
+        List<ProcessDto> pending = new ArrayList<>();
+        for (Entry entry : queue) {
+            if (entry.seq() > saved && entry.taskID().equals(taskId) && userName.equals(entry.authorName())) {
+                pending.addFirst(entry.toDto());
+            }
+        }
+        return pending;
+    }
+
+    /** Saves every queued process, in batches of {@code techfixer.process.flush-size}. */
+    public synchronized void flush(){
+        while (!queue.isEmpty()) {
+            // Las entradas siguen en la cola, y visibles para su autor, hasta que estan guardadas
+            List<Entry> batch = new ArrayList<>(properties.getFlushSize());
+            for (Entry entry : queue) {
+                batch.add(entry);
+                if (batch.size() == properties.getFlushSize()) break;
+            }
+
+            try {
+                save(batch);
+            } catch (DataIntegrityViolationException e) {
+                // Alguna entrada no se podra guardar nunca: se guardan de una en una para no bloquear las demas
+                batch.forEach(this::saveOrDiscard);
+            }
+            for (int i = 0; i < batch.size(); i++) queue.poll();
+        }
+        compact();
+    }
+
+    private void flushQuietly(){
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Los procesos siguen en la cola y en el diario, se reintenta en la siguiente pasada
+            log.warn("No se han podido guardar los procesos pendientes: {}", e.getMessage());
+        }
+    }
+
+    // Guarda un lote y anota en la misma transaccion hasta que entrada del diario esta guardado
+    private void save(List<Entry> batch){
+        long seq = batch.getLast().seq();
+        transaction.executeWithoutResult(status -> {
+            processService.saveAll(batch.stream().map(Entry::toDto).toList());
+            jdbc.update("UPDATE process_journal SET last_seq = ? WHERE id = 1", seq);
+        });
+        savedSeq = seq;
+    }
+
+    private void saveOrDiscard(Entry entry){
+        try {
+            save(List.of(entry));
+        } catch (DataIntegrityViolationException e) {
+            log.error("Proceso descartado, no se puede guardar: {}", entry, e);
+            transaction.executeWithoutResult(status ->
+                    jdbc.update("UPDATE process_journal SET last_seq = ? WHERE id = 1", entry.seq()));
+            savedSeq = entry.seq();
+        }
+    }
+
+    // Vacia el diario si ya no queda nada por guardar
+    private void compact(){
+        synchronized (journalLock) {
+            if (!queue.isEmpty()) return;
+            try {
+                journal.truncate(0);
+            } catch (IOException e) {
+                // No es grave: al arrancar se saltan las entradas ya guardadas
+                log.warn("No se ha podido vaciar el diario de procesos: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void write(Entry entry){
+        long size = -1;
+        try {
+            ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+            size = journal.size();
+            while (line.hasRemaining()) journal.write(line);
+            if (properties.isJournalSync()) journal.force(false);
+        } catch (IOException e) {
+            // Quitamos lo que se haya escrito a medias para que no se junte con la siguiente entrada
+            try {
+                if (size >= 0) journal.truncate(size);
+            } catch (IOException ignored) {
+            }
+            throw new UncheckedIOException("No se ha podido anotar el proceso en el diario", e);
+        }
+    }
+
+    // Una linea cortada por una caida a mitad de escritura no se pudo confirmar al cliente, se ignora
+    private Entry parse(String line){
+        if (line.isBlank()) return null;
+        try {
+            return objectMapper.readValue(line, Entry.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Linea del diario de procesos ignorada: {}", line);
+            return null;
+        }
+    }
+}
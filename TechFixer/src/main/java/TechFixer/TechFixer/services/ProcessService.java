@@ -2,25 +2,64 @@ package TechFixer.TechFixer.services;
 
 import TechFixer.TechFixer.dto.ProcessDto;
 import TechFixer.TechFixer.entity.Process;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.event.ProcessCreatedEvent;
+import TechFixer.TechFixer.event.TaskChangedEvent;
+import TechFixer.TechFixer.event.TaskSnapshot;
 import TechFixer.TechFixer.mapper.ProcessMapper;
 import TechFixer.TechFixer.repositories.ProcessRepository;
 import TechFixer.TechFixer.repositories.TaskRepository;
 import TechFixer.TechFixer.repositories.UserRepository;
-import lombok.AllArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
-@AllArgsConstructor
 public class ProcessService {
 
+    private static final Logger log = LoggerFactory.getLogger(ProcessService.class);
+
     private final ProcessRepository repo;
     private final UserRepository repoUser;
     private final TaskRepository repoTask;
+    private final TaskVersions versions;
+    private final ChangeCounters changeCounters;
+    private final ApplicationEventPublisher events;
+    private final JdbcTemplate jdbc;
+    private final Counter droppedTask;
+    private final Counter droppedAuthor;
+
+    public ProcessService(ProcessRepository repo, UserRepository repoUser, TaskRepository repoTask, TaskVersions versions,
+                          ChangeCounters changeCounters, ApplicationEventPublisher events, JdbcTemplate jdbc,
+                          MeterRegistry registry) {
+        this.repo = repo;
+        this.repoUser = repoUser;
+        this.repoTask = repoTask;
+        this.versions = versions;
+        this.changeCounters = changeCounters;
+        this.events = events;
+        this.jdbc = jdbc;
+        this.droppedTask = dropped(registry, "task");
+        this.droppedAuthor = dropped(registry, "author");
+    }
 
     /**
      * Saves a new process entity based on the provided {@code ProcessDto}.
@@ -33,6 +72,7 @@ public class ProcessService {
      * @throws IllegalArgumentException if {@code authorID} or {@code taskID} is null.
      * @throws NoSuchElementException if the {@code authorID} or {@code taskID} does not exist in their respective repositories.
      */
+    @Transactional
     public void save(ProcessDto dto){
 
         Process process = new Process();
@@ -49,20 +89,95 @@ public class ProcessService {
                 repoTask.findById(dto.getTaskID()).orElseThrow(() -> new NoSuchElementException("La tarea " + dto.getTaskID() + " no existe")));
         }
 
+        // La tarea pasa a una version nueva, guardamos la actual por si alguien la esta editando
+        versions.record(process.getTask());
+
         // Asignamos fecha y descripcion, siempre se asiganarán.
         process.setDate(LocalDateTime.now());
         process.setDescription(dto.getDescription());
         repo.save(process);
+        // Con un UPDATE y no con un bloqueo optimista: dos procesos añadidos a la vez a la misma tarea no chocan
+        repoTask.incrementVersions(List.of(process.getTask().getId()));
+
+        // La tarea no cambia de sitio, solo tiene un proceso mas
+        TaskSnapshot snapshot = TaskSnapshot.of(process.getTask());
+        events.publishEvent(TaskChangedEvent.of(process.getTask().getId(), snapshot, snapshot));
+        events.publishEvent(ProcessCreatedEvent.of(List.of(process)));
+    }
+
+    /**
+     * Saves a batch of processes already accepted by the {@link ProcessQueue}, with the date and author they
+     * were accepted with. The authors and tasks of the whole batch are read with one query each, the
+     * processes are inserted in JDBC batches and the version of every task that gets a new process grows
+     * with a single update, so the whole batch costs a handful of statements instead of several per process.
+     * <p>
+     * Processes whose task or author has been deleted or archived since they were accepted are not saved:
+     * they are written to {@code process_dead_letters} in the same transaction and counted in
+     * {@code techfixer.process.dropped}, tagged with the reason.
+     *
+     * @param dtos the processes to save, in the order they were accepted
+     * @return the number of processes saved
+     */
+    @Transactional
+    public int saveAll(List<ProcessDto> dtos){
+        Map<Long, Task> tasks = repoTask.findAllById(dtos.stream().map(ProcessDto::getTaskID).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(Task::getId, Function.identity()));
+        Map<Long, User> authors = repoUser.findAllById(dtos.stream().map(ProcessDto::getAuthorID).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<Process> processes = new ArrayList<>();
+        List<Object[]> deadLetters = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (ProcessDto dto : dtos) {
+            Task task = tasks.get(dto.getTaskID());
+            User author = authors.get(dto.getAuthorID());
+            if (task == null || author == null) {
+                String reason = task == null ? "task" : "author";
+                log.warn("Proceso guardado en process_dead_letters, la tarea {} o el autor {} ya no existen", dto.getTaskID(), dto.getAuthorID());
+                deadLetters.add(new Object[]{dto.getDate() == null ? null : Timestamp.valueOf(dto.getDate()),
+                        dto.getDescription(), dto.getAuthorID(), dto.getTaskID(), reason, now});
+                (task == null ? droppedTask : droppedAuthor).increment();
+                continue;
+            }
+            processes.add(new Process(null, dto.getDescription(), dto.getDate(), author, task));
+        }
+        // En la misma transaccion que el resto del lote: el diario solo avanza si tambien se han guardado estos
+        if (!deadLetters.isEmpty()) {
+            jdbc.batchUpdate("INSERT INTO process_dead_letters (date, description, author_id, task_id, reason, dropped_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?)", deadLetters);
+        }
+        if (processes.isEmpty()) return 0;
+        repo.saveAll(processes);
+
+        // Cada tarea con procesos nuevos pasa a una version nueva; guardamos la actual por si alguien la esta editando
+        Set<Task> changed = processes.stream().map(Process::getTask).collect(Collectors.toCollection(LinkedHashSet::new));
+        changed.forEach(versions::record);
+        repoTask.incrementVersions(changed.stream().map(Task::getId).toList());
+        changeCounters.changed(ChangeCounters.Resource.TASKS);
+
+        // Las tareas no cambian de sitio, solo tienen algun proceso mas
+        events.publishEvent(new TaskChangedEvent(changed.stream()
+                .map(task -> new TaskChangedEvent.Change(task.getId(), TaskSnapshot.of(task), TaskSnapshot.of(task)))
+                .toList()));
+        events.publishEvent(ProcessCreatedEvent.of(processes));
+        return processes.size();
+    }
+
+    private static Counter dropped(MeterRegistry registry, String reason){
+        return Counter.builder("techfixer.process.dropped")
+                .description("Accepted processes that could not be saved and went to process_dead_letters")
+                .tag("reason", reason)
+                .register(registry);
     }
 
     /**
-     * Retrieves all processes and converts them into a list of {@code ProcessDto} objects.
+     * Retrieves all processes, from the most recent to the oldest, as {@code ProcessDto} objects
+     * read straight from a projection query.
      *
      * @return a list of {@code ProcessDto} objects representing all processes.
      */
     public List<ProcessDto> findAll(){
-        return
-                repo.findAll().stream().map(ProcessMapper::toDto).toList();
+        return repo.findAllDtos();
     }
 
     /**
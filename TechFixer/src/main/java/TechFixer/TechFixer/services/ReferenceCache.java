@@ -0,0 +1,127 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.ReferenceProperties;
+import TechFixer.TechFixer.entity.Department;
+import TechFixer.TechFixer.entity.Roles;
+import TechFixer.TechFixer.entity.State;
+import TechFixer.TechFixer.repositories.DepartmentRepository;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.StateRepository;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Read-through cache of the states, departments and roles that tasks and users point to. These tables hold
+ * a handful of rows and change rarely, so the writes of tasks and users take them from here instead of
+ * reading them on every request.
+ * <p>
+ * The cache holds detached copies with only the ID and the name, enough to be set as the reference of a
+ * task or a user; callers must not modify them. Each type is bounded in size and expires after
+ * {@code techfixer.references.ttl}. The services that write these tables drop the whole type, once straight
+ * away and again when their transaction ends, so no reader can put back a value from before the write.
+ * Hits, misses and evictions are published as the {@code cache.*} meters, tagged with the name of the type.
+ */
+@Component
+public class ReferenceCache {
+
+    private final LoadingCache<Long, State> states;
+    private final LoadingCache<Long, Department> departments;
+    private final LoadingCache<Long, Roles> roles;
+
+    public ReferenceCache(StateRepository repoState, DepartmentRepository repoDpt, RolesRepository repoRol,
+                          ReferenceProperties properties, MeterRegistry registry) {
+        this.states = build("states", properties, registry, repoState::findAllById, State::getId,
+                state -> new State(state.getId(), state.getName(), null));
+        this.departments = build("departments", properties, registry, repoDpt::findAllById, Department::getId,
+                dpt -> new Department(dpt.getId(), dpt.getName()));
+        this.roles = build("roles", properties, registry, repoRol::findAllById, Roles::getId,
+                rol -> new Roles(rol.getId(), rol.getName(), null));
+    }
+
+    public Optional<State> state(Long id){
+        return id == null ? Optional.empty() : Optional.ofNullable(states.get(id));
+    }
+
+    /** Returns the states found among the given IDs, reading the missing ones with a single query. */
+    public Map<Long, State> states(Collection<Long> ids){
+        return states.getAll(ids);
+    }
+
+    public Optional<Department> department(Long id){
+        return id == null ? Optional.empty() : Optional.ofNullable(departments.get(id));
+    }
+
+    /** Returns the departments found among the given IDs, reading the missing ones with a single query. */
+    public Map<Long, Department> departments(Collection<Long> ids){
+        return departments.getAll(ids);
+    }
+
+    public Optional<Roles> role(Long id){
+        return id == null ? Optional.empty() : Optional.ofNullable(roles.get(id));
+    }
+
+    public void invalidateStates(){
+        invalidate(states);
+    }
+
+    public void invalidateDepartments(){
+        invalidate(departments);
+    }
+
+    public void invalidateRoles(){
+        invalidate(roles);
+    }
+
+    // Se vacia ahora y al terminar la transaccion: mientras tanto otro hilo puede haber leido el valor anterior
+    private static void invalidate(LoadingCache<Long, ?> cache){
+        cache.invalidateAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status){
+                    cache.invalidateAll();
+                }
+            });
+        }
+    }
+
+    private static <T> LoadingCache<Long, T> build(String name, ReferenceProperties properties, MeterRegistry registry,
+                                                   Function<Set<Long>, ? extends Iterable<T>> finder,
+                                                   Function<T, Long> id, UnaryOperator<T> copy){
+        LoadingCache<Long, T> cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build(new CacheLoader<Long, T>() {
+                    @Override
+                    public T load(Long key){
+                        return loadAll(Set.of(key)).get(key);
+                    }
+
+                    // Los IDs que no existen no se guardan, se vuelven a buscar la proxima vez
+                    @Override
+                    public Map<Long, T> loadAll(Set<? extends Long> keys){
+                        Set<Long> ids = Set.copyOf(keys);
+                        Map<Long, T> found = new HashMap<>();
+                        finder.apply(ids).forEach(entity -> found.put(id.apply(entity), copy.apply(entity)));
+                        return found;
+                    }
+                });
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+        return cache;
+    }
+}
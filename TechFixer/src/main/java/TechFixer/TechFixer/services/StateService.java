@@ -1,14 +1,20 @@
 package TechFixer.TechFixer.services;
 
+import TechFixer.TechFixer.config.ReferenceProperties;
+import TechFixer.TechFixer.dto.PageDto;
 import TechFixer.TechFixer.dto.StateDto;
+import TechFixer.TechFixer.dto.StateSummaryDto;
 import TechFixer.TechFixer.entity.State;
 import TechFixer.TechFixer.exception.NotFoundStateException;
 import TechFixer.TechFixer.exception.StateAlreadyExistException;
+import TechFixer.TechFixer.mapper.CursorMapper;
 import TechFixer.TechFixer.mapper.StateMapper;
 import TechFixer.TechFixer.repositories.StateRepository;
+import TechFixer.TechFixer.repositories.TaskRepository;
 import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -19,6 +25,9 @@ import java.util.NoSuchElementException;
 public class StateService {
 
     private final StateRepository repo;
+    private final ReferenceCache referenceCache;
+    private final TaskRepository repoTask;
+    private final ReferenceProperties properties;
 
     /**
      * Initializes the default state values in the repository if the repository is empty.
@@ -44,6 +53,7 @@ public class StateService {
                     new State("Anulado")
             ));
         }
+        referenceCache.invalidateStates();
     }
 
 
@@ -63,6 +73,7 @@ public class StateService {
         // Si ya existe el nombre, error
         if (repo.findByName(name).isPresent()) throw new StateAlreadyExistException("El estado ya existe");
         repo.save(new State(name));
+        referenceCache.invalidateStates();
 
     }
 
@@ -82,6 +93,7 @@ public class StateService {
             repo.findById(id)
                 .orElseThrow(() -> new NotFoundStateException("Estado no encontrado"))
         );
+        referenceCache.invalidateStates();
     }
 
     /**
@@ -94,6 +106,39 @@ public class StateService {
         return repo.findAll().stream().map(StateMapper::toDto).toList();
     }
 
+    /**
+     * Retrieves all states with the number of tasks in each one instead of their IDs. The counts come from
+     * a single grouped query, so the cost does not depend on loading the tasks; the IDs are available page
+     * by page through {@link #getTaskIds(Long, String, Integer)}.
+     *
+     * @return a list of StateSummaryDto objects, ordered by ID
+     */
+    public List<StateSummaryDto> getSummaries(){
+        return repo.findSummaries();
+    }
+
+    /**
+     * Retrieves one page of the IDs of the tasks in a state, in ascending order. The client walks through
+     * the pages sending back the {@code nextCursor} returned with the previous page.
+     *
+     * @param id the unique identifier of the state
+     * @param cursor the cursor returned with the previous page, or null for the first page
+     * @param size the number of IDs wanted; null uses the configured default and values over the
+     *             configured maximum are capped
+     * @return a page with the task IDs and the cursor of the next page, null if there are no more tasks
+     * @throws NoSuchElementException if no state exists with the specified ID
+     * @throws IllegalArgumentException if the cursor or the size are not valid
+     */
+    public PageDto<Long> getTaskIds(Long id, String cursor, Integer size){
+        Long after = CursorMapper.decodeId(cursor);
+        int pageSize = pageSize(size);
+        if (!repo.existsById(id)) throw new NoSuchElementException("Estado no encontrado");
+
+        // Pedimos un elemento de mas para saber si existe una pagina siguiente
+        return CursorMapper.toIdPage(
+                repoTask.findIdsByStateAfter(id, after != null ? after : Long.MIN_VALUE, Limit.of(pageSize + 1)), pageSize);
+    }
+
     /**
      * Retrieves a state based on its unique identifier and maps it to a {@code StateDto} object.
      * If no state exists with the specified ID, a {@code NoSuchElementException} is thrown.
@@ -108,4 +153,9 @@ public class StateService {
         );
     }
 
+    private int pageSize(Integer size){
+        if (size == null) return properties.getPageSize();
+        if (size < 1) throw new IllegalArgumentException("El tamaño de pagina debe ser mayor que 0");
+        return Math.min(size, properties.getMaxPageSize());
+    }
 }
@@ -0,0 +1,106 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.ArchiveProperties;
+import TechFixer.TechFixer.event.TaskArchivedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the closed tasks (those in one of the {@code techfixer.archive.closed-states}, Finalizado and Anulado by
+ * default) older than {@code techfixer.archive.age}, with their processes, from {@code tasks}/{@code processes}
+ * to {@code tasks_archive}/{@code processes_archive}.
+ * <p>
+ * The working tables then only grow with the open and recently closed tasks, whatever the size of the history.
+ * Tasks are moved in batches of {@code techfixer.archive.batch-size}, each batch in its own transaction.
+ */
+@Component
+public class TaskArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskArchiver.class);
+
+    // Tareas cerradas hace mas de la antiguedad indicada. Las anuladas no tienen fecha de fin, se usa la de inicio.
+    // Los estados se buscan por nombre: sus IDs dependen del orden en el que se crearon
+    private static final String CANDIDATES = """
+            SELECT id FROM tasks
+            WHERE state_id IN (SELECT id FROM satates WHERE name IN (:states))
+              AND (date_end < :cutoff OR (date_end IS NULL AND date_ini < :cutoff))
+            ORDER BY id
+            LIMIT :limit
+            """;
+
+    private final ArchiveProperties properties;
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final TransactionTemplate transaction;
+    private final ApplicationEventPublisher events;
+    private final Counter archived;
+
+    public TaskArchiver(ArchiveProperties properties, JdbcTemplate jdbc, TransactionTemplate transaction,
+                        ApplicationEventPublisher events, MeterRegistry registry) {
+        this.properties = properties;
+        this.namedJdbc = new NamedParameterJdbcTemplate(jdbc);
+        this.transaction = transaction;
+        this.events = events;
+        this.archived = Counter.builder("techfixer.archive.tasks")
+                .description("Tasks moved to the archive")
+                .register(registry);
+    }
+
+    /**
+     * Archives every closed task older than the configured age.
+     *
+     * @return the number of archived tasks
+     */
+    @Scheduled(cron = "${techfixer.archive.cron:0 30 3 * * *}")
+    public int archive(){
+        if (!properties.isEnabled()) return 0;
+
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(properties.getAge()));
+        int total = 0;
+        int moved;
+        do {
+            moved = transaction.execute(status -> archiveBatch(cutoff));
+            total += moved;
+        } while (moved == properties.getBatchSize());
+
+        if (total > 0) log.info("Archivadas {} tareas cerradas", total);
+        return total;
+    }
+
+    // Mueve un lote de tareas con sus procesos: primero se copian al archivo y despues se borran
+    private int archiveBatch(Timestamp cutoff){
+        List<Long> ids = namedJdbc.queryForList(CANDIDATES, Map.of(
+                "states", properties.getClosedStates(),
+                "cutoff", cutoff,
+                "limit", properties.getBatchSize()), Long.class);
+        if (ids.isEmpty()) return 0;
+
+        Map<String, Object> params = Map.of("ids", ids, "now", Timestamp.valueOf(LocalDateTime.now()));
+        namedJdbc.update("""
+                INSERT INTO tasks_archive (id, date_end, date_ini, description, author_id, dpt_id, owner_id, state_id, archived_at)
+                SELECT id, date_end, date_ini, description, author_id, dpt_id, owner_id, state_id, :now FROM tasks WHERE id IN (:ids)
+                """, params);
+        namedJdbc.update("""
+                INSERT INTO processes_archive (id, date, description, author_id, task_id)
+                SELECT id, date, description, author_id, task_id FROM processes WHERE task_id IN (:ids)
+                """, params);
+        namedJdbc.update("DELETE FROM processes WHERE task_id IN (:ids)", params);
+        namedJdbc.update("DELETE FROM tasks WHERE id IN (:ids)", params);
+
+        events.publishEvent(new TaskArchivedEvent(ids));
+        archived.increment(ids.size());
+        return ids.size();
+    }
+}
@@ -0,0 +1,246 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.TaskProperties;
+import TechFixer.TechFixer.event.ReferenceRenamedEvent;
+import TechFixer.TechFixer.event.TaskArchivedEvent;
+import TechFixer.TechFixer.event.TaskChangedEvent;
+import TechFixer.TechFixer.repositories.TaskRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Change sequence of the tasks, behind the delta sync of {@code /api/task/changes}.
+ * <p>
+ * Every transaction that writes tasks takes the next change number before it commits and stores it in
+ * {@code tasks.change_seq} of the tasks it created or modified, and in {@code task_tombstones} for the ones
+ * it deleted or archived. A client that remembers the last number it has seen (its watermark) gets the
+ * changes after it with one indexed query. Renaming a department or a user marks its tasks as changed too,
+ * since the names are copied into the task views.
+ * <p>
+ * Numbers are handed out in memory, so they are unique within this application only. A number taken by a
+ * transaction that has not finished yet holds back the {@link #horizon()}: a watermark never goes past a
+ * change that may still commit, so no change is skipped however the transactions interleave.
+ * <p>
+ * Tombstones are kept for {@code techfixer.task.tombstone-retention}. A client whose watermark is older
+ * than the purged ones may have missed deletions and has to load everything again.
+ */
+@Component
+public class TaskChangeLog {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskChangeLog.class);
+
+    // Tareas y lapidas en orden de cambio, entre dos marcas de agua
+    private static final String CHANGES = """
+            SELECT id, change_seq, FALSE AS deleted FROM tasks WHERE change_seq > :since AND change_seq <= :until
+            UNION ALL
+            SELECT task_id, change_seq, TRUE FROM task_tombstones WHERE change_seq > :since AND change_seq <= :until
+            ORDER BY change_seq, id
+            LIMIT :limit
+            """;
+
+    private static final String TOMBSTONE = "MERGE INTO task_tombstones (task_id, change_seq, deleted_at) KEY (task_id) VALUES (?, ?, ?)";
+
+    /** A task changed ({@code deleted} false) or removed at the given change number. */
+    public record Change(Long taskId, long seq, boolean deleted) {}
+
+    /**
+     * A page of changes after a watermark. {@code watermark} is the one to ask from next time; all the
+     * changes with the same number are always in the same page.
+     */
+    public record Page(List<Change> changes, long watermark, boolean hasMore, boolean resyncRequired) {}
+
+    private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate namedJdbc;
+    private final TransactionTemplate transaction;
+    private final TaskRepository repo;
+    private final TaskProperties properties;
+
+    // Ultimo numero repartido, ultimo numero confirmado con filas escritas y numeros de transacciones sin terminar
+    private long lastSeq;
+    private long committedSeq;
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+
+    public TaskChangeLog(JdbcTemplate jdbc, NamedParameterJdbcTemplate namedJdbc, TransactionTemplate transaction,
+                         TaskRepository repo, TaskProperties properties) {
+        this.jdbc = jdbc;
+        this.namedJdbc = namedJdbc;
+        this.transaction = transaction;
+        this.repo = repo;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    void open(){
+        Long last = jdbc.queryForObject("""
+                SELECT GREATEST((SELECT COALESCE(MAX(change_seq), 0) FROM tasks),
+                                (SELECT COALESCE(MAX(change_seq), 0) FROM task_tombstones),
+                                (SELECT purged_seq FROM task_sync WHERE id = 1))
+                """, Long.class);
+        synchronized (this) {
+            lastSeq = last != null ? last : 0;
+            committedSeq = lastSeq;
+        }
+    }
+
+    /** Marks the created and modified tasks as changed and records a tombstone for the deleted ones. */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onTaskChanged(TaskChangedEvent event){
+        List<Long> changed = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        for (TaskChangedEvent.Change change : event.getChanges()) {
+            if (change.getTaskId() == null) continue;
+            (change.getAfter() != null ? changed : deleted).add(change.getTaskId());
+        }
+        if (changed.isEmpty() && deleted.isEmpty()) return;
+
+        record(seq -> touch(changed, seq) + tombstones(deleted, seq));
+    }
+
+    /** Archived tasks leave the task lists, so for the clients they are deleted. */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onTaskArchived(TaskArchivedEvent event){
+        if (event.getTaskIds().isEmpty()) return;
+        record(seq -> tombstones(event.getTaskIds(), seq));
+    }
+
+    /** The names of departments and users are copied into the tasks, so a rename changes all their tasks. */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onReferenceRenamed(ReferenceRenamedEvent event){
+        String where = switch (event.getType()) {
+            case "Department" -> "dpt_id = :id";
+            case "User" -> "author_id = :id OR owner_id = :id OR id IN (SELECT task_id FROM processes WHERE author_id = :id)";
+            default -> null;
+        };
+        if (where == null) return;
+
+        record(seq -> namedJdbc.update("UPDATE tasks SET change_seq = :seq WHERE " + where,
+                Map.of("seq", seq, "id", event.getId())));
+    }
+
+    /**
+     * Returns the changes after the given watermark, at most {@code limit} unless a single change number
+     * groups more tasks (a bulk request), in which case the whole group is returned.
+     *
+     * @param since the watermark of the client, 0 for everything
+     * @param limit the number of changes to return
+     */
+    public Page changes(long since, int limit){
+        long horizon = horizon();
+        if (since < purgedSeq() || since > horizon) return new Page(List.of(), horizon, false, true);
+
+        List<Change> changes = query(since, horizon, limit + 1);
+        if (changes.size() <= limit) return new Page(changes, horizon, false, false);
+
+        // Cortamos en el ultimo numero completo de la pagina; si la pagina es un solo numero, va entero
+        long last = changes.get(limit - 1).seq();
+        if (changes.get(limit).seq() != last) return new Page(changes.subList(0, limit), last, true, false);
+        if (changes.get(0).seq() == last) return new Page(query(since, last, Integer.MAX_VALUE), last, true, false);
+
+        List<Change> page = changes.subList(0, limit).stream().filter(change -> change.seq() != last).toList();
+        return new Page(page, page.get(page.size() - 1).seq(), true, false);
+    }
+
+    /** Last change number below which every change has been committed. */
+    public synchronized long horizon(){
+        return inFlight.isEmpty() ? committedSeq : Math.min(committedSeq, inFlight.first() - 1);
+    }
+
+    /** Change number up to which tombstones have been purged; older watermarks need a full resync. */
+    public long purgedSeq(){
+        return jdbc.queryForObject("SELECT purged_seq FROM task_sync WHERE id = 1", Long.class);
+    }
+
+    /** Purges the tombstones older than the configured retention. */
+    @Scheduled(cron = "${techfixer.task.tombstone-purge-cron:0 0 4 * * *}")
+    public int purge(){
+        return purgeOlderThan(properties.getTombstoneRetention());
+    }
+
+    /**
+     * Deletes the tombstones recorded more than {@code age} ago and moves the purged watermark past them.
+     *
+     * @return the number of deleted tombstones
+     */
+    public int purgeOlderThan(Duration age){
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(age));
+        Integer purged = transaction.execute(status -> {
+            Long seq = jdbc.queryForObject("SELECT MAX(change_seq) FROM task_tombstones WHERE deleted_at <= ?", Long.class, cutoff);
+            if (seq == null) return 0;
+            jdbc.update("UPDATE task_sync SET purged_seq = GREATEST(purged_seq, ?) WHERE id = 1", seq);
+            return jdbc.update("DELETE FROM task_tombstones WHERE change_seq <= ?", seq);
+        });
+        if (purged != null && purged > 0) log.info("Purgadas {} lapidas de tareas", purged);
+        return Objects.requireNonNullElse(purged, 0);
+    }
+
+    // Toma un numero de cambio, escribe con el y lo libera al terminar la transaccion
+    private void record(LongToIntFunction write){
+        long seq = allocate();
+        boolean written = false;
+        try {
+            // Las tareas nuevas aun pueden estar solo en el contexto de persistencia
+            if (TransactionSynchronizationManager.isActualTransactionActive()) repo.flush();
+            written = write.applyAsInt(seq) > 0;
+        } finally {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                boolean rows = written;
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status){
+                        release(seq, rows && status == STATUS_COMMITTED);
+                    }
+                });
+            } else {
+                release(seq, written);
+            }
+        }
+    }
+
+    private synchronized long allocate(){
+        inFlight.add(++lastSeq);
+        return lastSeq;
+    }
+
+    // Solo avanza la marca de agua con numeros que han quedado escritos, asi tras reiniciar se sigue desde ella
+    private synchronized void release(long seq, boolean committed){
+        inFlight.remove(seq);
+        if (committed) committedSeq = Math.max(committedSeq, seq);
+    }
+
+    private int touch(List<Long> ids, long seq){
+        if (ids.isEmpty()) return 0;
+        return namedJdbc.update("UPDATE tasks SET change_seq = :seq WHERE id IN (:ids)", Map.of("seq", seq, "ids", ids));
+    }
+
+    private int tombstones(List<Long> ids, long seq){
+        if (ids.isEmpty()) return 0;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbc.batchUpdate(TOMBSTONE, ids.stream().map(id -> new Object[]{id, seq, now}).toList());
+        return ids.size();
+    }
+
+    private List<Change> query(long since, long until, int limit){
+        return namedJdbc.query(CHANGES, Map.of("since", since, "until", until, "limit", limit),
+                (rs, row) -> new Change(rs.getLong(1), rs.getLong(2), rs.getBoolean(3)));
+    }
+}
@@ -0,0 +1,174 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.EventsProperties;
+import TechFixer.TechFixer.dto.TaskEventDto;
+import TechFixer.TechFixer.event.TaskChangedEvent;
+import TechFixer.TechFixer.event.TaskSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes the task changes to the clients connected to {@code /api/task/events} as Server-Sent Events.
+ * <p>
+ * Each subscriber has a bounded queue. The writer that commits a change only puts the event in the queues,
+ * and a small pool of sender threads writes them to the connections. A subscriber whose queue fills up
+ * is too slow to follow the changes: it is disconnected and has to reload its data when it reconnects.
+ */
+@Component
+public class TaskEventBroadcaster {
+
+    private final EventsProperties properties;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService senders;
+    private final Counter dropped;
+
+    public TaskEventBroadcaster(EventsProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(properties.getSenderThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "task-events-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.dropped = Counter.builder("techfixer.events.dropped")
+                .description("Subscribers disconnected because they could not keep up with the changes")
+                .register(registry);
+        Gauge.builder("techfixer.events.subscribers", subscribers, Set::size)
+                .description("Clients connected to the task change stream")
+                .register(registry);
+    }
+
+    /**
+     * Opens a new stream of task changes. Without filters the subscriber receives every change; with a user
+     * or a department it only receives the changes of the tasks owned by that user or assigned to that
+     * department, before or after the change.
+     *
+     * @param ownerId the owner to follow, or null
+     * @param dptId the department to follow, or null
+     * @return the emitter that the controller returns to the client
+     */
+    public SseEmitter subscribe(Long ownerId, Long dptId){
+        SseEmitter emitter = new SseEmitter(properties.getTimeout().toMillis());
+        Subscriber subscriber = new Subscriber(emitter, ownerId, dptId, new ArrayBlockingQueue<>(properties.getQueueCapacity()));
+
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /** Queues the committed changes for the interested subscribers. Never blocks the writer. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTaskChanged(TaskChangedEvent event){
+        if (subscribers.isEmpty()) return;
+
+        for (TaskChangedEvent.Change change : event.getChanges()) {
+            TaskEventDto dto = toDto(change);
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.follows(change.getBefore()) && !subscriber.follows(change.getAfter())) continue;
+
+                if (subscriber.queue.offer(dto)) {
+                    schedule(subscriber);
+                } else {
+                    // Cola llena: el cliente no da abasto, lo desconectamos para no acumular memoria
+                    subscribers.remove(subscriber);
+                    dropped.increment();
+                    senders.execute(subscriber.emitter::complete);
+                }
+            }
+        }
+    }
+
+    /** Sends a comment to every subscriber so that proxies keep the connection open and dead clients are detected. */
+    @Scheduled(fixedDelayString = "${techfixer.events.heartbeat:PT25S}")
+    public void heartbeat(){
+        subscribers.forEach(subscriber -> senders.execute(() -> {
+            try {
+                subscriber.emitter.send(SseEmitter.event().comment("ping"));
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(subscriber);
+            }
+        }));
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        senders.shutdownNow();
+    }
+
+    // Solo hay un envio en marcha por suscriptor, asi los eventos llegan en orden
+    private void schedule(Subscriber subscriber){
+        if (subscriber.sending.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber){
+        try {
+            TaskEventDto dto;
+            while ((dto = subscriber.queue.poll()) != null) {
+                subscriber.emitter.send(SseEmitter.event().name("task").data(dto, MediaType.APPLICATION_JSON));
+            }
+        } catch (IOException | IllegalStateException e) {
+            // El cliente se ha ido
+            subscribers.remove(subscriber);
+            subscriber.queue.clear();
+        } finally {
+            subscriber.sending.set(false);
+        }
+
+        // Puede haber llegado un evento despues de vaciar la cola y antes de liberar el envio
+        if (!subscriber.queue.isEmpty() && subscribers.contains(subscriber)) schedule(subscriber);
+    }
+
+    private static TaskEventDto toDto(TaskChangedEvent.Change change){
+        TaskSnapshot after = change.getAfter();
+        if (after == null) {
+            TaskSnapshot before = change.getBefore();
+            return new TaskEventDto("DELETED", change.getTaskId(), before.getStateId(), before.getOwnerId(), before.getDptId());
+        }
+        return new TaskEventDto(change.getBefore() == null ? "CREATED" : "UPDATED",
+                change.getTaskId(), after.getStateId(), after.getOwnerId(), after.getDptId());
+    }
+
+    private static final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Long ownerId;
+        private final Long dptId;
+        private final Queue<TaskEventDto> queue;
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter, Long ownerId, Long dptId, Queue<TaskEventDto> queue) {
+            this.emitter = emitter;
+            this.ownerId = ownerId;
+            this.dptId = dptId;
+            this.queue = queue;
+        }
+
+        boolean follows(TaskSnapshot snapshot){
+            if (snapshot == null) return false;
+            return (ownerId == null || Objects.equals(ownerId, snapshot.getOwnerId()))
+                    && (dptId == null || Objects.equals(dptId, snapshot.getDptId()));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.CursorDto;
+import TechFixer.TechFixer.dto.FilterDto;
+import TechFixer.TechFixer.entity.ArchivedTask;
+import TechFixer.TechFixer.entity.Task;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a {@link FilterDto} into a task query. Each filter is reduced to a shape, the set of predicates
+ * it uses, and every shape is compiled once into a named query that is reused by all later filters
+ * with the same shape. The query text therefore never depends on the parameter values, and the
+ * number of distinct queries is bounded by the number of shapes.
+ */
+@Component
+public class TaskFilterEngine {
+
+    // Predicados que forman la forma de un filtro, cada uno es un bit
+    private static final int AUTHOR = 1;
+    private static final int OWNERS = 1 << 1;
+    private static final int STATES = 1 << 2;
+    private static final int DEPARTMENTS = 1 << 3;
+    private static final int CREATED_FROM = 1 << 4;
+    private static final int CREATED_TO = 1 << 5;
+    private static final int ENDED_FROM = 1 << 6;
+    private static final int ENDED_TO = 1 << 7;
+    private static final int AFTER_CURSOR = 1 << 8;
+    private static final int ORDERED = 1 << 9;
+    private static final int TASK_IDS = 1 << 10;
+    private static final int ARCHIVE = 1 << 11;
+
+    private final EntityManager entityManager;
+    private final EntityManagerFactory entityManagerFactory;
+    private final Map<Integer, String> compiled = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    public TaskFilterEngine(EntityManager entityManager, EntityManagerFactory entityManagerFactory, MeterRegistry registry){
+        this.entityManager = entityManager;
+        this.entityManagerFactory = entityManagerFactory;
+        this.hits = registry.counter("techfixer.task.filter.shapes", "result", "hit");
+        this.misses = registry.counter("techfixer.task.filter.shapes", "result", "miss");
+        registry.gaugeMapSize("techfixer.task.filter.shapes.compiled", List.of(), compiled);
+    }
+
+    /**
+     * Creates the query for a filter, reusing the compiled query of its shape when there is one.
+     *
+     * @param filter the filter to apply, null or empty matches every task. The single owner, state and
+     *               department IDs are merged with their list counterparts, and any of the listed values match.
+     * @param cursor null to leave the results unordered; otherwise the results are ordered from the most
+     *               recent creation date and, if the cursor has a position, start right after it
+     * @return the query with every parameter bound
+     */
+    public TypedQuery<Task> createQuery(FilterDto filter, CursorDto cursor){
+        return createQuery(filter, cursor, null);
+    }
+
+    /**
+     * Creates the query for a filter limited to the given tasks, for example the results of a text search.
+     *
+     * @param filter the filter to apply, null or empty matches every task
+     * @param cursor null to leave the results unordered, see {@link #createQuery(FilterDto, CursorDto)}
+     * @param taskIDs the only tasks that may match, null for no limit
+     * @return the query with every parameter bound
+     */
+    public TypedQuery<Task> createQuery(FilterDto filter, CursorDto cursor, Collection<Long> taskIDs){
+        return createQuery(filter, cursor, taskIDs, 0, Task.class);
+    }
+
+    /**
+     * Creates the query for a filter over the archived tasks. The results are unordered.
+     *
+     * @param filter the filter to apply, null or empty matches every archived task
+     * @return the query with every parameter bound
+     */
+    public TypedQuery<ArchivedTask> createArchiveQuery(FilterDto filter){
+        return createQuery(filter, null, null, ARCHIVE, ArchivedTask.class);
+    }
+
+    private <T> TypedQuery<T> createQuery(FilterDto filter, CursorDto cursor, Collection<Long> taskIDs, int table, Class<T> type){
+        FilterDto f = filter != null ? filter : new FilterDto();
+        Map<String, Object> params = new LinkedHashMap<>();
+        int shape = table;
+
+        if (f.getAuthorID() != null) {
+            shape |= AUTHOR;
+            params.put("authorID", f.getAuthorID());
+        }
+        Set<Long> owners = merge(f.getOwnerID(), f.getOwnerIDs());
+        if (!owners.isEmpty()) {
+            shape |= OWNERS;
+            params.put("ownerIDs", owners);
+        }
+        Set<Long> states = merge(f.getStateID(), f.getStateIDs());
+        if (!states.isEmpty()) {
+            shape |= STATES;
+            params.put("stateIDs", states);
+        }
+        Set<Long> departments = merge(f.getDepartmentID(), f.getDepartmentIDs());
+        if (!departments.isEmpty()) {
+            shape |= DEPARTMENTS;
+            params.put("departmentIDs", departments);
+        }
+        if (f.getDateCreationIni() != null) {
+            shape |= CREATED_FROM;
+            params.put("dateCreationIni", f.getDateCreationIni());
+        }
+        if (f.getDateCreationEnd() != null) {
+            shape |= CREATED_TO;
+            params.put("dateCreationEnd", f.getDateCreationEnd());
+        }
+        if (f.getDateEndingIni() != null) {
+            shape |= ENDED_FROM;
+            params.put("dateEndingIni", f.getDateEndingIni());
+        }
+        if (f.getDateEndingEnd() != null) {
+            shape |= ENDED_TO;
+            params.put("dateEndingEnd", f.getDateEndingEnd());
+        }
+        if (taskIDs != null) {
+            shape |= TASK_IDS;
+            params.put("taskIDs", taskIDs);
+        }
+        if (cursor != null) {
+            shape |= ORDERED;
+            if (cursor.getId() != null) {
+                shape |= AFTER_CURSOR;
+                params.put("cursorDate", cursor.getDate());
+                params.put("cursorID", cursor.getId());
+            }
+        }
+
+        TypedQuery<T> query = entityManager.createNamedQuery(compile(shape, type), type);
+        params.forEach(query::setParameter);
+        return query;
+    }
+
+    /** Number of filters served by an already compiled shape. */
+    public long getHits(){ return (long) hits.count(); }
+
+    /** Number of shapes compiled so far. */
+    public long getMisses(){ return (long) misses.count(); }
+
+    // Devuelve el nombre de la consulta compilada para la forma, compilandola la primera vez
+    private String compile(int shape, Class<?> type){
+        String name = compiled.get(shape);
+        if (name != null) {
+            hits.increment();
+            return name;
+        }
+
+        return compiled.computeIfAbsent(shape, s -> {
+            misses.increment();
+            String queryName = "TaskFilter." + Integer.toHexString(s);
+            entityManagerFactory.addNamedQuery(queryName, entityManager.createQuery(jpql(s), type));
+            return queryName;
+        });
+    }
+
+    // Texto canonico de la consulta para una forma, siempre con los predicados en el mismo orden
+    private static String jpql(int shape){
+        // Las tareas archivadas tienen los mismos campos, solo cambia la entidad
+        String entity = (shape & ARCHIVE) != 0 ? "ArchivedTask" : "Task";
+        StringBuilder query = new StringBuilder("SELECT t FROM " + entity + " t WHERE 1=1");
+
+        if ((shape & TASK_IDS) != 0) query.append(" AND t.id IN :taskIDs");
+        if ((shape & AUTHOR) != 0) query.append(" AND t.author.id = :authorID");
+        if ((shape & OWNERS) != 0) query.append(" AND t.ownerUser.id IN :ownerIDs");
+        if ((shape & STATES) != 0) query.append(" AND t.state.id IN :stateIDs");
+        if ((shape & DEPARTMENTS) != 0) query.append(" AND t.dpt.id IN :departmentIDs");
+        if ((shape & CREATED_FROM) != 0) query.append(" AND t.dateIni >= :dateCreationIni");
+        if ((shape & CREATED_TO) != 0) query.append(" AND t.dateIni <= :dateCreationEnd");
+        if ((shape & ENDED_FROM) != 0) query.append(" AND t.dateEnd >= :dateEndingIni");
+        if ((shape & ENDED_TO) != 0) query.append(" AND t.dateEnd <= :dateEndingEnd");
+        if ((shape & AFTER_CURSOR) != 0) query.append(" AND (t.dateIni < :cursorDate OR (t.dateIni = :cursorDate AND t.id < :cursorID))");
+        if ((shape & ORDERED) != 0) query.append(" ORDER BY t.dateIni DESC, t.id DESC");
+
+        return query.toString();
+    }
+
+    // Une el valor suelto y la lista en un unico conjunto de valores aceptados
+    private static Set<Long> merge(Long single, List<Long> list){
+        Set<Long> values = new LinkedHashSet<>();
+        if (single != null) values.add(single);
+        if (list != null) list.stream().filter(Objects::nonNull).forEach(values::add);
+        return values;
+    }
+}
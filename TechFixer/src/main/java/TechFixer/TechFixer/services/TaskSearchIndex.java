@@ -0,0 +1,425 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.SearchProperties;
+import TechFixer.TechFixer.event.ProcessCreatedEvent;
+import TechFixer.TechFixer.event.TaskArchivedEvent;
+import TechFixer.TechFixer.event.TaskChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.es.SpanishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Inverted index over the task and process descriptions, stored with Lucene in
+ * {@code techfixer.search.index-dir}.
+ * <p>
+ * Every task and every process is a document holding its description and the ID of its task. The index is
+ * updated from the {@link TaskChangedEvent}s and {@link ProcessCreatedEvent}s once their transaction has
+ * committed. The changes are visible to searches straight away through a near-real-time reader, and are
+ * written to disk every {@code techfixer.search.commit-interval} by a scheduled task, never on the request
+ * thread. An index update that fails is logged and does not fail the request, whose data is already
+ * committed; that single update is tried again by the next scheduled commit.
+ * <p>
+ * Each commit records whether the application was still running. When the application starts, the index
+ * is rebuilt from the database if it was not closed cleanly, or if its number of documents differs from
+ * the number of tasks and processes, so changes lost in a crash are recovered. A rebuild writes the new
+ * index in a separate directory and only replaces the live one once it is complete, so searches keep
+ * seeing the old index meanwhile and a crash in the middle leaves the old index on disk.
+ */
+@Component
+public class TaskSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskSearchIndex.class);
+
+    // Campos de los documentos
+    private static final String KEY = "key";
+    private static final String TASK_ID = "taskId";
+    private static final String TEXT = "text";
+
+    // Filas que se leen de cada vez durante una reconstruccion completa
+    private static final int REBUILD_BATCH = 10_000;
+
+    // Dato guardado con cada commit: "open" mientras la aplicacion funciona, "closed" al cerrarse bien
+    private static final String STATE = "state";
+    private static final String OPEN = "open";
+    private static final String CLOSED = "closed";
+
+    private final SearchProperties properties;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transaction;
+    private final Analyzer analyzer = new SpanishAnalyzer();
+    private final IndexWriter writer;
+    private final SearcherManager searchers;
+    private final Timer searchTimer;
+    private final Counter failures;
+
+    // Actualizaciones que han fallado y se reintentan en el siguiente commit
+    private final Queue<Update> retries = new ConcurrentLinkedQueue<>();
+
+    // Mientras se reconstruye, las actualizaciones se apuntan aqui para repetirlas sobre el indice nuevo
+    private final Object recording = new Object();
+    private List<Update> duringRebuild;
+
+    // El cambio del indice viejo por el nuevo toma el de escritura: mientras dura no se guarda el indice
+    // ni se refrescan los lectores, que ven el indice anterior completo
+    private final ReadWriteLock swap = new ReentrantReadWriteLock();
+    private volatile boolean swapFailed;
+
+    // Un cambio del indice que se puede repetir sin cambiar el resultado
+    private interface Update {
+        void apply(IndexWriter writer) throws IOException;
+    }
+
+    public TaskSearchIndex(SearchProperties properties, EntityManager entityManager, TransactionTemplate transaction,
+                           MeterRegistry registry) throws IOException {
+        this.properties = properties;
+        this.entityManager = entityManager;
+        this.transaction = transaction;
+        this.writer = new IndexWriter(FSDirectory.open(Path.of(properties.getIndexDir())), new IndexWriterConfig(analyzer));
+        this.searchers = new SearcherManager(writer, null);
+        this.searchTimer = Timer.builder("techfixer.search.latency")
+                .description("Time spent looking up the index")
+                .register(registry);
+        this.failures = Counter.builder("techfixer.search.failures")
+                .description("Index updates that failed after their transaction had committed")
+                .register(registry);
+        Gauge.builder("techfixer.search.retries", retries, Queue::size)
+                .description("Failed index updates waiting to be tried again")
+                .register(registry);
+    }
+
+    /**
+     * Looks up the tasks whose description, or the description of any of their processes, matches the query.
+     * The query accepts the simple syntax: words (all of them must appear), "quoted phrases", {@code -excluded}
+     * words, {@code a | b} alternatives and {@code prefix*}.
+     *
+     * @param q the text to look for
+     * @return the IDs of the best matching tasks, best match first, at most {@code techfixer.search.max-hits}
+     * @see #search(String, Predicate)
+     */
+    public List<Long> search(String q){
+        List<Long> first = new ArrayList<>();
+        search(q, page -> {
+            first.addAll(page);
+            return false;
+        });
+        return first;
+    }
+
+    /**
+     * Walks every task matching the query, best match first, handing the task IDs to the consumer in pages of
+     * at most {@code techfixer.search.max-hits} until the consumer returns false or there are no more matches.
+     * A task is handed only once, at the position of its best matching document. All the pages are read from
+     * the same point in time of the index.
+     *
+     * @param q the text to look for, with the syntax of {@link #search(String)}
+     * @param pages receives each page of task IDs and tells whether to go on with the next one
+     */
+    public void search(String q, Predicate<List<Long>> pages){
+        SimpleQueryParser parser = new SimpleQueryParser(analyzer, TEXT);
+        parser.setDefaultOperator(BooleanClause.Occur.MUST);
+        Query query = parser.parse(q);
+        if (query == null) return;
+
+        int maxHits = properties.getMaxHits();
+        try {
+            refresh();
+            IndexSearcher searcher = searchers.acquire();
+            try {
+                // Una tarea aparece tantas veces como procesos coincidan, solo cuenta su mejor posicion
+                Set<Long> seen = new HashSet<>();
+                StoredFields stored = searcher.storedFields();
+                ScoreDoc last = null;
+                while (true) {
+                    long start = System.nanoTime();
+                    ScoreDoc[] hits = searcher.searchAfter(last, query, maxHits * 4).scoreDocs;
+                    List<Long> page = new ArrayList<>();
+                    for (ScoreDoc hit : hits) {
+                        last = hit;
+                        Long taskId = Long.valueOf(stored.document(hit.doc, Set.of(TASK_ID)).get(TASK_ID));
+                        if (seen.add(taskId) && page.add(taskId) && page.size() == maxHits) break;
+                    }
+                    searchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+                    if (!page.isEmpty() && !pages.test(page)) return;
+                    if (page.size() < maxHits && hits.length < maxHits * 4) return;
+                }
+            } finally {
+                searchers.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Indexes the new description of the changed tasks, or removes the deleted tasks with their processes. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTaskChanged(TaskChangedEvent event){
+        for (TaskChangedEvent.Change change : event.getChanges()) {
+            Long taskId = change.getTaskId();
+            if (change.getAfter() == null) {
+                apply("tarea " + taskId + " borrada", writer -> writer.deleteDocuments(new Term(TASK_ID, taskId.toString())));
+            } else if (change.getBefore() == null
+                    || !Objects.equals(change.getBefore().getDescription(), change.getAfter().getDescription())) {
+                String description = change.getAfter().getDescription();
+                apply("tarea " + taskId, writer -> writer.updateDocument(new Term(KEY, "task:" + taskId),
+                        document("task:" + taskId, taskId, description)));
+            }
+        }
+    }
+
+    /** The archived tasks are no longer searched, their documents are removed with those of their processes. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTaskArchived(TaskArchivedEvent event){
+        for (Long taskId : event.getTaskIds()) {
+            apply("tarea " + taskId + " archivada", writer -> writer.deleteDocuments(new Term(TASK_ID, taskId.toString())));
+        }
+    }
+
+    /** Indexes the new processes. */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProcessCreated(ProcessCreatedEvent event){
+        for (ProcessCreatedEvent.Created process : event.getProcesses()) {
+            String key = "process:" + process.getProcessId();
+            apply("proceso " + process.getProcessId(), writer -> writer.updateDocument(new Term(KEY, key),
+                    document(key, process.getTaskId(), process.getDescription())));
+        }
+    }
+
+    /**
+     * Tries again the updates that failed since the last run and writes the pending changes of the index to
+     * disk. Runs every {@code techfixer.search.commit-interval}; a crash loses at most the changes of that
+     * interval, which are recovered by {@link #rebuildIfStale()} at the next start.
+     */
+    @Scheduled(initialDelayString = "${techfixer.search.commit-interval:PT5S}", fixedDelayString = "${techfixer.search.commit-interval:PT5S}")
+    public void commit(){
+        // Cada actualizacion fallida se intenta una vez por pasada; si vuelve a fallar se queda para la siguiente
+        for (int i = retries.size(); i > 0; i--) {
+            Update update = retries.poll();
+            if (update == null) break;
+            try {
+                update.apply(writer);
+            } catch (IOException | RuntimeException e) {
+                retries.add(update);
+                log.warn("Sigue sin poderse actualizar el indice de busqueda, se reintentara: {}", e.toString());
+            }
+        }
+
+        swap.readLock().lock();
+        try {
+            if (!swapFailed && writer.hasUncommittedChanges()) commit(OPEN);
+        } catch (IOException | RuntimeException e) {
+            log.error("No se ha podido guardar el indice de busqueda, se reintentara", e);
+        } finally {
+            swap.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the database when it was not closed cleanly or its number of documents does
+     * not match the tasks and processes in the database, for example the first time the application starts
+     * or after a crash.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfStale() throws IOException {
+        String state = writer.getLiveCommitData() == null ? null : stateOf(writer.getLiveCommitData());
+        long documents = writer.getDocStats().numDocs;
+        long expected = transaction.execute(status ->
+                entityManager.createQuery("SELECT COUNT(t) FROM Task t", Long.class).getSingleResult()
+                        + entityManager.createQuery("SELECT COUNT(p) FROM Process p", Long.class).getSingleResult());
+
+        if (!CLOSED.equals(state) || documents != expected) {
+            log.info("Indice de busqueda desactualizado ({} documentos, {} en la base de datos, estado {}), se reconstruye",
+                    documents, expected, state);
+            rebuild();
+        } else {
+            // A partir de aqui un cierre inesperado deja el indice marcado como abierto
+            commit(OPEN);
+        }
+    }
+
+    /**
+     * Builds the index again from every task and process in the database. The rows are read with forward-only
+     * cursors, so memory use does not grow with the size of the tables, into a new index next to the live one.
+     * Only when it is complete does it replace the live index, in a single commit; the updates that arrive
+     * meanwhile are applied to both.
+     */
+    public synchronized void rebuild() throws IOException {
+        Path dir = Path.of(properties.getIndexDir() + "-rebuild");
+        synchronized (recording) {
+            duringRebuild = new ArrayList<>();
+        }
+        try {
+            long[] counts = new long[2];
+            // Lo que hubiera dejado una reconstruccion interrumpida se borra, puede estar a medio escribir
+            IOUtils.rm(dir);
+            try (FSDirectory directory = FSDirectory.open(dir);
+                 IndexWriter rebuilt = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+                transaction.executeWithoutResult(status -> {
+                    try {
+                        counts[0] = index(rebuilt, "SELECT t.id, t.id, t.description FROM Task t", "task:");
+                        counts[1] = index(rebuilt, "SELECT p.id, p.task.id, p.description FROM Process p", "process:");
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                rebuilt.commit();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Nadie guarda el indice ni refresca los lectores hasta que el nuevo este completo
+            swap.writeLock().lock();
+            try (FSDirectory directory = FSDirectory.open(dir)) {
+                writer.deleteAll();
+                writer.addIndexes(directory);
+                List<Update> replay;
+                synchronized (recording) {
+                    replay = duringRebuild;
+                    duringRebuild = null;
+                }
+                for (Update update : replay) {
+                    try {
+                        update.apply(writer);
+                    } catch (IOException | RuntimeException e) {
+                        retries.add(update);
+                    }
+                }
+                commit(OPEN);
+            } catch (IOException | RuntimeException e) {
+                // El indice en memoria esta a medias: no se vuelve a guardar ni a leer y el siguiente arranque lo reconstruye
+                swapFailed = true;
+                throw e;
+            } finally {
+                swap.writeLock().unlock();
+            }
+            log.info("Indice de busqueda reconstruido: {} tareas y {} procesos", counts[0], counts[1]);
+        } finally {
+            synchronized (recording) {
+                duringRebuild = null;
+            }
+            IOUtils.rm(dir);
+        }
+        searchers.maybeRefresh();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        searchers.close();
+        // Cerrar guarda el indice: si el cambio por el reconstruido fallo se descarta y se queda el ultimo guardado
+        if (swapFailed) {
+            writer.rollback();
+            return;
+        }
+        // Con actualizaciones sin aplicar el siguiente arranque reconstruye el indice
+        if (retries.isEmpty()) writer.setLiveCommitData(Map.of(STATE, CLOSED).entrySet());
+        writer.close();
+    }
+
+    // Los lectores solo se refrescan fuera del cambio de indice; mientras tanto siguen con el anterior
+    private void refresh() throws IOException {
+        if (swapFailed || !swap.readLock().tryLock()) return;
+        try {
+            searchers.maybeRefreshBlocking();
+        } finally {
+            swap.readLock().unlock();
+        }
+    }
+
+    // Los datos ya estan confirmados en la base de datos: un fallo no se propaga a la peticion, la
+    // actualizacion se reintenta en el siguiente commit
+    private void apply(String what, Update update){
+        synchronized (recording) {
+            if (duringRebuild != null) duringRebuild.add(update);
+        }
+        try {
+            update.apply(writer);
+        } catch (IOException | RuntimeException e) {
+            retries.add(update);
+            failures.increment();
+            log.error("No se ha podido actualizar el indice de busqueda ({}), se reintentara", what, e);
+        }
+    }
+
+    private void commit(String state) throws IOException {
+        writer.setLiveCommitData(Map.of(STATE, state).entrySet());
+        writer.commit();
+    }
+
+    private static String stateOf(Iterable<Map.Entry<String, String>> commitData){
+        for (Map.Entry<String, String> entry : commitData) {
+            if (STATE.equals(entry.getKey())) return entry.getValue();
+        }
+        return null;
+    }
+
+    private long index(IndexWriter target, String jpql, String keyPrefix) throws IOException {
+        long count = 0;
+        try (Stream<Object[]> rows = entityManager.createQuery(jpql, Object[].class)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, REBUILD_BATCH)
+                .getResultStream()) {
+            for (Iterator<Object[]> it = rows.iterator(); it.hasNext(); ) {
+                Object[] row = it.next();
+                target.addDocument(document(keyPrefix + row[0], (Long) row[1], (String) row[2]));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Document document(String key, Long taskId, String description){
+        Document document = new Document();
+        document.add(new StringField(KEY, key, Field.Store.NO));
+        document.add(new StringField(TASK_ID, taskId.toString(), Field.Store.YES));
+        document.add(new TextField(TEXT, description != null ? description : "", Field.Store.NO));
+        return document;
+    }
+}
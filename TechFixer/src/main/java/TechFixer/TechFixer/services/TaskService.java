@@ -1,11 +1,25 @@
 package TechFixer.TechFixer.services;
 
 
+import TechFixer.TechFixer.config.TaskProperties;
+import TechFixer.TechFixer.dto.BulkResultDto;
+import TechFixer.TechFixer.dto.CursorDto;
 import TechFixer.TechFixer.dto.FilterDto;
+import TechFixer.TechFixer.dto.PageDto;
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskChangesDto;
 import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Department;
 import TechFixer.TechFixer.entity.Process;
+import TechFixer.TechFixer.entity.State;
 import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.event.ProcessCreatedEvent;
+import TechFixer.TechFixer.event.TaskChangedEvent;
+import TechFixer.TechFixer.event.TaskSnapshot;
 import TechFixer.TechFixer.exception.NotFoundUserException;
+import TechFixer.TechFixer.exception.TaskConflictException;
+import TechFixer.TechFixer.mapper.CursorMapper;
 import TechFixer.TechFixer.mapper.TaskMapper;
 import TechFixer.TechFixer.repositories.*;
 import jakarta.persistence.EntityManager;
@@ -13,21 +27,38 @@ import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
 import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
 public class TaskService {
 
     private final TaskRepository repo;
-    private final DepartmentRepository repoDtp;
     private final UserRepository repoUser;
-    private final StateRepository repoState;
+    private final ReferenceCache referenceCache;
     private final ProcessRepository repoProcess;
+    private final ArchivedTaskRepository repoArchive;
+    private final TaskProperties properties;
+    private final TaskFilterEngine filterEngine;
+    private final PendingBoard pendingBoard;
+    private final TaskSearchIndex searchIndex;
+    private final ChangeCounters changeCounters;
+    private final TaskVersions versions;
+    private final ProcessQueue processQueue;
+    private final TaskChangeLog changeLog;
+    private final ApplicationEventPublisher events;
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -45,113 +76,100 @@ public class TaskService {
      * @throws NotFoundUserException if the author ID is not provided in the TaskDto, as the author
      *                               field is mandatory.
      */
+    @Transactional
     public void save(TaskDto taskDto) {
-        Task task = new Task();
-
-        // Obtenemos el departamento, sino hay lo ponemos nulo
-        if (taskDto.getDptID() != null) {
-            task.setDpt(repoDtp.findById(taskDto.getDptID()).orElseThrow(() -> new NoSuchElementException("Departamento no encontrado")));
-        } else { task.setDpt(null); }
-
-        // Obtenemos el autor y sino hay, se lanza excepcion. El autor es obligatorio
-        if (taskDto.getAuthorID() != null) {
-            task.setAuthor(repoUser.findById(taskDto.getAuthorID()).orElseThrow(() -> new NoSuchElementException("Autor no encontrado")));
-        } else { throw new NotFoundUserException("Autor obligatorio"); }
-
-        // Obtenemos el usuario asociado, sino hay a nulo
-        if (taskDto.getOwnerID() != null) {
-            task.setOwnerUser(repoUser.findById(taskDto.getOwnerID()).orElseThrow(() -> new NoSuchElementException("Usuarios encargado no encontrado")));
-        }  else { task.setOwnerUser(null); }
-
-        // Obtenemos el estatado, sino hay lo ponemos Activo por defecto
-        if(taskDto.getStateID() != null) {
-            task.setState(repoState.findById(taskDto.getStateID()).orElseThrow(() -> new NoSuchElementException("Estado no encontrado")));
-        } else { task.setState(repoState.findById(1L).orElseThrow(() -> new NoSuchElementException("Estado no encontrado"))); }
-
-        // Asignamos descripcion y fecha de creacion
-        task.setDescription(taskDto.getDescription());
-        task.setDateIni(LocalDateTime.now());
+        References refs = references(List.of(taskDto));
+        List<Process> processes = new ArrayList<>();
 
-        repo.save(task);
-
-        // Comprobamos si tiene procesos, esto se tiene que hacer despues de crear la tarea para que no haya problemas de referecias
-        if(taskDto.getProcessDtos() != null){
-            taskDto.getProcessDtos().forEach(dto -> {
-                Process process = new Process();
-                process.setDescription(dto.getDescription());
-                process.setDate(LocalDateTime.now());
-                process.setAuthor(task.getAuthor());
-                process.setTask(task);
-                repoProcess.save(process);
-
-            });
-        }
+        Task task = repo.save(create(taskDto, refs, processes));
+        repoProcess.saveAll(processes);
 
+        events.publishEvent(TaskChangedEvent.of(task.getId(), null, TaskSnapshot.of(task)));
+        if (!processes.isEmpty()) events.publishEvent(ProcessCreatedEvent.of(processes));
     }
 
     /**
      * Updates an existing task in the repository with the information provided in the TaskDto.
      * This method verifies the existence of the task and updates its department, owner, and description
      * based on the provided data. If a field in the DTO is null, it resets the associated field in the task.
+     * <p>
+     * If the DTO carries the version the client read and the task has changed since, the fields changed by
+     * the client are applied over the current ones as long as nobody else changed the same fields. Two updates
+     * committed at the same time are caught by the version column when the second one is flushed.
      *
      * @param taskDto the data transfer object containing updated information about the task,
      *            including its ID, department ID, owner ID, and description.
      * @throws NoSuchElementException if the task, specified department, or owner does not exist.
+     * @throws TaskConflictException if the task has changed since the given version and the changes overlap.
+     * @throws org.springframework.orm.ObjectOptimisticLockingFailureException if another update of the task
+     *            commits while this one is running.
      */
+    @Transactional
     public void update(TaskDto taskDto){
-        Task dbTask = repo.findById(taskDto.getId()).orElseThrow(() -> new NoSuchElementException("La tarea no existe"));
+        References refs = references(List.of(taskDto));
+        List<Process> processes = new ArrayList<>();
+        TaskSnapshot before = refs.task(taskDto.getId()).map(TaskSnapshot::of).orElse(null);
 
-        // Si la tarea tiene estado finalizado no se puede modificar por lo que lanzamos excepcion
-        if(dbTask.getState().getId().equals(4L)){
-            throw new IllegalStateException("La tarea ya ha sido finalizada, no admite modificaciones");
-        }
-
-        // ¿Hay que cambiar el departamento? Si nos lo dan lo buscamos, sino significa que le han quitado el dpt
-        if(taskDto.getDptID() != null){
-            dbTask.setDpt(
-                    repoDtp.findById(taskDto.getDptID()).orElseThrow(() -> new NoSuchElementException("Departamento no existe"))
-            );
-        } else { dbTask.setDpt(null); }
+        Task task = repo.save(modify(taskDto, refs, processes));
+        repoProcess.saveAll(processes);
+        incrementVersions(processes);
 
-        // ¿Hay que cambiar el usuario asociado? Si nos lo dan lo buscamos, sino significa que le han quitado el usuario asociado
-        if(taskDto.getOwnerID() != null){
-            dbTask.setOwnerUser(
-                    repoUser.findById(taskDto.getOwnerID()).orElseThrow(() -> new NoSuchElementException("Usuario no existe"))
-            );
-        } else { dbTask.setOwnerUser(null); }
-
-        // ¿Hay que cambiar el estado? En caso de cambiarlo, primero comprobamos que exista, sino excepcion
-        if(taskDto.getStateID() != null && !taskDto.getStateID().equals(dbTask.getState().getId()) ){
-            dbTask.setState(
-                repoState.findById(taskDto.getStateID()).orElseThrow(() -> new NoSuchElementException("Estado no existe"))
-            );
+        events.publishEvent(TaskChangedEvent.of(task.getId(), before, TaskSnapshot.of(task)));
+        if (!processes.isEmpty()) events.publishEvent(ProcessCreatedEvent.of(processes));
+    }
 
-            // Si el estado es finalizado, asignamos una fecha de fin
-            if(dbTask.getState().getId().equals(4L)){
-                dbTask.setDateEnd(LocalDateTime.now());
-            }
+    /**
+     * Creates and updates many tasks at once. Items without ID are created as {@link #save(TaskDto)} does
+     * and items with ID are updated as {@link #update(TaskDto)} does.
+     * The departments, users, states and tasks referenced by the whole request are read up front with one
+     * query per type, and the rows are written with JDBC batching.
+     * An item that fails validation is reported in its result and does not stop the rest of the request.
+     *
+     * @param taskDtos the tasks to create or update, at most {@code techfixer.task.bulk-max-size}
+     * @return one result per item, in the same order, with the ID of the saved task or the error found
+     * @throws IllegalArgumentException if the request is empty or holds more items than allowed
+     */
+    @Transactional
+    public List<BulkResultDto> saveAll(List<TaskDto> taskDtos){
+        if (taskDtos == null || taskDtos.isEmpty()) throw new IllegalArgumentException("No hay tareas que guardar");
+        if (taskDtos.size() > properties.getBulkMaxSize()) {
+            throw new IllegalArgumentException("Como maximo se pueden enviar " + properties.getBulkMaxSize() + " tareas");
         }
 
-        // ¿Hay que cambiar la descripcion?
-        if(dbTask.getDescription() != null && !dbTask.getDescription().equals(taskDto.getDescription()) ){
-            dbTask.setDescription(taskDto.getDescription());
+        References refs = references(taskDtos);
+        Task[] saved = new Task[taskDtos.size()];
+        TaskSnapshot[] before = new TaskSnapshot[taskDtos.size()];
+        String[] errors = new String[taskDtos.size()];
+        List<Process> processes = new ArrayList<>();
+
+        for (int i = 0; i < taskDtos.size(); i++) {
+            TaskDto taskDto = taskDtos.get(i);
+            try {
+                if (taskDto == null) throw new NoSuchElementException("Tarea vacia");
+                before[i] = refs.task(taskDto.getId()).map(TaskSnapshot::of).orElse(null);
+                saved[i] = taskDto.getId() == null ? create(taskDto, refs, processes) : modify(taskDto, refs, processes);
+            } catch (NoSuchElementException | NotFoundUserException | IllegalStateException | TaskConflictException e) {
+                errors[i] = e.getMessage();
+            }
         }
 
-        repo.save(dbTask);
-
-        // ¿Hay que añadir procesos?
-        if(taskDto.getProcessDtos() != null){
-            taskDto.getProcessDtos().forEach(processDto -> {
-                Process process = new Process();
-                process.setDescription(processDto.getDescription());
-                process.setDate(LocalDateTime.now());
-                process.setAuthor(repoUser.findById(processDto.getAuthorID()).orElseThrow(() -> new NoSuchElementException("El autor del proceso no existe")));
-                process.setTask(dbTask);
-                repoProcess.save(process);
-            });
+        // Las tareas nuevas se insertan por lotes, las que ya existian se actualizan al hacer flush
+        List<Long> appended = appendedTo(processes);
+        repo.saveAll(Arrays.stream(saved).filter(Objects::nonNull).filter(task -> task.getId() == null).toList());
+        repoProcess.saveAll(processes);
+        if (!appended.isEmpty()) repo.incrementVersions(appended);
+
+        List<BulkResultDto> results = new ArrayList<>(taskDtos.size());
+        List<TaskChangedEvent.Change> changes = new ArrayList<>();
+        for (int i = 0; i < taskDtos.size(); i++) {
+            Long id = saved[i] != null ? saved[i].getId() : taskDtos.get(i) != null ? taskDtos.get(i).getId() : null;
+            results.add(new BulkResultDto(i, id, errors[i]));
+            if (saved[i] != null) changes.add(new TaskChangedEvent.Change(id, before[i], TaskSnapshot.of(saved[i])));
         }
 
-
+        if (!changes.isEmpty()) events.publishEvent(new TaskChangedEvent(changes));
+        if (!processes.isEmpty()) events.publishEvent(ProcessCreatedEvent.of(processes));
+        return results;
     }
 
     /**
@@ -165,6 +183,8 @@ public class TaskService {
     public void delete(Long id){
         Task toDelete = repo.findById(id).orElseThrow(() -> new NoSuchElementException("La tarea no existe"));
         repo.delete(toDelete);
+
+        events.publishEvent(TaskChangedEvent.of(id, TaskSnapshot.of(toDelete), null));
     }
 
     /**
@@ -175,100 +195,545 @@ public class TaskService {
      * @return a TaskDto object representing the retrieved task
      * @throws NoSuchElementException if no task exists with the specified ID
      */
+    @Transactional
     public TaskDto findById(Long id){
-        return TaskMapper.toDto(
-                repo.findById(id).orElseThrow(() -> new NoSuchElementException("La tarea no existe"))
-        );
+        return findById(id, false);
+    }
+
+    /**
+     * Retrieves a task by its unique identifier, looking also in the archive if asked to.
+     *
+     * @param id the unique identifier of the task to retrieve
+     * @param includeArchived whether to look for the task in the archive when it is not in the working tables
+     * @return a TaskDto object representing the retrieved task
+     * @throws NoSuchElementException if no task exists with the specified ID
+     */
+    @Transactional
+    public TaskDto findById(Long id, boolean includeArchived){
+        Optional<TaskDto> task = repo.findDetailById(id).map(TaskMapper::toDto);
+        if (task.isEmpty() && includeArchived) {
+            task = repoArchive.findDetailById(id).map(TaskMapper::toDto);
+        }
+        return task.orElseThrow(() -> new NoSuchElementException("La tarea no existe"));
+    }
+
+    /**
+     * Retrieves a task as seen by a user: besides the saved processes, it has the processes that user has
+     * added and the {@link ProcessQueue} has not saved yet, so the author always sees their own changes.
+     *
+     * @param id the unique identifier of the task to retrieve
+     * @param includeArchived whether to look for the task in the archive when it is not in the working tables
+     * @param userName the user asking for the task, or null
+     * @return a TaskDto object representing the retrieved task
+     * @throws NoSuchElementException if no task exists with the specified ID
+     */
+    @Transactional
+    public TaskDto findById(Long id, boolean includeArchived, String userName){
+        // Primero los pendientes: si se guardan mientras leemos la tarea salen repetidos, en vez de no salir, y se quitan abajo
+        List<ProcessDto> pending = processQueue.pending(id, userName);
+        TaskDto task = findById(id, includeArchived);
+        if (pending.isEmpty()) return task;
+
+        List<ProcessDto> saved = task.getProcessDtos() != null ? task.getProcessDtos() : List.of();
+        List<ProcessDto> processes = new ArrayList<>();
+        pending.stream().filter(p -> saved.stream().noneMatch(s -> sameProcess(p, s))).forEach(processes::add);
+        processes.addAll(saved);
+        task.setProcessDtos(processes);
+        return task;
+    }
+
+    // Un proceso pendiente ya guardado tiene la misma fecha, autor y descripcion
+    private static boolean sameProcess(ProcessDto pending, ProcessDto saved){
+        return Objects.equals(pending.getDate(), saved.getDate()) && Objects.equals(pending.getAuthorID(), saved.getAuthorID())
+                && Objects.equals(pending.getDescription(), saved.getDescription());
     }
 
     /**
-     * Retrieves all tasks from the repository, maps them to TaskDto objects using
-     * the TaskMapper, and returns the list of mapped TaskDto objects.
+     * Builds the ETag of a task from its version, which changes with every change of the task and every new
+     * process, and from the change counters of the users, departments and states whose names it shows.
+     * Only the version is read, the task itself is not loaded.
+     *
+     * @param id the unique identifier of the task
+     * @param includeArchived whether to look for the task in the archive when it is not in the working tables
+     * @return the ETag of the task, or null if the task does not exist
+     */
+    public String etag(Long id, boolean includeArchived){
+        Optional<String> key = repo.findVersionById(id).map(version -> "t" + id + "v" + version);
+
+        // Las tareas archivadas ya no cambian
+        if (key.isEmpty() && includeArchived && repoArchive.existsById(id)) key = Optional.of("a" + id);
+
+        return key.map(k -> changeCounters.etag(k, ChangeCounters.Resource.USERS,
+                ChangeCounters.Resource.DEPARTMENTS, ChangeCounters.Resource.STATES)).orElse(null);
+    }
+
+    /**
+     * Builds the ETag of a task as seen by a user, which also changes with the processes of that user
+     * waiting in the {@link ProcessQueue}. Saving them changes the version of the task.
+     */
+    public String etag(Long id, boolean includeArchived, String userName){
+        String etag = etag(id, includeArchived);
+        int pending = processQueue.pending(id, userName).size();
+        return etag == null || pending == 0 ? etag : "p" + pending + "-" + etag;
+    }
+
+    /**
+     * Retrieves all tasks, each with its number of processes and the most recent one. Tasks and process
+     * summaries are read with two projection queries straight into DTOs, without loading any entity.
+     * The full history of a task is read with {@link #findProcessPage(Long, String, Integer)}.
      *
      * @return a list of TaskDto objects representing all tasks in the repository
      */
+    @Transactional
     public List<TaskDto> findAll(){
-        return
-                repo.findAll().stream().map(TaskMapper::toDto).toList();
+        return TaskMapper.withProcessSummary(repo.findAllDtos(), repoProcess.findSummaries());
+    }
 
+    /**
+     * Retrieves the pending board of a user: the active, in process and paused tasks, with their number of
+     * processes and the most recent one, each column from the most recent to the oldest. It is served from the in-memory {@link PendingBoard},
+     * the database is only read the first time the board of the user is requested.
+     *
+     * @param userID the unique identifier of the owner
+     * @return the tasks of the user under the {@code active}, {@code process} and {@code paused} keys
+     * @throws NoSuchElementException if the user does not exist
+     */
+    public Map<String, List<TaskDto>> findPendingBoard(Long userID){
+        Map<String, List<TaskDto>> board = pendingBoard.get(userID);
+
+        // Solo si no tiene nada pendiente comprobamos que el usuario existe
+        if(board.values().stream().allMatch(List::isEmpty) && !repoUser.existsById(userID)){
+            throw new NoSuchElementException("El usuario no existe");
+        }
+        return board;
     }
 
-    public List<TaskDto> findAllByUserPending(Long userID){
-        // Comprobamos que el usuario existe
-        if(repoUser.findById(userID).isEmpty()){throw new NoSuchElementException("El usuario no existe");}
+    /**
+     * Retrieves one page of tasks ordered from the most recent to the oldest creation date.
+     * Pages are addressed by an opaque cursor built from the creation date and ID of the last task
+     * returned, so every page costs the same no matter how deep the client has scrolled.
+     *
+     * @param cursor the cursor returned with the previous page, or null for the first page
+     * @param size the number of tasks wanted; null uses the configured default and values over the
+     *             configured maximum are capped
+     * @return a page with the mapped tasks and the cursor of the next page, null if there are no more tasks
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    @Transactional
+    public PageDto<TaskDto> findPage(String cursor, Integer size){
+        CursorDto after = CursorMapper.decode(cursor);
+        int pageSize = pageSize(size);
+
+        // Pedimos un elemento de mas para saber si existe una pagina siguiente
+        List<Task> tasks = after == null
+                ? repo.findFirstPage(Limit.of(pageSize + 1))
+                : repo.findPageAfter(after.getDate(), after.getId(), Limit.of(pageSize + 1));
 
-        return  repo.findByOwnerUser_IdAndState_IdInOrderByDateIniDesc(userID, List.of(1L,2L,3L)).stream().map(TaskMapper::toDto).toList();
+        return toPage(tasks, pageSize);
     }
 
+    /**
+     * Retrieves all tasks matching the given filter. The owner, state and department predicates accept
+     * a list of values, a task matches when it has any of them. With {@code includeArchived} the archived
+     * tasks matching the filter are returned after the ones in the working tables.
+     *
+     * @param filter the filter to apply, null or empty returns every task
+     * @return a list of TaskDto objects matching the filter
+     */
+    @Transactional
     public List<TaskDto> findFilter(FilterDto filter){
+        List<TaskDto> tasks = withProcessSummary(withGraph(filterEngine.createQuery(filter, null), "Task.list")
+                .getResultList().stream().map(TaskMapper::toListDto).toList());
 
-        Map<String, Object> params = new HashMap<>();
-        StringBuilder query = new StringBuilder("SELECT t FROM Task t WHERE 1=1 ");
+        if (filter == null || !Boolean.TRUE.equals(filter.getIncludeArchived())) return tasks;
 
-        if(filter != null && !filter.equals(new FilterDto())) {
-            // ¿Filtramos por autor?
-            if (filter.getAuthorID() != null) {
-                query.append( " AND t.author.id = :authorID ");
-                params.put("authorID", filter.getAuthorID());
-            }
+        // Las tareas archivadas traen sus procesos, de ellos se saca el resumen
+        List<TaskDto> all = new ArrayList<>(tasks);
+        filterEngine.createArchiveQuery(filter)
+                .setHint(SpecHints.HINT_SPEC_FETCH_GRAPH, entityManager.getEntityGraph("ArchivedTask.withProcesses"))
+                .getResultStream().map(TaskMapper::toDto).map(TaskMapper::toSummary).forEach(all::add);
+        return all;
+    }
 
-            // Filtramos por usuarios asociado?
-            if (filter.getOwnerID() != null) {
-                query.append(" AND t.ownerUser.id = :ownerID ");
-                params.put("ownerID", filter.getOwnerID());
-            }
+    /**
+     * Retrieves one page of the tasks matching the given filter, ordered from the most recent to the
+     * oldest creation date. Works like {@link #findPage(String, Integer)} but applies the filter predicates.
+     *
+     * @param filter the filter to apply, null or empty matches every task
+     * @param cursor the cursor returned with the previous page, or null for the first page
+     * @param size the number of tasks wanted; null uses the configured default
+     * @return a page with the mapped tasks and the cursor of the next page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    @Transactional
+    public PageDto<TaskDto> findFilterPage(FilterDto filter, String cursor, Integer size){
+        CursorDto after = CursorMapper.decode(cursor);
+        int pageSize = pageSize(size);
 
-            // ¿Filtramos por estado?
-            if (filter.getStateID() != null) {
-                query.append(" AND t.state.id = :stateID ");
-                params.put("stateID", filter.getStateID());
+        // Sin cursor pedimos la primera pagina, que igualmente tiene que ir ordenada
+        TypedQuery<Task> query = withGraph(filterEngine.createQuery(filter, after != null ? after : new CursorDto()), "Task.list");
+        query.setMaxResults(pageSize + 1);
+
+        return toPage(query.getResultList(), pageSize);
+    }
+
+    /**
+     * Retrieves one page of the processes of a task, from the most recent to the oldest. Like the task pages,
+     * pages are addressed by an opaque cursor built from the date and ID of the last process returned, and
+     * every page is read straight from the {@code (task_id, date, id)} index.
+     *
+     * @param taskId the unique identifier of the task
+     * @param cursor the cursor returned with the previous page, or null for the first page
+     * @param size the number of processes wanted; null uses the configured default and values over the
+     *             configured maximum are capped
+     * @return a page with the processes and the cursor of the next page, null if there are no more processes
+     * @throws NoSuchElementException if the task does not exist
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    @Transactional
+    public PageDto<ProcessDto> findProcessPage(Long taskId, String cursor, Integer size){
+        CursorDto after = CursorMapper.decode(cursor);
+        int pageSize = pageSize(size);
+        if (!repo.existsById(taskId)) throw new NoSuchElementException("La tarea no existe");
+
+        // Pedimos un elemento de mas para saber si existe una pagina siguiente
+        List<ProcessDto> processes = after == null
+                ? repoProcess.findFirstPageByTask(taskId, Limit.of(pageSize + 1))
+                : repoProcess.findPageByTaskAfter(taskId, after.getDate(), after.getId(), Limit.of(pageSize + 1));
+
+        boolean hasNext = processes.size() > pageSize;
+        List<ProcessDto> content = hasNext ? processes.subList(0, pageSize) : processes;
+        ProcessDto last = content.isEmpty() ? null : content.get(content.size() - 1);
+        return new PageDto<>(content, content.size(), hasNext ? CursorMapper.encode(last.getDate(), last.getId()) : null);
+    }
+
+    /**
+     * Retrieves one page of the processes of a task as seen by a user. Like {@link #findById(Long, boolean, String)},
+     * the first page also starts with the processes that user has added and the {@link ProcessQueue} has not
+     * saved yet, on top of the requested number of saved ones. The cursor only walks the saved processes.
+     *
+     * @param userName the user asking for the processes, or null
+     * @see #findProcessPage(Long, String, Integer)
+     */
+    @Transactional
+    public PageDto<ProcessDto> findProcessPage(Long taskId, String cursor, Integer size, String userName){
+        // Primero los pendientes, como en findById: si se guardan mientras leemos la pagina se quitan abajo
+        List<ProcessDto> pending = cursor == null ? processQueue.pending(taskId, userName) : List.of();
+        PageDto<ProcessDto> page = findProcessPage(taskId, cursor, size);
+        if (pending.isEmpty()) return page;
+
+        List<ProcessDto> processes = new ArrayList<>();
+        pending.stream().filter(p -> page.getContent().stream().noneMatch(s -> sameProcess(p, s))).forEach(processes::add);
+        processes.addAll(page.getContent());
+        return new PageDto<>(processes, processes.size(), page.getNextCursor());
+    }
+
+    /**
+     * Returns the tasks created, modified, deleted or archived after the given watermark, so a client can
+     * keep its copy up to date without reading every task again. Changed tasks come in the list shape, with
+     * the process summary, in the order they changed.
+     *
+     * @param since the watermark returned by the previous call, 0 for every task
+     * @param size the number of changes wanted; null uses the configured default and values over the
+     *             configured maximum are capped. A bulk change is never split, so a page may hold more.
+     * @return the changes, the watermark to ask from next time and whether the client must load everything
+     *         again because the watermark is older than the retained deletions
+     * @throws IllegalArgumentException if the watermark is negative
+     */
+    @Transactional
+    public TaskChangesDto findChanges(Long since, Integer size){
+        if (since == null || since < 0) throw new IllegalArgumentException("La marca de agua no es valida");
+        TaskChangeLog.Page page = changeLog.changes(since, pageSize(size));
+
+        List<Long> changedIds = page.changes().stream().filter(change -> !change.deleted()).map(TaskChangeLog.Change::taskId).toList();
+        List<Long> deleted = page.changes().stream().filter(TaskChangeLog.Change::deleted).map(TaskChangeLog.Change::taskId).toList();
+
+        // Una tarea borrada entre las dos consultas no aparece, su lapida llegara con la siguiente marca de agua
+        Map<Long, TaskDto> byId = changedIds.isEmpty() ? Map.of()
+                : repo.findDtosByIds(changedIds).stream().collect(Collectors.toMap(TaskDto::getId, Function.identity()));
+        List<TaskDto> changed = withProcessSummary(changedIds.stream().map(byId::get).filter(Objects::nonNull).toList());
+
+        return new TaskChangesDto(changed, deleted, page.watermark(), page.hasMore(), page.resyncRequired());
+    }
+
+    /**
+     * Searches the tasks whose description, or the description of any of their processes, matches the text,
+     * best match first. Only the tasks that also match the filter are returned: the matches are read from the
+     * index a page at a time and filtered in the database until there are enough, so a selective filter still
+     * finds the tasks ranked below the first page.
+     *
+     * @param q the text to look for, see {@link TaskSearchIndex#search(String)} for the accepted syntax
+     * @param filter the filter to apply, null or empty to keep every match
+     * @param size the number of tasks wanted; null uses the configured default page size
+     * @return the matching tasks, ranked by relevance
+     * @throws IllegalArgumentException if the text is empty or the size is not valid
+     */
+    @Transactional
+    public List<TaskDto> search(String q, FilterDto filter, Integer size){
+        if (q == null || q.isBlank()) throw new IllegalArgumentException("El texto a buscar no puede estar vacio");
+        int limit = pageSize(size);
+
+        // El filtro se aplica en la base de datos y el orden lo marca el indice
+        List<TaskDto> found = new ArrayList<>();
+        searchIndex.search(q, ranked -> {
+            Map<Long, Task> matching = withGraph(filterEngine.createQuery(filter, null, ranked), "Task.list")
+                    .getResultStream().collect(Collectors.toMap(Task::getId, Function.identity()));
+            ranked.stream().map(matching::get).filter(Objects::nonNull).limit(limit - found.size())
+                    .map(TaskMapper::toListDto).forEach(found::add);
+            return found.size() < limit;
+        });
+        return found.isEmpty() ? found : withProcessSummary(found);
+    }
+
+    /**
+     * Streams every task matching the given filter, with its processes, to the given consumer.
+     * The tasks are read with a forward-only, read-only cursor and the persistence context is cleared
+     * every {@code techfixer.task.export-batch-size} rows, so memory use does not grow with the
+     * number of exported tasks.
+     *
+     * @param filter the filter to apply, null or empty exports every task
+     * @param sink receives each mapped task in turn
+     */
+    @Transactional
+    public void exportFilter(FilterDto filter, Consumer<TaskDto> sink){
+        int batchSize = properties.getExportBatchSize();
+
+        TypedQuery<Task> query = withGraph(filterEngine.createQuery(filter, null), "Task.list")
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, batchSize);
+
+        // Hibernate recorre el stream con un cursor de solo avance, que se cierra con el stream
+        try (Stream<Task> rows = query.getResultStream()) {
+            int count = 0;
+            for (Iterator<Task> it = rows.iterator(); it.hasNext(); ) {
+                sink.accept(TaskMapper.toDto(it.next()));
+
+                // Cada lote soltamos las entidades ya exportadas para que no se acumulen en memoria
+                if (++count % batchSize == 0) {
+                    entityManager.clear();
+                }
             }
+        }
+    }
+
+    // Referencias usadas por un conjunto de tareas, leidas con una consulta por tipo
+    private record References(Map<Long, Department> dpts, Map<Long, User> users, Map<Long, State> states, Map<Long, Task> tasks) {
 
-            // Filtramos por departamento?
-            if (filter.getDepartmentID() != null) {
-                query.append(" AND t.dpt.id = :departmentID ");
-                params.put("departmentID", filter.getDepartmentID());
+        Optional<Department> dpt(Long id) { return Optional.ofNullable(id).map(dpts::get); }
+        Optional<User> user(Long id) { return Optional.ofNullable(id).map(users::get); }
+        Optional<State> state(Long id) { return Optional.ofNullable(id).map(states::get); }
+        Optional<Task> task(Long id) { return Optional.ofNullable(id).map(tasks::get); }
+    }
+
+    private References references(List<TaskDto> taskDtos){
+        Set<Long> dptIDs = new HashSet<>();
+        Set<Long> userIDs = new HashSet<>();
+        Set<Long> stateIDs = new HashSet<>(Set.of(1L));
+        Set<Long> taskIDs = new HashSet<>();
+
+        taskDtos.stream().filter(Objects::nonNull).forEach(dto -> {
+            addIfPresent(dptIDs, dto.getDptID());
+            addIfPresent(userIDs, dto.getAuthorID());
+            addIfPresent(userIDs, dto.getOwnerID());
+            addIfPresent(stateIDs, dto.getStateID());
+            addIfPresent(taskIDs, dto.getId());
+            if (dto.getProcessDtos() != null) {
+                dto.getProcessDtos().stream().filter(Objects::nonNull).forEach(p -> addIfPresent(userIDs, p.getAuthorID()));
             }
+        });
+
+        return new References(
+                referenceCache.departments(dptIDs),
+                byId(repoUser.findAllById(userIDs), User::getId),
+                referenceCache.states(stateIDs),
+                byId(repo.findAllById(taskIDs), Task::getId));
+    }
+
+    private static void addIfPresent(Set<Long> ids, Long id){
+        if (id != null) ids.add(id);
+    }
+
+    private static <T> Map<Long, T> byId(List<T> entities, Function<T, Long> id){
+        return entities.stream().collect(Collectors.toMap(id, Function.identity()));
+    }
+
+    // Construye una tarea nueva y sus procesos. Todas las comprobaciones se hacen antes de tocar nada
+    private Task create(TaskDto taskDto, References refs, List<Process> processes){
+        // Obtenemos el departamento, sino hay lo ponemos nulo
+        Department dpt = taskDto.getDptID() == null ? null
+                : refs.dpt(taskDto.getDptID()).orElseThrow(() -> new NoSuchElementException("Departamento no encontrado"));
+
+        // Obtenemos el autor y sino hay, se lanza excepcion. El autor es obligatorio
+        if (taskDto.getAuthorID() == null) { throw new NotFoundUserException("Autor obligatorio"); }
+        User author = refs.user(taskDto.getAuthorID()).orElseThrow(() -> new NoSuchElementException("Autor no encontrado"));
+
+        // Obtenemos el usuario asociado, sino hay a nulo
+        User owner = taskDto.getOwnerID() == null ? null
+                : refs.user(taskDto.getOwnerID()).orElseThrow(() -> new NoSuchElementException("Usuarios encargado no encontrado"));
+
+        // Obtenemos el estatado, sino hay lo ponemos Activo por defecto
+        State state = refs.state(taskDto.getStateID() != null ? taskDto.getStateID() : 1L)
+                .orElseThrow(() -> new NoSuchElementException("Estado no encontrado"));
+
+        Task task = new Task();
+        task.setDpt(dpt);
+        task.setAuthor(author);
+        task.setOwnerUser(owner);
+        task.setState(state);
+
+        // Asignamos descripcion y fecha de creacion
+        task.setDescription(taskDto.getDescription());
+        task.setDateIni(LocalDateTime.now());
 
-            //¿Filtramos por fecha de creacion?
-            if (filter.getDateCreationIni() != null && filter.getDateCreationEnd() != null) {
-                query.append(" AND t.dateIni BETWEEN :dateCreationIni AND :dateCreationEnd ");
-                params.put("dateCreationIni", filter.getDateCreationIni());
-                params.put("dateCreationEnd", filter.getDateCreationEnd());
-
-            // Solo fecha de inicio
-            } else if (filter.getDateCreationIni() != null) {
-                query.append(" AND t.dateIni >= :dateCreationIni ");
-                params.put("dateCreationIni", filter.getDateCreationIni());
-
-            // Solo fecha de fin
-            } else if (filter.getDateCreationEnd() != null) {
-                query.append(" AND t.dateIni <= :dateCreationEnd ");
-                params.put("dateCreationEnd", filter.getDateCreationEnd());
+        // Los procesos de una tarea nueva son siempre del autor de la tarea
+        if(taskDto.getProcessDtos() != null){
+            taskDto.getProcessDtos().forEach(dto -> processes.add(newProcess(task, dto.getDescription(), author)));
+        }
+        return task;
+    }
+
+    // Aplica los cambios a una tarea existente y construye sus procesos nuevos. Igual que en create,
+    // primero se comprueba todo para no dejar la tarea a medio modificar
+    private Task modify(TaskDto taskDto, References refs, List<Process> processes){
+        Task dbTask = refs.task(taskDto.getId()).orElseThrow(() -> new NoSuchElementException("La tarea no existe"));
+
+        // Si la tarea tiene estado finalizado no se puede modificar por lo que lanzamos excepcion
+        if(dbTask.getState().getId().equals(4L)){
+            throw new IllegalStateException("La tarea ya ha sido finalizada, no admite modificaciones");
+        }
+
+        // El cliente parte de una version anterior: sus cambios se fusionan con los confirmados desde entonces
+        if(taskDto.getVersion() != null && !taskDto.getVersion().equals(dbTask.getVersion())){
+            taskDto = merge(taskDto, dbTask);
+        }
+        versions.record(dbTask);
+
+        // ¿Hay que cambiar el departamento? Si nos lo dan lo buscamos, sino significa que le han quitado el dpt
+        Department dpt = taskDto.getDptID() == null ? null
+                : refs.dpt(taskDto.getDptID()).orElseThrow(() -> new NoSuchElementException("Departamento no existe"));
+
+        // ¿Hay que cambiar el usuario asociado? Si nos lo dan lo buscamos, sino significa que le han quitado el usuario asociado
+        User owner = taskDto.getOwnerID() == null ? null
+                : refs.user(taskDto.getOwnerID()).orElseThrow(() -> new NoSuchElementException("Usuario no existe"));
+
+        // ¿Hay que cambiar el estado? En caso de cambiarlo, primero comprobamos que exista, sino excepcion
+        State state = null;
+        if(taskDto.getStateID() != null && !taskDto.getStateID().equals(dbTask.getState().getId()) ){
+            state = refs.state(taskDto.getStateID()).orElseThrow(() -> new NoSuchElementException("Estado no existe"));
+        }
+
+        // ¿Hay que añadir procesos? Cada proceso lleva su propio autor
+        List<Process> newProcesses = new ArrayList<>();
+        if(taskDto.getProcessDtos() != null){
+            for (ProcessDto processDto : taskDto.getProcessDtos()) {
+                User author = refs.user(processDto.getAuthorID()).orElseThrow(() -> new NoSuchElementException("El autor del proceso no existe"));
+                newProcesses.add(newProcess(dbTask, processDto.getDescription(), author));
             }
+        }
+
+        dbTask.setDpt(dpt);
+        dbTask.setOwnerUser(owner);
+        if (state != null) {
+            dbTask.setState(state);
 
-            //¿Filtramos por fecha de finalizacion?
-            if (filter.getDateEndingIni() != null && filter.getDateEndingEnd() != null) {
-                query.append(" AND t.dateEnd BETWEEN :dateEndingIni AND :dateEndingEnd ");
-                params.put("dateEndingIni", filter.getDateEndingIni());
-                params.put("dateEndingEnd", filter.getDateEndingEnd());
-
-            // Solo fecha inicio
-            } else if (filter.getDateEndingIni() != null) {
-                query.append(" AND t.dateEnd >= :dateEndingIni ");
-                params.put("dateEndingIni", filter.getDateEndingIni());
-
-            // Solo fecha de fin
-            } else if (filter.getDateEndingEnd() != null) {
-                query.append(" AND t.dateEnd <= :dateEndingEnd ");
-                params.put("dateEndingEnd", filter.getDateEndingEnd());
+            // Si el estado es finalizado, asignamos una fecha de fin
+            if(state.getId().equals(4L)){
+                dbTask.setDateEnd(LocalDateTime.now());
             }
         }
 
-        TypedQuery<Task> query1 = entityManager.createQuery(query.toString(), Task.class);
-        params.forEach(query1::setParameter);
+        // ¿Hay que cambiar la descripcion?
+        if(dbTask.getDescription() != null && !dbTask.getDescription().equals(taskDto.getDescription()) ){
+            dbTask.setDescription(taskDto.getDescription());
+        }
+
+        processes.addAll(newProcesses);
+        return dbTask;
+    }
+
+    // Cada campo toma el valor del cliente si el cliente lo ha cambiado respecto a su version y el actual si no.
+    // Si los dos lo han cambiado, aunque sea al mismo valor, o no recordamos la version del cliente, hay conflicto:
+    // dos cambios iguales pueden ser dos incrementos de los que solo se guardaria uno
+    private TaskDto merge(TaskDto taskDto, Task dbTask){
+        TaskSnapshot base = versions.find(dbTask.getId(), taskDto.getVersion()).orElseThrow(() -> conflict(dbTask));
+        TaskSnapshot current = TaskSnapshot.of(dbTask);
+
+        TaskDto merged = new TaskDto();
+        merged.setId(taskDto.getId());
+        merged.setVersion(dbTask.getVersion());
+        merged.setDptID(pick(base.getDptId(), current.getDptId(), taskDto.getDptID(), dbTask));
+        merged.setOwnerID(pick(base.getOwnerId(), current.getOwnerId(), taskDto.getOwnerID(), dbTask));
+        // Sin estado el cliente no lo quiere cambiar
+        merged.setStateID(taskDto.getStateID() == null ? null
+                : pick(base.getStateId(), current.getStateId(), taskDto.getStateID(), dbTask));
+        merged.setDescription(pick(base.getDescription(), current.getDescription(), taskDto.getDescription(), dbTask));
+        // Los procesos solo se añaden, nunca chocan
+        merged.setProcessDtos(taskDto.getProcessDtos());
+        return merged;
+    }
+
+    private static <T> T pick(T base, T current, T client, Task dbTask){
+        if (Objects.equals(client, base)) return current;
+        if (Objects.equals(current, base)) return client;
+        throw conflict(dbTask);
+    }
+
+    private static TaskConflictException conflict(Task dbTask){
+        return new TaskConflictException("La tarea ha sido modificada por otro usuario", dbTask.getId(), dbTask.getVersion());
+    }
+
+    // Un proceso nuevo tambien es un cambio de la tarea, aunque no se toque ningun campo. La version se sube con
+    // un UPDATE que espera al bloqueo de la fila, asi dos procesos añadidos a la vez no chocan
+    private void incrementVersions(List<Process> processes){
+        List<Long> appended = appendedTo(processes);
+        if (!appended.isEmpty()) repo.incrementVersions(appended);
+    }
+
+    // Tareas ya guardadas que reciben procesos nuevos; las tareas nuevas aun no tienen ID
+    private static List<Long> appendedTo(List<Process> processes){
+        return processes.stream().map(process -> process.getTask().getId()).filter(Objects::nonNull).distinct().toList();
+    }
+
+    private static Process newProcess(Task task, String description, User author){
+        Process process = new Process();
+        process.setDescription(description);
+        process.setDate(LocalDateTime.now());
+        process.setAuthor(author);
+        process.setTask(task);
+        return process;
+    }
+
+    // Aplica uno de los planes de carga de Task (ver @NamedEntityGraph en la entidad)
+    private TypedQuery<Task> withGraph(TypedQuery<Task> query, String graph){
+        return query.setHint(SpecHints.HINT_SPEC_FETCH_GRAPH, entityManager.getEntityGraph(graph));
+    }
+
+    // Tamaño de pagina efectivo: por defecto si no nos lo dan y nunca por encima del maximo
+    private int pageSize(Integer size){
+        if (size == null) return properties.getPageSize();
+        if (size < 1) throw new IllegalArgumentException("El tamaño de pagina debe ser mayor que 0");
+        return Math.min(size, properties.getMaxPageSize());
+    }
+
+    // Recorta el elemento extra pedido y genera el cursor de la siguiente pagina
+    private PageDto<TaskDto> toPage(List<Task> tasks, int pageSize){
+        boolean hasNext = tasks.size() > pageSize;
+        List<Task> content = hasNext ? tasks.subList(0, pageSize) : tasks;
+
+        String nextCursor = null;
+        if (hasNext) {
+            Task last = content.get(content.size() - 1);
+            nextCursor = CursorMapper.encode(last.getDateIni(), last.getId());
+        }
+
+        return new PageDto<>(withProcessSummary(content.stream().map(TaskMapper::toListDto).toList()), content.size(), nextCursor);
+    }
 
-        return query1.getResultList().stream().map(TaskMapper::toDto).toList() ;
+    // Numero de procesos y proceso mas reciente de las tareas de un listado, con una sola consulta
+    private List<TaskDto> withProcessSummary(List<TaskDto> tasks){
+        if (tasks.isEmpty()) return tasks;
+        List<Long> ids = tasks.stream().map(TaskDto::getId).toList();
+        return TaskMapper.withProcessSummary(tasks, repoProcess.findSummariesByTaskIds(ids));
     }
 
 
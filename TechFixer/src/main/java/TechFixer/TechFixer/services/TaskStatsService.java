@@ -0,0 +1,193 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.StatsDto;
+import TechFixer.TechFixer.dto.StatsGroupDto;
+import TechFixer.TechFixer.event.TaskChangedEvent;
+import TechFixer.TechFixer.event.TaskSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Task statistics served from the {@code task_stats} rollup table, which holds the number of tasks, resolved
+ * tasks and total resolution time for every (state, department, owner) group. Archived tasks are still
+ * counted, archiving does not change the rollup.
+ * <p>
+ * The rollup is updated from the {@link TaskChangedEvent}s before the transaction that changed the tasks
+ * commits, so both always commit or roll back together. Reading the statistics costs one query per
+ * dimension over the groups, whatever the number of tasks.
+ */
+@Service
+public class TaskStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskStatsService.class);
+
+    // Suma (o resta) un grupo del resumen; si el grupo no existe lo crea
+    private static final String MERGE = """
+            MERGE INTO task_stats t
+            USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT)))
+                AS d (state_id, dpt_id, owner_id, task_count, resolved_count, resolution_seconds)
+            ON t.state_id = d.state_id AND t.dpt_id = d.dpt_id AND t.owner_id = d.owner_id
+            WHEN MATCHED THEN UPDATE SET
+                task_count = t.task_count + d.task_count,
+                resolved_count = t.resolved_count + d.resolved_count,
+                resolution_seconds = t.resolution_seconds + d.resolution_seconds
+            WHEN NOT MATCHED THEN INSERT (state_id, dpt_id, owner_id, task_count, resolved_count, resolution_seconds)
+                VALUES (d.state_id, d.dpt_id, d.owner_id, d.task_count, d.resolved_count, d.resolution_seconds)
+            """;
+
+    // El mismo resumen calculado directamente sobre las tareas, las archivadas tambien cuentan
+    private static final String LIVE = """
+            SELECT COALESCE(state_id, 0) AS state_id, COALESCE(dpt_id, 0) AS dpt_id, COALESCE(owner_id, 0) AS owner_id,
+                   COUNT(*) AS task_count,
+                   COUNT(CASE WHEN date_ini IS NOT NULL AND date_end IS NOT NULL THEN 1 END) AS resolved_count,
+                   COALESCE(SUM(CASE WHEN date_ini IS NOT NULL AND date_end IS NOT NULL
+                                     THEN DATEDIFF('SECOND', date_ini, date_end) END), 0) AS resolution_seconds
+            FROM (SELECT state_id, dpt_id, owner_id, date_ini, date_end FROM tasks
+                  UNION ALL
+                  SELECT state_id, dpt_id, owner_id, date_ini, date_end FROM tasks_archive)
+            GROUP BY COALESCE(state_id, 0), COALESCE(dpt_id, 0), COALESCE(owner_id, 0)
+            """;
+
+    private static final String ROLLUP = """
+            SELECT state_id, dpt_id, owner_id, task_count, resolved_count, resolution_seconds
+            FROM task_stats WHERE task_count <> 0 OR resolved_count <> 0 OR resolution_seconds <> 0
+            """;
+
+    // Agrupa el resumen por una dimension con el nombre de cada grupo
+    private static final String BY_DIMENSION = """
+            SELECT s.%1$s, n.%2$s, SUM(s.task_count), SUM(s.resolved_count), SUM(s.resolution_seconds)
+            FROM task_stats s LEFT JOIN %3$s n ON n.id = s.%1$s
+            GROUP BY s.%1$s, n.%2$s
+            HAVING SUM(s.task_count) > 0
+            ORDER BY s.%1$s
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final AtomicLong drift = new AtomicLong();
+
+    public TaskStatsService(JdbcTemplate jdbc, MeterRegistry registry) {
+        this.jdbc = jdbc;
+        registry.gauge("techfixer.stats.drift", drift);
+    }
+
+    /**
+     * Returns the number of tasks, resolved tasks and average resolution time, in total and per state,
+     * department and owner.
+     */
+    @Transactional
+    public StatsDto getStats(){
+        List<StatsGroupDto> byState = byDimension("state_id", "name", "satates");
+        long count = byState.stream().mapToLong(StatsGroupDto::getCount).sum();
+        long resolved = byState.stream().mapToLong(StatsGroupDto::getResolved).sum();
+        double seconds = byState.stream()
+                .filter(group -> group.getAvgResolutionSeconds() != null)
+                .mapToDouble(group -> group.getAvgResolutionSeconds() * group.getResolved()).sum();
+
+        return new StatsDto(count, resolved, resolved > 0 ? seconds / resolved : null,
+                byState,
+                byDimension("dpt_id", "name", "departments"),
+                byDimension("owner_id", "user_name", "users"));
+    }
+
+    /** Applies the changes to the rollup, inside the transaction that made them. */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onTaskChanged(TaskChangedEvent event){
+        // Acumulamos por grupo, una carga masiva suele repetir los mismos grupos
+        Map<List<Long>, long[]> deltas = new HashMap<>();
+        for (TaskChangedEvent.Change change : event.getChanges()) {
+            add(deltas, change.getBefore(), -1);
+            add(deltas, change.getAfter(), 1);
+        }
+
+        deltas.forEach((group, delta) -> {
+            if (delta[0] == 0 && delta[1] == 0 && delta[2] == 0) return;
+            Object[] args = {group.get(0), group.get(1), group.get(2), delta[0], delta[1], delta[2]};
+            try {
+                jdbc.update(MERGE, args);
+            } catch (DuplicateKeyException e) {
+                // Otra transaccion ha creado el mismo grupo a la vez, ahora ya existe y se actualiza
+                jdbc.update(MERGE, args);
+            }
+        });
+    }
+
+    /** Recalculates the whole rollup from the tasks and archived tasks tables. */
+    @Transactional
+    public void rebuild(){
+        jdbc.update("DELETE FROM task_stats");
+        jdbc.update("INSERT INTO task_stats (state_id, dpt_id, owner_id, task_count, resolved_count, resolution_seconds) " + LIVE);
+        drift.set(0);
+        log.info("Resumen de tareas reconstruido");
+    }
+
+    /**
+     * Compares the rollup with a GROUP BY over the tasks and archived tasks tables.
+     *
+     * @return the number of groups whose values differ, also published as the {@code techfixer.stats.drift} gauge
+     */
+    @Scheduled(initialDelayString = "${techfixer.stats.verify-interval:PT1H}", fixedDelayString = "${techfixer.stats.verify-interval:PT1H}")
+    @Transactional
+    public long verify(){
+        Map<List<Long>, List<Long>> live = groups(LIVE);
+        Map<List<Long>, List<Long>> rollup = groups(ROLLUP);
+
+        Set<List<Long>> keys = new HashSet<>(live.keySet());
+        keys.addAll(rollup.keySet());
+        long differences = keys.stream().filter(key -> !Objects.equals(live.get(key), rollup.get(key))).count();
+
+        drift.set(differences);
+        if (differences > 0) log.warn("El resumen de tareas difiere de la tabla de tareas en {} grupos", differences);
+        return differences;
+    }
+
+    // Segundos entre las dos fechas, contados igual que DATEDIFF('SECOND', ...) en la base de datos
+    private static long resolutionSeconds(LocalDateTime dateIni, LocalDateTime dateEnd){
+        return Duration.between(dateIni.truncatedTo(ChronoUnit.SECONDS), dateEnd.truncatedTo(ChronoUnit.SECONDS)).getSeconds();
+    }
+
+    private static void add(Map<List<Long>, long[]> deltas, TaskSnapshot snapshot, int sign){
+        if (snapshot == null) return;
+        List<Long> group = List.of(orZero(snapshot.getStateId()), orZero(snapshot.getDptId()), orZero(snapshot.getOwnerId()));
+        long[] delta = deltas.computeIfAbsent(group, key -> new long[3]);
+        delta[0] += sign;
+        if (snapshot.getDateIni() != null && snapshot.getDateEnd() != null) {
+            delta[1] += sign;
+            delta[2] += sign * resolutionSeconds(snapshot.getDateIni(), snapshot.getDateEnd());
+        }
+    }
+
+    private static Long orZero(Long id){
+        return id != null ? id : 0L;
+    }
+
+    private Map<List<Long>, List<Long>> groups(String sql){
+        Map<List<Long>, List<Long>> groups = new HashMap<>();
+        jdbc.query(sql, rs -> {
+            groups.put(List.of(rs.getLong(1), rs.getLong(2), rs.getLong(3)), List.of(rs.getLong(4), rs.getLong(5), rs.getLong(6)));
+        });
+        return groups;
+    }
+
+    private List<StatsGroupDto> byDimension(String column, String nameColumn, String table){
+        return jdbc.query(BY_DIMENSION.formatted(column, nameColumn, table), (rs, row) -> {
+            long id = rs.getLong(1);
+            long resolved = rs.getLong(4);
+            return new StatsGroupDto(id != 0 ? id : null, rs.getString(2), rs.getLong(3), resolved,
+                    resolved > 0 ? (double) rs.getLong(5) / resolved : null);
+        });
+    }
+}
@@ -0,0 +1,52 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.TaskProperties;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.event.TaskSnapshot;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The fields of the most recent task versions that have been replaced, used as the common base to merge an
+ * update made from an old version with the changes committed since.
+ * <p>
+ * Every time a task is about to change, its current version is recorded. Only the last
+ * {@code techfixer.task.merge-history-size} versions are kept, and they are lost on restart: an update whose
+ * base is no longer known is reported as a conflict.
+ */
+@Component
+public class TaskVersions {
+
+    private record Key(Long taskId, Long version) {}
+
+    private final Map<Key, TaskSnapshot> history;
+
+    public TaskVersions(TaskProperties properties) {
+        int maxSize = properties.getMergeHistorySize();
+        this.history = Collections.synchronizedMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, TaskSnapshot> eldest){
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /** Records the current fields of a task, before it is changed. */
+    public void record(Task task){
+        if (task.getId() == null || task.getVersion() == null) return;
+        history.putIfAbsent(new Key(task.getId(), task.getVersion()), TaskSnapshot.of(task));
+    }
+
+    /**
+     * Returns the fields a task had at a given version.
+     *
+     * @return the fields, or empty if that version was never recorded or has been forgotten
+     */
+    public Optional<TaskSnapshot> find(Long taskId, Long version){
+        return Optional.ofNullable(history.get(new Key(taskId, version)));
+    }
+}
@@ -5,17 +5,17 @@ import TechFixer.TechFixer.dto.UserDto;
 import TechFixer.TechFixer.entity.Department;
 import TechFixer.TechFixer.entity.Roles;
 import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.event.ReferenceRenamedEvent;
 import TechFixer.TechFixer.exception.NotFoundUserException;
 import TechFixer.TechFixer.exception.UserAlreadyExistException;
 import TechFixer.TechFixer.mapper.UserMapper;
-import TechFixer.TechFixer.repositories.DepartmentRepository;
 import TechFixer.TechFixer.repositories.RolesRepository;
 import TechFixer.TechFixer.repositories.UserRepository;
+import TechFixer.TechFixer.security.TokenEpochs;
 import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
 import lombok.Data;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -23,15 +23,19 @@ import org.springframework.stereotype.Service;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 
 @Service
 @Data
 public class UserService {
 
     private final UserRepository repo;
-    private final DepartmentRepository repoDpt;
     private final RolesRepository repoRol;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher events;
+    private final ChangeCounters changeCounters;
+    private final ReferenceCache referenceCache;
+    private final TokenEpochs tokenEpochs;
 
     @PostConstruct
     public void iniValues(){
@@ -41,6 +45,7 @@ public class UserService {
                     new Roles("ROLE_ESTD")
             ));
         }
+        referenceCache.invalidateRoles();
     }
 
 
@@ -68,9 +73,9 @@ public class UserService {
         // Comporbamos si nos han pasado un rol, sino asignamos uno por defeecto
         Roles rol = new Roles();
         if(request.getRolID() != null){
-            rol = repoRol.findById(request.getRolID()).orElseThrow(() -> new NoSuchElementException("Rol " + request.getRolID() + " no encontrado"));
+            rol = referenceCache.role(request.getRolID()).orElseThrow(() -> new NoSuchElementException("Rol " + request.getRolID() + " no encontrado"));
         } else {
-            rol = repoRol.findById(2L).orElseThrow(() -> new NoSuchElementException("Rol 2 no encontrado"));
+            rol = referenceCache.role(2L).orElseThrow(() -> new NoSuchElementException("Rol 2 no encontrado"));
         }
 
         User user = new User(request.getUserName(), passwordEncoder.encode(request.getPassword()), rol, List.of());
@@ -80,7 +85,7 @@ public class UserService {
             // Comprobamos que los departamentos existan
             List<Department> departments = new ArrayList<>();
             request.getDepartmentsID().forEach(id -> {
-                departments.add(repoDpt.findById(id).orElseThrow(() -> new NoSuchElementException("Departamento " + id + " no encontrado")));
+                departments.add(referenceCache.department(id).orElseThrow(() -> new NoSuchElementException("Departamento " + id + " no encontrado")));
             });
 
             user.setDepartments(departments);
@@ -100,6 +105,9 @@ public class UserService {
      */
     public void update(UserDto newUser){
         User userToUpdate = repo.findById(newUser.getId()).orElseThrow(() -> new NoSuchElementException("Usuario no encontrado"));
+        String oldName = userToUpdate.getUserName();
+        Long oldRolId = userToUpdate.getRol() != null ? userToUpdate.getRol().getId() : null;
+        boolean passwordChanged = false;
 
         // ¿Hay que actualizar el nombre? Antes de hacerlo comprobamos que no exista otro con el mismo nombre
         if(newUser.getUserName() != null && !newUser.getUserName().isEmpty()){
@@ -113,12 +121,13 @@ public class UserService {
         // ¿Hay que actualizar la contraseña?
         if(newUser.getPassword() != null && !newUser.getPassword().isEmpty()){
             userToUpdate.setPassword(passwordEncoder.encode(newUser.getPassword()));
+            passwordChanged = true;
         }
 
         // ¿Hay que cambiar el rol?
         if(newUser.getRolID() != null){
             userToUpdate.setRol(
-                    repoRol.findById( newUser.getRolID() )
+                    referenceCache.role( newUser.getRolID() )
                             .orElseThrow( () -> new NoSuchElementException("Rol " + newUser.getRol() + " no encontrado")
                     )
             );
@@ -129,12 +138,22 @@ public class UserService {
         if(newUser.getDepartmentsID() != null && !newUser.getDepartmentsID().isEmpty()){
             List<Department> departments = new ArrayList<>();
             newUser.getDepartmentsID().forEach(id -> {
-                departments.add(repoDpt.findById(id).orElseThrow(() -> new NoSuchElementException("Departamento " + id + " no encontrado")));
+                departments.add(referenceCache.department(id).orElseThrow(() -> new NoSuchElementException("Departamento " + id + " no encontrado")));
             });
             userToUpdate.setDepartments(departments);
         } else {userToUpdate.setDepartments(null);}
 
         repo.save(userToUpdate);
+        // Cambiar solo los departamentos no dispara @PostUpdate, es una coleccion
+        changeCounters.changed(ChangeCounters.Resource.USERS);
+
+        // El nombre del usuario se copia en las tareas que se sirven desde memoria
+        boolean renamed = !userToUpdate.getUserName().equals(oldName);
+        if (renamed) events.publishEvent(new ReferenceRenamedEvent("User", userToUpdate.getId()));
+
+        // Los tokens llevan el nombre y el rol, si cambian o cambia la contraseña los anteriores dejan de valer
+        Long rolId = userToUpdate.getRol() != null ? userToUpdate.getRol().getId() : null;
+        if (renamed || passwordChanged || !Objects.equals(rolId, oldRolId)) tokenEpochs.revoke(userToUpdate.getId());
     }
 
     /**
@@ -159,32 +178,10 @@ public class UserService {
         }
 
         repo.delete(user);
+        tokenEpochs.revoke(id);
 
     }
 
-    /**
-     * Searches for a user by their username and returns user details.
-     *
-     * @param name the username of the user to be searched
-     * @return the user details of the specified user
-     * @throws UsernameNotFoundException if no user is found with the specified username
-     */
-    public UserDetails searchByNameDetails(String name) throws UsernameNotFoundException {
-        User user = repo.findByUserName(name).orElseThrow(() -> new UsernameNotFoundException("Usuario " + name + " no encontrado"));
-
-        return new org.springframework.security.core.userdetails.User(
-                user.getUserName(),
-                user.getPassword(),
-                List.of(new SimpleGrantedAuthority(user.getRol().getName()))
-        );
-    }
-
-    public UserDto searchByName(String name) throws UsernameNotFoundException {
-        User user = repo.findByUserName(name).orElseThrow(() -> new UsernameNotFoundException("Usuario " + name + " no encontrado"));
-
-        return UserMapper.toDto(user);
-    }
-
     /**
      * Retrieves a user by their unique identifier and maps it to a UserDto object.
      *
@@ -229,41 +226,4 @@ public class UserService {
             repoRol.findAll().stream().toList();
     }
 
-
-    /**
-     * Removes the specified department from the user's list of associated departments.
-     * If either the user or the department is not found, a {@link NoSuchElementException} is thrown.
-     *
-     * @param idUser the unique identifier of the user from whom the department will be removed
-     * @param idDpt the unique identifier of the department to be removed
-     * @throws NoSuchElementException if the user or department is not found in the repository
-     */
-    public void removeDepartment(Long idUser, Long idDpt){
-        User user = repo.findById(idUser).orElseThrow(() -> new NoSuchElementException("Usuario no existe"));
-        Department  dpt = repoDpt.findById(idDpt).orElseThrow(() -> new NoSuchElementException("Departamento no existe"));
-
-        user.getDepartments().removeIf(d -> d.getName().equals(dpt.getName()));
-        repo.save(user);
-
-    }
-
-    /**
-     * Adds a department to a specific user's list of associated departments.
-     * The user and the department must exist in the repository.
-     * If either the user or the department is not found, a {@link NoSuchElementException} is thrown.
-     *
-     * @param idUser the unique identifier of the user to whom the department will be added
-     * @param idDpt the unique identifier of the department to be added to the user
-     * @throws NoSuchElementException if the user or department is not found in the repository
-     */
-    public void addDepartment(Long idUser, Long idDpt){
-        //Obtenemos usuario y departamento
-        User user = repo.findById(idUser).orElseThrow(() -> new NoSuchElementException("Usuario " + idUser + " no existe"));
-        Department  dpt = repoDpt.findById(idDpt).orElseThrow(() -> new NoSuchElementException("Departamento " + idDpt + " no existe"));
-
-        user.getDepartments().add(dpt);
-        repo.save(user);
-
-    }
-
 }
@@ -0,0 +1,12 @@
+-- Procesos aceptados por la cola de escritura diferida que no se han podido guardar porque su tarea o su autor
+-- ya no existen (borrados o archivados mientras esperaban). Se guardan aqui para poder revisarlos
+CREATE TABLE process_dead_letters (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    date TIMESTAMP(6),
+    description VARCHAR(255),
+    author_id BIGINT,
+    task_id BIGINT,
+    reason VARCHAR(32) NOT NULL,
+    dropped_at TIMESTAMP(6) NOT NULL
+);
+CREATE INDEX idx_process_dead_letters_task ON process_dead_letters (task_id);
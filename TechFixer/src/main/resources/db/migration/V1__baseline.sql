@@ -0,0 +1,64 @@
+-- Esquema inicial de TechFixer, tal y como lo generaba Hibernate con ddl-auto=update.
+-- En bases de datos existentes esta version se marca como baseline y no se ejecuta.
+
+CREATE SEQUENCE departments_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE processes_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE roles_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE satates_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE tasks_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE users_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE departments (
+    id BIGINT NOT NULL PRIMARY KEY,
+    name VARCHAR(255) UNIQUE
+);
+
+CREATE TABLE roles (
+    id BIGINT NOT NULL PRIMARY KEY,
+    name VARCHAR(255) UNIQUE
+);
+
+CREATE TABLE satates (
+    id BIGINT NOT NULL PRIMARY KEY,
+    name VARCHAR(255) UNIQUE
+);
+
+CREATE TABLE users (
+    id BIGINT NOT NULL PRIMARY KEY,
+    password VARCHAR(255),
+    user_name VARCHAR(255) UNIQUE,
+    rol_id BIGINT,
+    CONSTRAINT fk_users_rol FOREIGN KEY (rol_id) REFERENCES roles (id)
+);
+
+CREATE TABLE users_dpts (
+    user_id BIGINT NOT NULL,
+    dpt_id BIGINT NOT NULL,
+    CONSTRAINT fk_users_dpts_user FOREIGN KEY (user_id) REFERENCES users (id),
+    CONSTRAINT fk_users_dpts_dpt FOREIGN KEY (dpt_id) REFERENCES departments (id)
+);
+
+CREATE TABLE tasks (
+    id BIGINT NOT NULL PRIMARY KEY,
+    date_end TIMESTAMP(6),
+    date_ini TIMESTAMP(6),
+    description VARCHAR(255),
+    author_id BIGINT,
+    dpt_id BIGINT,
+    owner_id BIGINT,
+    state_id BIGINT,
+    CONSTRAINT fk_tasks_author FOREIGN KEY (author_id) REFERENCES users (id),
+    CONSTRAINT fk_tasks_dpt FOREIGN KEY (dpt_id) REFERENCES departments (id),
+    CONSTRAINT fk_tasks_owner FOREIGN KEY (owner_id) REFERENCES users (id),
+    CONSTRAINT fk_tasks_state FOREIGN KEY (state_id) REFERENCES satates (id)
+);
+
+CREATE TABLE processes (
+    id BIGINT NOT NULL PRIMARY KEY,
+    date TIMESTAMP(6),
+    description VARCHAR(255),
+    author_id BIGINT,
+    task_id BIGINT,
+    CONSTRAINT fk_processes_author FOREIGN KEY (author_id) REFERENCES users (id),
+    CONSTRAINT fk_processes_task FOREIGN KEY (task_id) REFERENCES tasks (id)
+);
@@ -0,0 +1,16 @@
+-- Indices compuestos para las consultas mas frecuentes sobre tareas y procesos.
+
+-- Tablero de pendientes: tareas de un usuario en unos estados, de la mas reciente a la mas antigua
+CREATE INDEX idx_tasks_owner_state_date ON tasks (owner_id, state_id, date_ini DESC);
+
+-- Filtro por departamento y estado
+CREATE INDEX idx_tasks_dpt_state ON tasks (dpt_id, state_id);
+
+-- Filtro por fecha de creacion y paginacion por cursor (dateIni, id)
+CREATE INDEX idx_tasks_date_ini_id ON tasks (date_ini DESC, id DESC);
+
+-- Filtro por fecha de finalizacion
+CREATE INDEX idx_tasks_date_end ON tasks (date_end);
+
+-- Historial de procesos de una tarea, del mas reciente al mas antiguo
+CREATE INDEX idx_processes_task_date ON processes (task_id, date DESC);
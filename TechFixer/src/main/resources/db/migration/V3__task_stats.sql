@@ -0,0 +1,21 @@
+-- Resumen de tareas por estado, departamento y encargado para /api/task/stats.
+-- Lo mantiene TaskStatsService en la misma transaccion que cada escritura de tareas.
+-- Las tareas sin departamento o sin encargado se guardan con 0 en esa columna, la clave no admite nulos.
+CREATE TABLE task_stats (
+    state_id BIGINT NOT NULL,
+    dpt_id BIGINT NOT NULL,
+    owner_id BIGINT NOT NULL,
+    task_count BIGINT NOT NULL,
+    resolved_count BIGINT NOT NULL,
+    resolution_seconds BIGINT NOT NULL,
+    PRIMARY KEY (state_id, dpt_id, owner_id)
+);
+
+-- Las tareas que ya existian
+INSERT INTO task_stats (state_id, dpt_id, owner_id, task_count, resolved_count, resolution_seconds)
+SELECT COALESCE(state_id, 0), COALESCE(dpt_id, 0), COALESCE(owner_id, 0),
+       COUNT(*),
+       COUNT(CASE WHEN date_ini IS NOT NULL AND date_end IS NOT NULL THEN 1 END),
+       COALESCE(SUM(CASE WHEN date_ini IS NOT NULL AND date_end IS NOT NULL THEN DATEDIFF('SECOND', date_ini, date_end) END), 0)
+FROM tasks
+GROUP BY COALESCE(state_id, 0), COALESCE(dpt_id, 0), COALESCE(owner_id, 0);
@@ -0,0 +1,34 @@
+-- Archivo de tareas cerradas (Finalizado y Anulado). TaskArchiver mueve aqui las tareas antiguas con sus
+-- procesos para que las tablas de trabajo no crezcan con el historico. Mismas columnas que tasks y processes.
+CREATE TABLE tasks_archive (
+    id BIGINT NOT NULL PRIMARY KEY,
+    date_end TIMESTAMP(6),
+    date_ini TIMESTAMP(6),
+    description VARCHAR(255),
+    author_id BIGINT,
+    dpt_id BIGINT,
+    owner_id BIGINT,
+    state_id BIGINT,
+    archived_at TIMESTAMP(6) NOT NULL,
+    CONSTRAINT fk_tasks_archive_author FOREIGN KEY (author_id) REFERENCES users (id),
+    CONSTRAINT fk_tasks_archive_dpt FOREIGN KEY (dpt_id) REFERENCES departments (id),
+    CONSTRAINT fk_tasks_archive_owner FOREIGN KEY (owner_id) REFERENCES users (id),
+    CONSTRAINT fk_tasks_archive_state FOREIGN KEY (state_id) REFERENCES satates (id)
+);
+
+CREATE TABLE processes_archive (
+    id BIGINT NOT NULL PRIMARY KEY,
+    date TIMESTAMP(6),
+    description VARCHAR(255),
+    author_id BIGINT,
+    task_id BIGINT,
+    CONSTRAINT fk_processes_archive_author FOREIGN KEY (author_id) REFERENCES users (id),
+    CONSTRAINT fk_processes_archive_task FOREIGN KEY (task_id) REFERENCES tasks_archive (id)
+);
+
+CREATE INDEX idx_tasks_archive_owner_state_date ON tasks_archive (owner_id, state_id, date_ini DESC);
+CREATE INDEX idx_tasks_archive_dpt_state ON tasks_archive (dpt_id, state_id);
+CREATE INDEX idx_processes_archive_task_date ON processes_archive (task_id, date DESC);
+
+-- Busqueda de candidatas a archivar: tareas cerradas por fecha de fin
+CREATE INDEX idx_tasks_state_date_end ON tasks (state_id, date_end);
@@ -0,0 +1,3 @@
+-- Version de cada tarea: cambia con cada modificacion y con cada proceso nuevo.
+-- Con ella se calcula el ETag de la tarea sin leer sus datos.
+ALTER TABLE tasks ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,8 @@
+-- Ultimo proceso del diario de escritura diferida (data/process-journal.ndjson) que ya esta guardado.
+-- Se actualiza en la misma transaccion que los procesos, asi al arrancar se sabe que entradas faltan
+CREATE TABLE process_journal (
+    id INT PRIMARY KEY,
+    last_seq BIGINT NOT NULL
+);
+
+INSERT INTO process_journal (id, last_seq) VALUES (1, 0);
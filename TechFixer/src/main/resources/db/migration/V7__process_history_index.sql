@@ -0,0 +1,6 @@
+-- Historial de procesos de una tarea por paginas: el cursor es (date, id), asi que el indice lleva
+-- tambien el ID para desempatar los procesos de la misma fecha sin ordenar en memoria.
+-- Sustituye al indice (task_id, date DESC) de V2, que queda cubierto por este.
+CREATE INDEX idx_processes_task_date_id ON processes (task_id, date DESC, id DESC);
+
+DROP INDEX idx_processes_task_date;
@@ -0,0 +1,21 @@
+-- Sincronizacion incremental (/api/task/changes): cada escritura de tareas recibe un numero de cambio creciente.
+-- Lo asigna TaskChangeLog en la misma transaccion que la escritura. Las tareas que ya existian se numeran en orden
+ALTER TABLE tasks ADD COLUMN change_seq BIGINT DEFAULT 0 NOT NULL;
+UPDATE tasks SET change_seq = id;
+CREATE INDEX idx_tasks_change_seq ON tasks (change_seq);
+
+-- Tareas borradas o archivadas, con el numero del cambio que las quito
+CREATE TABLE task_tombstones (
+    task_id BIGINT NOT NULL PRIMARY KEY,
+    change_seq BIGINT NOT NULL,
+    deleted_at TIMESTAMP(6) NOT NULL
+);
+CREATE INDEX idx_task_tombstones_change_seq ON task_tombstones (change_seq);
+
+-- Hasta que numero de cambio se han purgado lapidas: un cliente que venga de antes tiene que recargarlo todo
+CREATE TABLE task_sync (
+    id INT PRIMARY KEY,
+    purged_seq BIGINT NOT NULL
+);
+
+INSERT INTO task_sync (id, purged_seq) VALUES (1, 0);
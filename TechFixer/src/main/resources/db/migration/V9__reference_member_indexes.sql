@@ -0,0 +1,5 @@
+-- Tareas de un estado o de un departamento, y usuarios de un departamento, ordenados por ID.
+-- Sirven para contar los miembros de cada fila de referencia y para paginar sus IDs sin ordenar.
+CREATE INDEX idx_tasks_state_id ON tasks (state_id, id);
+CREATE INDEX idx_tasks_dpt_id ON tasks (dpt_id, id);
+CREATE INDEX idx_users_dpts_dpt_user ON users_dpts (dpt_id, user_id);
@@ -0,0 +1,160 @@
+package TechFixer.TechFixer.repositories;
+
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the hot task queries before and after the index migration (V2) on a seeded dataset.
+ * Run with {@code mvn test -Pbenchmark}; the number of tasks defaults to one million and can be
+ * changed with {@code -Dbenchmark.rows=N}.
+ */
+@Tag("benchmark")
+class TaskIndexBenchmarkTest {
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 1_000_000);
+    private static final int USERS = 500;
+    private static final int DEPARTMENTS = 20;
+    private static final int RUNS = 20;
+    private static final String BASE = "TIMESTAMP '2020-01-01 00:00:00'";
+
+    private static JdbcDataSource dataSource;
+
+    // Consultas que lanza la aplicacion, con el indice que deberian usar tras la migracion
+    private static final Map<String, String[]> QUERIES = new LinkedHashMap<>();
+    static {
+        QUERIES.put("pending board", new String[]{
+                "SELECT id FROM tasks WHERE owner_id = 7 AND state_id IN (1, 2, 3) ORDER BY date_ini DESC",
+                "IDX_TASKS_OWNER_STATE_DATE"});
+        QUERIES.put("department + state", new String[]{
+                "SELECT id FROM tasks WHERE dpt_id = 3 AND state_id = 2",
+                "IDX_TASKS_DPT_STATE"});
+        QUERIES.put("creation date range", new String[]{
+                "SELECT id FROM tasks WHERE date_ini BETWEEN TIMESTAMP '2021-03-01 00:00:00' AND TIMESTAMP '2021-03-02 00:00:00'",
+                "IDX_TASKS_DATE_INI_ID"});
+        QUERIES.put("ending date range", new String[]{
+                "SELECT id FROM tasks WHERE date_end BETWEEN TIMESTAMP '2021-03-01 00:00:00' AND TIMESTAMP '2021-03-02 00:00:00'",
+                "IDX_TASKS_DATE_END"});
+        QUERIES.put("deep keyset page", new String[]{
+                "SELECT id FROM tasks WHERE date_ini < TIMESTAMP '2020-06-01 00:00:00' OR (date_ini = TIMESTAMP '2020-06-01 00:00:00' AND id < 0) ORDER BY date_ini DESC, id DESC LIMIT 50",
+                "IDX_TASKS_DATE_INI_ID"});
+        QUERIES.put("task process history", new String[]{
+                "SELECT id FROM processes WHERE task_id = 4242 ORDER BY date DESC",
+                "IDX_PROCESSES_TASK_DATE"});
+    }
+
+    @BeforeAll
+    static void seed() throws SQLException {
+        File dir = new File("target/benchmark");
+        Arrays.stream(dir.exists() ? dir.listFiles() : new File[0]).forEach(File::delete);
+
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:file:./target/benchmark/tasks");
+        dataSource.setUser("sa");
+
+        // Solo el esquema base, sin los indices
+        Flyway.configure().dataSource(dataSource).target("1").load().migrate();
+
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement()) {
+            st.execute("INSERT INTO roles VALUES (1, 'ROLE_ADMIN'), (2, 'ROLE_ESTD')");
+            st.execute("INSERT INTO satates SELECT X, 'Estado ' || X FROM SYSTEM_RANGE(1, 5)");
+            st.execute("INSERT INTO departments SELECT X, 'Dpt ' || X FROM SYSTEM_RANGE(1, " + DEPARTMENTS + ")");
+            st.execute("INSERT INTO users SELECT X, 'x', 'user' || X, 2 FROM SYSTEM_RANGE(1, " + USERS + ")");
+
+            // Una tarea cada minuto desde BASE; las finalizadas (estado 4) tienen fecha de fin
+            st.execute(String.format(
+                    "INSERT INTO tasks (id, date_ini, date_end, description, author_id, dpt_id, owner_id, state_id) " +
+                    "SELECT X, DATEADD(MINUTE, X, %1$s), CASE WHEN MOD(X, 5) = 3 THEN DATEADD(MINUTE, X + 600, %1$s) END, " +
+                    "'Tarea ' || X, MOD(X * 7, %2$d) + 1, MOD(X, %3$d) + 1, MOD(X * 13, %2$d) + 1, MOD(X, 5) + 1 " +
+                    "FROM SYSTEM_RANGE(1, %4$d)", BASE, USERS, DEPARTMENTS, ROWS));
+
+            // Dos procesos por tarea de media
+            st.execute(String.format(
+                    "INSERT INTO processes (id, date, description, author_id, task_id) " +
+                    "SELECT X, DATEADD(MINUTE, X, %1$s), 'Proceso ' || X, MOD(X, %2$d) + 1, MOD(X * 31, %3$d) + 1 " +
+                    "FROM SYSTEM_RANGE(1, %4$d)", BASE, USERS, ROWS, ROWS * 2));
+            st.execute("ANALYZE");
+        }
+    }
+
+    @AfterAll
+    static void close() throws SQLException {
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement()) {
+            st.execute("SHUTDOWN");
+        }
+    }
+
+    @Test
+    void indexesSpeedUpHotQueries() throws SQLException {
+        System.out.printf("%n=== Task queries on %,d tasks / %,d processes ===%n", ROWS, ROWS * 2);
+
+        Map<String, double[]> before = measureAll("BEFORE (V1)");
+
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        try (Connection con = dataSource.getConnection(); Statement st = con.createStatement()) {
+            st.execute("ANALYZE");
+        }
+
+        Map<String, double[]> after = measureAll("AFTER (V2 indexes)");
+
+        System.out.printf("%n%-22s %14s %14s%n", "query", "before (ms)", "after (ms)");
+        before.forEach((name, ms) -> System.out.printf("%-22s %14.3f %14.3f%n", name, ms[0], after.get(name)[0]));
+
+        // Tras la migracion cada consulta tiene que usar su indice
+        try (Connection con = dataSource.getConnection()) {
+            for (Map.Entry<String, String[]> q : QUERIES.entrySet()) {
+                String plan = explain(con, q.getValue()[0]);
+                assertTrue(plan.toUpperCase().contains(q.getValue()[1]), q.getKey() + " no usa " + q.getValue()[1] + ":\n" + plan);
+            }
+        }
+    }
+
+    // Ejecuta cada consulta varias veces y devuelve la mediana en milisegundos
+    private Map<String, double[]> measureAll(String label) throws SQLException {
+        Map<String, double[]> result = new LinkedHashMap<>();
+        System.out.printf("%n--- %s ---%n", label);
+
+        try (Connection con = dataSource.getConnection(); Statement session = con.createStatement()) {
+            // H2 reutiliza el resultado de una consulta identica si los datos no cambian, lo desactivamos para medir
+            session.execute("SET OPTIMIZE_REUSE_RESULTS FALSE");
+
+            for (Map.Entry<String, String[]> q : QUERIES.entrySet()) {
+                String sql = q.getValue()[0];
+                System.out.printf("%n[%s]%n%s%n", q.getKey(), explain(con, sql));
+
+                long[] times = new long[RUNS];
+                for (int i = 0; i < RUNS; i++) {
+                    long start = System.nanoTime();
+                    try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+                        while (rs.next()) { rs.getLong(1); }
+                    }
+                    times[i] = System.nanoTime() - start;
+                }
+                Arrays.sort(times);
+                result.put(q.getKey(), new double[]{times[RUNS / 2] / 1_000_000.0});
+            }
+        }
+        return result;
+    }
+
+    private String explain(Connection con, String sql) throws SQLException {
+        try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery("EXPLAIN " + sql)) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that the read endpoints answer 304 while nothing changes and a new ETag once something does.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@WithMockUser
+class ChangeCountersTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private StateService stateService;
+    @Autowired private TaskService taskService;
+    @Autowired private ProcessService processService;
+    @Autowired private DepartmentMembership membership;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Test
+    void referenceListIsNotSentAgainUntilItChanges() throws Exception {
+        String etag = etag("/api/state/getAll");
+
+        mockMvc.perform(get("/api/state/getAll").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        stateService.save("Estado " + UUID.randomUUID().toString().substring(0, 8));
+
+        mockMvc.perform(get("/api/state/getAll").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+        assertNotEquals(etag, etag("/api/state/getAll"));
+    }
+
+    @Test
+    void taskEtagChangesWithNewProcess() throws Exception {
+        User author = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8), "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        TaskDto task = new TaskDto();
+        task.setDescription("Tarea");
+        task.setAuthorID(author.getId());
+        Long id = taskService.saveAll(List.of(task)).get(0).getId();
+
+        String url = "/api/task/get/" + id;
+        String etag = etag(url);
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isNotModified());
+
+        ProcessDto process = new ProcessDto();
+        process.setDescription("Proceso");
+        process.setAuthorID(author.getId());
+        process.setTaskID(id);
+        processService.save(process);
+
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isOk());
+    }
+
+    @Test
+    void departmentEtagChangesWithMembers() throws Exception {
+        User user = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8), "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        String etag = etag("/api/department/getAll");
+
+        // Solo cambia la tabla de union users_dpts
+        new TransactionTemplate(transactionManager).executeWithoutResult(tx -> membership.add(1L, List.of(user.getId())));
+
+        mockMvc.perform(get("/api/department/getAll").header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isOk());
+    }
+
+    private String etag(String url) throws Exception {
+        String etag = mockMvc.perform(get(url)).andExpect(status().isOk()).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        return etag;
+    }
+}
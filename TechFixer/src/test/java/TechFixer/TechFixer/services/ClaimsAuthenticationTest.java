@@ -0,0 +1,96 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.AuthRequest;
+import TechFixer.TechFixer.dto.UserDto;
+import TechFixer.TechFixer.repositories.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that requests with a token are authenticated from its claims without reading the user, that
+ * logging in again keeps the previous tokens valid and that changing the credentials revokes them.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ClaimsAuthenticationTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private UserService userService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private EntityManagerFactory emf;
+    @Autowired private ObjectMapper objectMapper;
+
+    private String name;
+
+    @BeforeEach
+    void setUp(){
+        name = UUID.randomUUID().toString().substring(0, 8) + "-auth";
+        AuthRequest request = new AuthRequest();
+        request.setUserName(name);
+        request.setPassword("secreto");
+        userService.save(request);
+    }
+
+    @Test
+    void aRequestWithATokenDoesNotReadTheUser() throws Exception {
+        String token = login("secreto");
+        String etag = mockMvc.perform(get("/api/state/getAll").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk()).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        // Con la ETag vigente la respuesta sale de memoria, asi que cualquier sentencia seria de la autenticacion
+        mockMvc.perform(get("/api/state/getAll").header("Authorization", "Bearer " + token).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void changingThePasswordRevokesThePreviousTokens() throws Exception {
+        String first = login("secreto");
+        String second = login("secreto");
+        expect(first, status().isOk());
+        expect(second, status().isOk());
+
+        UserDto update = new UserDto();
+        update.setId(repoUser.findByUserName(name).orElseThrow().getId());
+        update.setPassword("nuevo");
+        userService.update(update);
+
+        expect(first, status().isForbidden());
+        expect(second, status().isForbidden());
+        expect(login("nuevo"), status().isOk());
+    }
+
+    private void expect(String token, ResultMatcher result) throws Exception {
+        mockMvc.perform(get("/api/state/getAll").header("Authorization", "Bearer " + token)).andExpect(result);
+    }
+
+    private String login(String password) throws Exception {
+        String body = mockMvc.perform(post("/api/user/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("userName", name, "password", password))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+}
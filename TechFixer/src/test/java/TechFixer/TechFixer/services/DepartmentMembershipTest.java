@@ -0,0 +1,132 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.DepartmentDto;
+import TechFixer.TechFixer.dto.MembershipDto;
+import TechFixer.TechFixer.entity.Department;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.DepartmentRepository;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the users of a department are replaced as a set in one transaction, that the departments
+ * cached with each user follow the change, and measures a re-organisation of a large department.
+ */
+@SpringBootTest
+class DepartmentMembershipTest {
+
+    @Autowired private DepartmentService departmentService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private DepartmentRepository repoDpt;
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private String prefix;
+    private Department dpt;
+
+    @BeforeEach
+    void setUp(){
+        prefix = UUID.randomUUID().toString().substring(0, 8);
+        dpt = department(prefix + "-dpt", null);
+    }
+
+    @Test
+    void membersAreReplacedAsASet(){
+        List<Long> users = new ArrayList<>();
+        for (int i = 0; i < 4; i++) users.add(repoUser.save(new User(prefix + "-user" + i, "x", repoRol.findById(2L).orElseThrow(), List.of())).getId());
+
+        assertEquals(new MembershipDto(3, 0), departmentService.updateMembers(dpt.getId(), List.of(users.get(0), users.get(1), users.get(2), users.get(2))));
+        // Se lee el usuario para que sus departamentos queden en la cache de segundo nivel
+        assertEquals(List.of(dpt.getId()), departments(users.get(0)));
+
+        assertEquals(new MembershipDto(1, 2), departmentService.updateMembers(dpt.getId(), List.of(users.get(2), users.get(3))));
+        assertEquals(Set.of(users.get(2), users.get(3)), members());
+        assertEquals(List.of(), departments(users.get(0)));
+        assertEquals(List.of(dpt.getId()), departments(users.get(3)));
+
+        // El PUT /update del departamento pasa por el mismo camino
+        departmentService.update(new DepartmentDto(dpt.getId(), null, List.of(users.get(0)), null));
+        assertEquals(Set.of(users.get(0)), members());
+        assertEquals(new MembershipDto(0, 0), departmentService.updateMembers(dpt.getId(), List.of(users.get(0))));
+    }
+
+    @Test
+    void aMissingUserChangesNothing(){
+        Long user = repoUser.save(new User(prefix + "-user", "x", repoRol.findById(2L).orElseThrow(), List.of())).getId();
+        departmentService.updateMembers(dpt.getId(), List.of(user));
+
+        assertThrows(NoSuchElementException.class, () -> departmentService.updateMembers(dpt.getId(), List.of(-1L)));
+        assertEquals(Set.of(user), members());
+        assertThrows(NoSuchElementException.class, () -> departmentService.updateMembers(-1L, List.of(user)));
+        assertThrows(IllegalArgumentException.class, () -> departmentService.updateMembers(dpt.getId(), null));
+
+        // Un departamento nuevo con un usuario que no existe no llega a crearse
+        assertThrows(NoSuchElementException.class, () -> department(prefix + "-otro", List.of(user, -1L)));
+        assertTrue(repoDpt.findByName(prefix + "-otro").isEmpty());
+    }
+
+    /**
+     * Replaces the members of a department of 10,000 users: a first load, a re-organisation that swaps half
+     * of them and a request that changes nothing. Run with {@code mvn test -Pbenchmark}.
+     */
+    @Test
+    @Tag("benchmark")
+    void reorganiseTenThousandMembers(){
+        int members = 10_000;
+        long base = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM users", Long.class) + 1_000_000;
+        jdbc.batchUpdate("INSERT INTO users (id, password, user_name, rol_id) VALUES (?, 'x', ?, 2)",
+                LongStream.range(base, base + members * 3 / 2).boxed().toList(), 1_000,
+                (ps, id) -> { ps.setLong(1, id); ps.setString(2, prefix + "-" + id); });
+
+        List<Long> first = LongStream.range(base, base + members).boxed().toList();
+        List<Long> second = LongStream.range(base + members / 2, base + members * 3 / 2).boxed().toList();
+
+        long start = System.nanoTime();
+        MembershipDto load = departmentService.updateMembers(dpt.getId(), first);
+        long loaded = System.nanoTime();
+        MembershipDto reorganised = departmentService.updateMembers(dpt.getId(), second);
+        long swapped = System.nanoTime();
+        MembershipDto unchanged = departmentService.updateMembers(dpt.getId(), second);
+        long end = System.nanoTime();
+
+        System.out.printf("%d miembros: carga %d ms, reorganizacion de la mitad %d ms, sin cambios %d ms%n", members,
+                (loaded - start) / 1_000_000, (swapped - loaded) / 1_000_000, (end - swapped) / 1_000_000);
+        assertEquals(new MembershipDto(members, 0), load);
+        assertEquals(new MembershipDto(members / 2, members / 2), reorganised);
+        assertEquals(new MembershipDto(0, 0), unchanged);
+        assertEquals(new HashSet<>(second), members());
+    }
+
+    private Department department(String name, List<Long> users){
+        departmentService.save(new DepartmentDto(0L, name, users, null));
+        return repoDpt.findByName(name).orElseThrow();
+    }
+
+    private Set<Long> members(){
+        return new HashSet<>(jdbc.queryForList("SELECT user_id FROM users_dpts WHERE dpt_id = ?", Long.class, dpt.getId()));
+    }
+
+    private List<Long> departments(Long userId){
+        return new TransactionTemplate(transactionManager).execute(status ->
+                repoUser.findById(userId).orElseThrow().getDepartments().stream().map(Department::getId).toList());
+    }
+}
@@ -0,0 +1,125 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.AuthRequest;
+import TechFixer.TechFixer.repositories.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that a login reads the user with a single query and answers with the token, ID and role taken
+ * from that same row, and measures the logins per second.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class LoginTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private UserService userService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private EntityManagerFactory emf;
+    @Autowired private ObjectMapper objectMapper;
+
+    private String prefix;
+
+    @BeforeEach
+    void setUp(){
+        prefix = UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Test
+    void aLoginReadsTheUserOnce() throws Exception {
+        String name = register(prefix + "-login");
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        JsonNode response = login(name, "secreto", status().isOk());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        assertEquals(repoUser.findByUserName(name).orElseThrow().getId(), response.get("userId").asLong());
+        assertEquals(2L, response.get("rolId").asLong());
+        mockMvc.perform(get("/api/state/getAll").header("Authorization", "Bearer " + response.get("token").asText()))
+                .andExpect(status().isOk());
+
+        login(name, "otra", status().isUnauthorized());
+    }
+
+    /**
+     * Logs in 8 users 50 times each from 8 threads and prints the logins per second and the statements run
+     * for each login. Run with {@code mvn test -Pbenchmark}.
+     */
+    @Test
+    @Tag("benchmark")
+    void loginsPerSecond() throws Exception {
+        int threads = 8;
+        int loginsPerThread = 50;
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < threads; i++) names.add(register(prefix + "-bench" + i));
+        // Calentamiento: JIT y caches
+        for (String name : names) login(name, "secreto", status().isOk());
+
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (String name : names) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < loginsPerThread; i++) login(name, "secreto", status().isOk());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            int logins = threads * loginsPerThread;
+            System.out.printf("%d logins en %.2f s: %.0f logins/s, %.2f sentencias por login%n",
+                    logins, seconds, logins / seconds, (double) statistics.getPrepareStatementCount() / logins);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String register(String name){
+        AuthRequest request = new AuthRequest();
+        request.setUserName(name);
+        request.setPassword("secreto");
+        userService.save(request);
+        return name;
+    }
+
+    private JsonNode login(String name, String password, ResultMatcher result) throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(post("/api/user/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("userName", name, "password", password))))
+                .andExpect(result)
+                .andReturn().getResponse();
+        return response.getStatus() == 200 ? objectMapper.readTree(response.getContentAsString()) : null;
+    }
+}
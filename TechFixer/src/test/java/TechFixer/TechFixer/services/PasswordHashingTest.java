@@ -0,0 +1,117 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.PasswordProperties;
+import TechFixer.TechFixer.dto.UserDto;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.exception.PasswordHashingBusyException;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import TechFixer.TechFixer.security.LoginUser;
+import TechFixer.TechFixer.security.PooledPasswordEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that passwords are hashed on their own bounded pool, that the requests that do not fit are
+ * rejected instead of waiting, and that a password hashed with another cost is hashed again on login without
+ * overwriting a password changed in the meantime.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class PasswordHashingTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private MeterRegistry registry;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private CustomUserDetailsService userDetailsService;
+    @Autowired private UserService userService;
+    @Autowired private PasswordEncoder passwordEncoder;
+
+    @Test
+    void aFullPoolRejectsTheRest(){
+        PasswordProperties properties = new PasswordProperties();
+        properties.setStrength(14);
+        properties.setThreads(1);
+        properties.setQueueCapacity(1);
+        properties.setTimeout(Duration.ofSeconds(30));
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+        try (PooledPasswordEncoder encoder = new PooledPasswordEncoder(properties, meters)) {
+            // Un hilo ocupado y uno en cola: el tercero ya no cabe
+            List<CompletableFuture<String>> running = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                running.add(CompletableFuture.supplyAsync(() -> encoder.encode("secreto")));
+            }
+            while (meters.get("techfixer.password.queue").gauge().value() < 1) Thread.onSpinWait();
+
+            assertThrows(PasswordHashingBusyException.class, () -> encoder.encode("secreto"));
+            assertEquals(1, meters.get("techfixer.password.rejected").counter().count());
+
+            running.forEach(CompletableFuture::join);
+            assertEquals(2, meters.get("techfixer.password.hash").tag("operation", "encode").timer().count());
+        }
+    }
+
+    @Test
+    void aPasswordWithAnotherCostIsHashedAgainOnLogin() throws Exception {
+        String name = UUID.randomUUID().toString().substring(0, 8) + "-hash";
+        repoUser.save(new User(name, new BCryptPasswordEncoder(4).encode("secreto"), repoRol.findById(2L).orElseThrow(), List.of()));
+        long matches = registry.get("techfixer.password.hash").tag("operation", "matches").timer().count();
+
+        login(name);
+        String rehashed = repoUser.findByUserName(name).orElseThrow().getPassword();
+        assertTrue(rehashed.startsWith("$2a$10$"), rehashed);
+        assertTrue(registry.get("techfixer.password.hash").tag("operation", "matches").timer().count() > matches);
+
+        // Con el nuevo hash el login sigue funcionando y ya no se vuelve a cifrar
+        login(name);
+        assertEquals(rehashed, repoUser.findByUserName(name).orElseThrow().getPassword());
+    }
+
+    @Test
+    void aPasswordChangedDuringTheRehashIsKept(){
+        String name = UUID.randomUUID().toString().substring(0, 8) + "-change";
+        User user = repoUser.save(new User(name, new BCryptPasswordEncoder(4).encode("secreto"), repoRol.findById(2L).orElseThrow(), List.of()));
+
+        // El login ha leido el hash antiguo y otra peticion cambia la contraseña antes de que se guarde el nuevo hash
+        LoginUser loaded = userDetailsService.loadUserByUsername(name);
+        UserDto update = new UserDto();
+        update.setId(user.getId());
+        update.setPassword("nueva");
+        userService.update(update);
+        userDetailsService.updatePassword(loaded, passwordEncoder.encode("secreto"));
+
+        String stored = repoUser.findByUserName(name).orElseThrow().getPassword();
+        assertTrue(passwordEncoder.matches("nueva", stored));
+        assertFalse(passwordEncoder.matches("secreto", stored));
+    }
+
+    private void login(String name) throws Exception {
+        mockMvc.perform(post("/api/user/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("userName", name, "password", "secreto"))))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,179 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.BoardProperties;
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.ProcessRepository;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.StateRepository;
+import TechFixer.TechFixer.repositories.TaskRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the in-memory pending board follows the task writes and matches the database.
+ */
+@SpringBootTest
+class PendingBoardTest {
+
+    @Autowired private TaskService taskService;
+    @Autowired private ProcessService processService;
+    @Autowired private PendingBoard pendingBoard;
+    @Autowired private TaskRepository repoTask;
+    @Autowired private ProcessRepository repoProcess;
+    @Autowired private ChangeCounters changeCounters;
+    @Autowired private StateRepository repoState;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private EntityManagerFactory emf;
+
+    private User owner;
+    private User other;
+
+    @BeforeEach
+    void setUp(){
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        owner = repoUser.save(new User(prefix + "-owner", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        other = repoUser.save(new User(prefix + "-other", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+    }
+
+    @Test
+    void boardFollowsTaskWrites(){
+        assertTrue(taskService.findPendingBoard(owner.getId()).get("active").isEmpty());
+
+        Long first = create("Primera", owner.getId());
+        Long second = create("Segunda", owner.getId());
+        assertEquals(List.of(second, first), ids(taskService.findPendingBoard(owner.getId()), "active"));
+
+        // Cambio de estado: pasa de columna
+        TaskDto update = taskService.findById(first);
+        update.setStateID(3L);
+        update.setProcessDtos(null);
+        taskService.update(update);
+        assertEquals(List.of(first), ids(taskService.findPendingBoard(owner.getId()), "paused"));
+
+        // Nuevo proceso: se ve en el tablero, que solo lleva el numero de procesos y el ultimo
+        processService.save(new ProcessDto(null, "Revision", null, first, owner.getId(), null));
+        TaskDto paused = taskService.findPendingBoard(owner.getId()).get("paused").get(0);
+        assertEquals(1, paused.getProcessCount());
+        assertEquals("Revision", paused.getLastProcess().getDescription());
+
+        // Cambio de encargado: sale de un tablero y entra en el otro
+        assertTrue(taskService.findPendingBoard(other.getId()).get("active").isEmpty());
+        update = taskService.findById(second);
+        update.setOwnerID(other.getId());
+        update.setProcessDtos(null);
+        taskService.update(update);
+        assertTrue(taskService.findPendingBoard(owner.getId()).get("active").isEmpty());
+        assertEquals(List.of(second), ids(taskService.findPendingBoard(other.getId()), "active"));
+
+        // Finalizada: deja de estar pendiente
+        update = taskService.findById(first);
+        update.setStateID(4L);
+        update.setProcessDtos(null);
+        taskService.update(update);
+        assertTrue(taskService.findPendingBoard(owner.getId()).get("paused").isEmpty());
+
+        taskService.delete(second);
+        assertTrue(taskService.findPendingBoard(other.getId()).get("active").isEmpty());
+    }
+
+    @Test
+    void cachedBoardIsServedWithoutQueries(){
+        create("Tarea", owner.getId());
+        taskService.findPendingBoard(owner.getId());
+
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        Map<String, List<TaskDto>> board = taskService.findPendingBoard(owner.getId());
+
+        assertEquals(1, board.get("active").size());
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void callersGetTheirOwnCopies(){
+        Long id = create("Tarea", owner.getId());
+
+        TaskDto task = taskService.findPendingBoard(owner.getId()).get("active").get(0);
+        task.setDescription("Cambiada por quien la leyo");
+        task.setStateID(4L);
+
+        TaskDto cached = taskService.findPendingBoard(owner.getId()).get("active").get(0);
+        assertEquals(id, cached.getId());
+        assertEquals("Tarea", cached.getDescription());
+        assertEquals(1L, cached.getStateID());
+        assertThrows(UnsupportedOperationException.class, () -> taskService.findPendingBoard(owner.getId()).get("active").clear());
+    }
+
+    @Test
+    void onlyTheConfiguredNumberOfBoardsIsKept() throws InterruptedException {
+        BoardProperties properties = new BoardProperties();
+        properties.setMaxOwners(2);
+        properties.setExpireAfterAccess(Duration.ofHours(1));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PendingBoard boards = new PendingBoard(repoTask, repoProcess, changeCounters, properties, registry);
+
+        for (int i = 0; i < 5; i++) {
+            User user = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8) + "-board" + i, "x", repoRol.findById(2L).orElseThrow(), List.of()));
+            create("Tarea", user.getId());
+            assertEquals(1, boards.get(user.getId()).get("active").size());
+        }
+
+        // Caffeine descarta los tableros sobrantes en segundo plano
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (registry.get("techfixer.board.owners").gauge().value() > 2 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(2, registry.get("techfixer.board.owners").gauge().value());
+    }
+
+    @Test
+    void unknownUserIsRejected(){
+        assertThrows(NoSuchElementException.class, () -> taskService.findPendingBoard(-1L));
+    }
+
+    @Test
+    void verifyRepairsChangesMadeBehindTheBoard(){
+        Long id = create("Tarea", owner.getId());
+        taskService.findPendingBoard(owner.getId());
+
+        // Escritura directa que no pasa por el servicio, el tablero no se entera
+        Task task = repoTask.findById(id).orElseThrow();
+        task.setState(repoState.findById(2L).orElseThrow());
+        repoTask.save(task);
+        assertEquals(List.of(id), ids(taskService.findPendingBoard(owner.getId()), "active"));
+
+        pendingBoard.verify();
+
+        assertTrue(taskService.findPendingBoard(owner.getId()).get("active").isEmpty());
+        assertEquals(List.of(id), ids(taskService.findPendingBoard(owner.getId()), "process"));
+    }
+
+    private Long create(String description, Long ownerID){
+        TaskDto task = new TaskDto();
+        task.setDescription(description);
+        task.setAuthorID(ownerID);
+        task.setOwnerID(ownerID);
+        return taskService.saveAll(List.of(task)).get(0).getId();
+    }
+
+    private static List<Long> ids(Map<String, List<TaskDto>> board, String column){
+        return board.get(column).stream().map(TaskDto::getId).toList();
+    }
+}
@@ -0,0 +1,209 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.ProcessProperties;
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.exception.ProcessQueueFullException;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the write-behind queue of new processes: the author sees them before they are saved, they are
+ * saved in batches, a full queue rejects new ones, the journal brings back the ones not yet saved and the
+ * ones whose task is gone by then are kept in the dead letters.
+ * The flusher is slowed down so the tests decide when the queue is saved.
+ */
+@SpringBootTest(properties = {"techfixer.process.flush-interval=PT1H", "techfixer.process.queue-capacity=50"})
+class ProcessQueueTest {
+
+    @Autowired private ProcessQueue processQueue;
+    @Autowired private ProcessService processService;
+    @Autowired private TaskService taskService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private JdbcTemplate jdbc;
+    @Autowired private TransactionTemplate transaction;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private EntityManagerFactory emf;
+    @Autowired private MeterRegistry registry;
+
+    private User author;
+    private User other;
+
+    @BeforeEach
+    void setUp(){
+        processQueue.flush();
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        author = repoUser.save(new User(prefix + "-author", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        other = repoUser.save(new User(prefix + "-other", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+    }
+
+    @Test
+    void authorSeesTheProcessBeforeItIsSaved(){
+        Long id = create();
+        Long version = taskService.findById(id).getVersion();
+        String etag = taskService.etag(id, false, author.getUserName());
+
+        processQueue.append(new ProcessDto(null, "Revisado", null, id, author.getId(), null));
+
+        assertEquals(List.of("Revisado"), descriptions(taskService.findById(id, false, author.getUserName())));
+        assertEquals(List.of(), descriptions(taskService.findById(id, false, other.getUserName())));
+        assertNotEquals(etag, taskService.etag(id, false, author.getUserName()));
+
+        processQueue.flush();
+
+        TaskDto saved = taskService.findById(id, false, author.getUserName());
+        assertEquals(List.of("Revisado"), descriptions(saved));
+        assertNotNull(saved.getProcessDtos().get(0).getId());
+        assertEquals(version + 1, saved.getVersion());
+    }
+
+    @Test
+    void authorSeesTheProcessInTheHistoryBeforeItIsSaved(){
+        Long id = create();
+        processService.save(new ProcessDto(null, "Guardado", null, id, author.getId(), null));
+        String etag = taskService.etag(id, false, author.getUserName());
+
+        processQueue.append(new ProcessDto(null, "Revisado", null, id, author.getId(), null));
+
+        assertEquals(List.of("Revisado", "Guardado"), taskService.findProcessPage(id, null, 10, author.getUserName())
+                .getContent().stream().map(ProcessDto::getDescription).toList());
+        assertEquals(List.of("Guardado"), taskService.findProcessPage(id, null, 10, other.getUserName())
+                .getContent().stream().map(ProcessDto::getDescription).toList());
+        assertNotEquals(etag, taskService.etag(id, false, author.getUserName()));
+
+        // Una vez guardado sale una sola vez
+        processQueue.flush();
+        assertEquals(List.of("Revisado", "Guardado"), taskService.findProcessPage(id, null, 10, author.getUserName())
+                .getContent().stream().map(ProcessDto::getDescription).toList());
+    }
+
+    @Test
+    void batchIsSavedWithTheSameStatementsForAnySize(){
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        Long first = create();
+        Long second = create();
+
+        append(first, second, 4);
+        statistics.clear();
+        processQueue.flush();
+        long small = statistics.getPrepareStatementCount();
+
+        append(first, second, 40);
+        statistics.clear();
+        processQueue.flush();
+        long large = statistics.getPrepareStatementCount();
+
+        assertEquals(22, taskService.findById(first).getProcessDtos().size());
+        // Como mucho una llamada mas a la secuencia de IDs, que reparte los IDs de 50 en 50
+        assertTrue(large <= small + 1, "Guardar el lote no deberia depender del numero de procesos: " + small + " y " + large);
+    }
+
+    @Test
+    void fullQueueRejectsNewProcesses(){
+        Long id = create();
+        for (int i = 0; i < 50; i++) {
+            processQueue.append(new ProcessDto(null, "Proceso " + i, null, id, author.getId(), null));
+        }
+
+        assertThrows(ProcessQueueFullException.class,
+                () -> processQueue.append(new ProcessDto(null, "Uno mas", null, id, author.getId(), null)));
+
+        processQueue.flush();
+        processQueue.append(new ProcessDto(null, "Uno mas", null, id, author.getId(), null));
+    }
+
+    @Test
+    void journalEntriesNotSavedAreSavedOnStart() throws Exception {
+        Long id = create();
+        long saved = jdbc.queryForObject("SELECT last_seq FROM process_journal WHERE id = 1", Long.class);
+
+        // Diario de una ejecucion que se cayo: una entrada ya guardada, dos sin guardar y una linea a medias
+        Path path = Files.createTempFile("process-journal", ".ndjson");
+        Files.writeString(path, String.join("\n",
+                entry(saved, id, "Ya guardado"),
+                entry(saved + 1, id, "Pendiente 1"),
+                entry(saved + 2, id, "Pendiente 2"),
+                "{\"seq\":" + (saved + 3) + ",\"taskI"));
+
+        ProcessProperties properties = new ProcessProperties();
+        properties.setJournal(path.toString());
+        ProcessQueue restarted = new ProcessQueue(properties, processService, jdbc, transaction, objectMapper, new SimpleMeterRegistry());
+        restarted.open();
+        restarted.flush();
+        restarted.stop();
+
+        assertEquals(List.of("Pendiente 2", "Pendiente 1"), descriptions(taskService.findById(id)));
+        assertEquals(0, Files.size(path));
+        assertEquals(saved + 2, jdbc.queryForObject("SELECT last_seq FROM process_journal WHERE id = 1", Long.class));
+        Files.delete(path);
+    }
+
+    @Test
+    void aProcessForATaskArchivedWhileQueuedGoesToTheDeadLetters(){
+        Long id = create();
+        double dropped = registry.get("techfixer.process.dropped").tag("reason", "task").counter().count();
+        processQueue.append(new ProcessDto(null, "Tarde", null, id, author.getId(), null));
+
+        // La tarea se archiva mientras el proceso espera en la cola
+        transaction.executeWithoutResult(status -> {
+            jdbc.update("""
+                    INSERT INTO tasks_archive (id, date_end, date_ini, description, author_id, dpt_id, owner_id, state_id, archived_at)
+                    SELECT id, date_end, date_ini, description, author_id, dpt_id, owner_id, state_id, CURRENT_TIMESTAMP FROM tasks WHERE id = ?
+                    """, id);
+            jdbc.update("DELETE FROM tasks WHERE id = ?", id);
+        });
+        processQueue.flush();
+
+        assertEquals(List.of(), descriptions(taskService.findById(id, true)));
+        assertEquals(List.of("Tarde"), jdbc.queryForList(
+                "SELECT description FROM process_dead_letters WHERE task_id = ? AND reason = 'task'", String.class, id));
+        assertEquals(dropped + 1, registry.get("techfixer.process.dropped").tag("reason", "task").counter().count());
+        assertEquals(0, processQueue.pending(id, author.getUserName()).size());
+    }
+
+    private void append(Long first, Long second, int count){
+        for (int i = 0; i < count; i++) {
+            processQueue.append(new ProcessDto(null, "Proceso " + i, null, i % 2 == 0 ? first : second, author.getId(), null));
+        }
+    }
+
+    private String entry(long seq, Long taskId, String description) throws Exception {
+        return objectMapper.writeValueAsString(Map.of(
+                "seq", seq, "taskID", taskId, "authorID", author.getId(), "authorName", author.getUserName(),
+                "description", description, "date", LocalDateTime.now().plusSeconds(seq).toString()));
+    }
+
+    private Long create(){
+        TaskDto task = new TaskDto();
+        task.setDescription("Tarea");
+        task.setAuthorID(author.getId());
+        return taskService.saveAll(List.of(task)).get(0).getId();
+    }
+
+    private static List<String> descriptions(TaskDto task){
+        return task.getProcessDtos().stream().map(ProcessDto::getDescription).toList();
+    }
+}
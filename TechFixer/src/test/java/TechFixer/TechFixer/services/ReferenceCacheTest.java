@@ -0,0 +1,94 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.DepartmentDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Department;
+import TechFixer.TechFixer.entity.State;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.DepartmentRepository;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that task writes take states and departments from the reference cache, and that the services
+ * that write those tables drop it.
+ */
+@SpringBootTest
+class ReferenceCacheTest {
+
+    @Autowired private ReferenceCache referenceCache;
+    @Autowired private TaskService taskService;
+    @Autowired private DepartmentService departmentService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private DepartmentRepository repoDpt;
+    @Autowired private EntityManagerFactory emf;
+    @Autowired private MeterRegistry registry;
+
+    private User author;
+
+    @BeforeEach
+    void setUp(){
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        author = repoUser.save(new User(prefix + "-author", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+    }
+
+    @Test
+    void taskWritesDoNotReadStatesOrDepartmentsOnceCached(){
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        create();
+        double hits = hits("states");
+
+        statistics.clear();
+        Long id = create();
+
+        assertEquals(0, statistics.getEntityStatistics(State.class.getName()).getLoadCount());
+        assertEquals(0, statistics.getEntityStatistics(Department.class.getName()).getLoadCount());
+        assertTrue(hits("states") > hits);
+
+        TaskDto saved = taskService.findById(id);
+        assertEquals(1L, saved.getStateID());
+        assertEquals(1L, saved.getDptID());
+    }
+
+    @Test
+    void renamingADepartmentDropsTheCachedOne(){
+        String name = "Cache-" + UUID.randomUUID().toString().substring(0, 8);
+        departmentService.save(new DepartmentDto(0L, name, null, null));
+        Department dpt = repoDpt.findByName(name).orElseThrow();
+        assertEquals(dpt.getName(), referenceCache.department(dpt.getId()).orElseThrow().getName());
+
+        String renamed = name + "-bis";
+        departmentService.update(new DepartmentDto(dpt.getId(), renamed, null, null));
+
+        assertEquals(renamed, referenceCache.department(dpt.getId()).orElseThrow().getName());
+
+        departmentService.delete(dpt.getId());
+        assertTrue(referenceCache.department(dpt.getId()).isEmpty());
+    }
+
+    private double hits(String cache){
+        return registry.get("cache.gets").tag("cache", cache).tag("result", "hit").functionCounter().count();
+    }
+
+    private Long create(){
+        TaskDto task = new TaskDto();
+        task.setDescription("Tarea");
+        task.setAuthorID(author.getId());
+        task.setDptID(1L);
+        return taskService.saveAll(List.of(task)).get(0).getId();
+    }
+}
@@ -0,0 +1,118 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.BulkResultDto;
+import TechFixer.TechFixer.dto.DepartmentDto;
+import TechFixer.TechFixer.dto.DepartmentSummaryDto;
+import TechFixer.TechFixer.dto.PageDto;
+import TechFixer.TechFixer.dto.StateSummaryDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Department;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.DepartmentRepository;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the summaries of states and departments carry the number of tasks and users read with a
+ * single query, and that the IDs behind those numbers can be walked page by page.
+ */
+@SpringBootTest
+class ReferenceSummaryTest {
+
+    @Autowired private StateService stateService;
+    @Autowired private DepartmentService departmentService;
+    @Autowired private TaskService taskService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private DepartmentRepository repoDpt;
+    @Autowired private EntityManagerFactory emf;
+    @Autowired private JdbcTemplate jdbc;
+
+    private Department dpt;
+    private List<Long> users;
+    private List<Long> tasks;
+
+    @BeforeEach
+    void setUp(){
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        departmentService.save(new DepartmentDto(0L, prefix + "-dpt", null, null));
+        dpt = repoDpt.findByName(prefix + "-dpt").orElseThrow();
+
+        users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            users.add(repoUser.save(new User(prefix + "-user" + i, "x", repoRol.findById(2L).orElseThrow(), List.of(dpt))).getId());
+        }
+
+        List<TaskDto> dtos = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TaskDto task = new TaskDto();
+            task.setDescription("Tarea " + i);
+            task.setAuthorID(users.get(0));
+            task.setDptID(dpt.getId());
+            dtos.add(task);
+        }
+        tasks = taskService.saveAll(dtos).stream().map(BulkResultDto::getId).sorted().toList();
+    }
+
+    @Test
+    void summariesAreReadWithOneQuery(){
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        List<DepartmentSummaryDto> departments = departmentService.findSummaries();
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        DepartmentSummaryDto summary = departments.stream()
+                .filter(d -> d.getId().equals(dpt.getId())).findFirst().orElseThrow();
+        assertEquals(dpt.getName(), summary.getName());
+        assertEquals(3L, summary.getUsersCount());
+        assertEquals(5L, summary.getTasksCount());
+
+        statistics.clear();
+        List<StateSummaryDto> states = stateService.getSummaries();
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        // Las tareas nuevas se crean en el estado 1
+        StateSummaryDto active = states.stream().filter(s -> s.getId().equals(1L)).findFirst().orElseThrow();
+        assertEquals(jdbc.queryForObject("SELECT COUNT(*) FROM tasks WHERE state_id = 1", Long.class), active.getTasksCount());
+    }
+
+    @Test
+    void memberIdsAreWalkedPageByPage(){
+        assertEquals(tasks, walk(cursor -> departmentService.findTaskIds(dpt.getId(), cursor, 2)));
+        assertEquals(users, walk(cursor -> departmentService.findUserIds(dpt.getId(), cursor, 2)));
+        assertTrue(walk(cursor -> stateService.getTaskIds(1L, cursor, 1000)).containsAll(tasks));
+
+        assertThrows(NoSuchElementException.class, () -> departmentService.findTaskIds(-1L, null, null));
+        assertThrows(IllegalArgumentException.class, () -> stateService.getTaskIds(1L, "no-es-un-cursor", null));
+        assertThrows(IllegalArgumentException.class, () -> departmentService.findUserIds(dpt.getId(), null, 0));
+    }
+
+    // Recorre todas las paginas siguiendo el cursor de cada una
+    private List<Long> walk(Function<String, PageDto<Long>> pages){
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            PageDto<Long> page = pages.apply(cursor);
+            ids.addAll(page.getContent());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+}
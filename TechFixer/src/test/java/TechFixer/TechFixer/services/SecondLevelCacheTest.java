@@ -0,0 +1,90 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.AuthRequest;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that a login followed by a refresh of the pending board reads the user and its role from the
+ * Hibernate query cache instead of the database.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class SecondLevelCacheTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private UserService userService;
+    @Autowired private TaskService taskService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private EntityManagerFactory emf;
+    @Autowired private ObjectMapper objectMapper;
+
+    @Test
+    void loginAndBoardRefreshAreServedFromTheCache() throws Exception {
+        String name = UUID.randomUUID().toString().substring(0, 8) + "-cache";
+        AuthRequest request = new AuthRequest();
+        request.setUserName(name);
+        request.setPassword("secreto");
+        userService.save(request);
+        User user = repoUser.findByUserName(name).orElseThrow();
+        for (int i = 0; i < 3; i++) create(user.getId());
+
+        SessionFactory sessionFactory = emf.unwrap(SessionFactory.class);
+        Statistics statistics = sessionFactory.getStatistics();
+
+        // Primera vuelta para que el tablero de pendientes y los planes de las consultas ya esten en memoria
+        workload(statistics, name, user.getId());
+
+        sessionFactory.getCache().evictAllRegions();
+        long cold = workload(statistics, name, user.getId());
+        long warm = workload(statistics, name, user.getId());
+
+        assertTrue(warm < cold, "La cache deberia ahorrar sentencias: " + cold + " y " + warm);
+        // Las columnas del login, con el rol en la misma fila, salen de la cache de consultas
+        assertTrue(statistics.getQueryRegionStatistics("query.loginByName").getHitCount() > 0);
+        assertEquals(0, statistics.getQueryRegionStatistics("query.loginByName").getMissCount());
+    }
+
+    // Login y peticion del tablero con el token, como hace el cliente al entrar; devuelve las sentencias SQL
+    private long workload(Statistics statistics, String name, Long userId) throws Exception {
+        statistics.clear();
+        String body = mockMvc.perform(post("/api/user/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("userName", name, "password", "secreto"))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String token = objectMapper.readTree(body).get("token").asText();
+
+        mockMvc.perform(get("/api/task/getAllByUserPending/" + userId).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void create(Long ownerID){
+        TaskDto task = new TaskDto();
+        task.setDescription("Tarea");
+        task.setAuthorID(ownerID);
+        task.setOwnerID(ownerID);
+        taskService.saveAll(List.of(task));
+    }
+}
@@ -0,0 +1,126 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.ArchiveProperties;
+import TechFixer.TechFixer.dto.FilterDto;
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.StateRepository;
+import TechFixer.TechFixer.repositories.TaskRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that old closed tasks are moved to the archive and can still be read from it.
+ */
+@SpringBootTest
+class TaskArchiverTest {
+
+    @Autowired private TaskArchiver archiver;
+    @Autowired private ArchiveProperties properties;
+    @Autowired private TaskService taskService;
+    @Autowired private TaskStatsService statsService;
+    @Autowired private TaskRepository repoTask;
+    @Autowired private StateRepository repoState;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+
+    private User owner;
+
+    @BeforeEach
+    void setUp(){
+        owner = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8), "x", repoRol.findById(2L).orElseThrow(), List.of()));
+    }
+
+    @Test
+    void oldClosedTasksAreMovedWithTheirProcesses(){
+        Long old = create("Finalizado", LocalDateTime.now().minusYears(1));
+        Long recent = create("Finalizado", LocalDateTime.now());
+        Long open = create("Activo", null);
+        statsService.rebuild();
+
+        assertTrue(archiver.archive() >= 1);
+
+        assertThrows(NoSuchElementException.class, () -> taskService.findById(old));
+        TaskDto archived = taskService.findById(old, true);
+        assertEquals(1, archived.getProcessDtos().size());
+        assertEquals(state("Finalizado"), archived.getStateID());
+
+        // Las recientes y las abiertas se quedan en las tablas de trabajo
+        assertNotNull(taskService.findById(recent));
+        assertNotNull(taskService.findById(open));
+
+        // El archivo no cambia las estadisticas
+        assertEquals(0, statsService.verify());
+    }
+
+    @Test
+    void filterFallsThroughToTheArchiveWhenAsked(){
+        Long old = create("Finalizado", LocalDateTime.now().minusYears(1));
+        Long open = create("Activo", null);
+        archiver.archive();
+
+        FilterDto filter = new FilterDto();
+        filter.setOwnerID(owner.getId());
+        assertEquals(List.of(open), ids(taskService.findFilter(filter)));
+
+        filter.setIncludeArchived(true);
+        assertEquals(List.of(open, old), ids(taskService.findFilter(filter)));
+    }
+
+    @Test
+    void onlyTheConfiguredClosedStatesAreArchived(){
+        Long finished = create("Finalizado", LocalDateTime.now().minusYears(1));
+        Long cancelled = create("Anulado", null);
+        Task task = repoTask.findById(cancelled).orElseThrow();
+        task.setDateIni(LocalDateTime.now().minusYears(1));
+        repoTask.save(task);
+
+        List<String> closedStates = properties.getClosedStates();
+        properties.setClosedStates(List.of("Anulado"));
+        try {
+            archiver.archive();
+        } finally {
+            properties.setClosedStates(closedStates);
+        }
+
+        assertNotNull(taskService.findById(finished));
+        assertThrows(NoSuchElementException.class, () -> taskService.findById(cancelled));
+    }
+
+    // Crea una tarea con un proceso y le pone el estado y la fecha de fin directamente
+    private Long create(String stateName, LocalDateTime dateEnd){
+        TaskDto dto = new TaskDto();
+        dto.setDescription("Tarea");
+        dto.setAuthorID(owner.getId());
+        dto.setOwnerID(owner.getId());
+        dto.setProcessDtos(List.of(new ProcessDto(null, "Proceso", null, null, owner.getId(), null)));
+        Long id = taskService.saveAll(List.of(dto)).get(0).getId();
+
+        Task task = repoTask.findById(id).orElseThrow();
+        task.setState(repoState.findById(state(stateName)).orElseThrow());
+        task.setDateEnd(dateEnd);
+        repoTask.save(task);
+        return id;
+    }
+
+    private Long state(String name){
+        return repoState.findAll().stream().filter(state -> state.getName().equals(name)).findFirst().orElseThrow().getId();
+    }
+
+    private static List<Long> ids(List<TaskDto> tasks){
+        return tasks.stream().map(TaskDto::getId).toList();
+    }
+}
@@ -0,0 +1,124 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.TaskChangesDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the delta sync of tasks: created, modified and deleted tasks come after the watermark of the
+ * client, a bulk change is never split between pages and purged deletions ask for a full resync.
+ */
+@SpringBootTest
+class TaskChangeLogTest {
+
+    @Autowired private TaskService taskService;
+    @Autowired private TaskChangeLog changeLog;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+
+    private User author;
+
+    @BeforeEach
+    void setUp(){
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        author = repoUser.save(new User(prefix + "-author", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+    }
+
+    @Test
+    void changesAfterTheWatermarkAreReturned(){
+        long start = changeLog.horizon();
+        Long first = create("Primera");
+        Long second = create("Segunda");
+
+        TaskChangesDto created = taskService.findChanges(start, null);
+        assertEquals(List.of(first, second), ids(created));
+        assertEquals("Primera", created.getChanged().get(0).getDescription());
+        assertFalse(created.isResyncRequired());
+        assertTrue(created.getWatermark() > start);
+
+        TaskDto update = taskService.findById(first);
+        update.setDescription("Cambiada");
+        update.setProcessDtos(null);
+        taskService.update(update);
+        TaskChangesDto updated = taskService.findChanges(created.getWatermark(), null);
+        assertEquals(List.of(first), ids(updated));
+        assertEquals("Cambiada", updated.getChanged().get(0).getDescription());
+
+        taskService.delete(second);
+        TaskChangesDto deleted = taskService.findChanges(updated.getWatermark(), null);
+        assertEquals(List.of(), ids(deleted));
+        assertEquals(List.of(second), deleted.getDeleted());
+
+        TaskChangesDto none = taskService.findChanges(deleted.getWatermark(), null);
+        assertEquals(List.of(), ids(none));
+        assertEquals(List.of(), none.getDeleted());
+        assertEquals(deleted.getWatermark(), none.getWatermark());
+    }
+
+    @Test
+    void bulkChangeIsNeverSplitBetweenPages(){
+        long start = changeLog.horizon();
+        List<Long> bulk = taskService.saveAll(List.of(task("Uno"), task("Dos"), task("Tres"))).stream()
+                .map(result -> result.getId()).toList();
+        Long last = create("Cuatro");
+
+        // La pagina pide dos, pero las tres tareas de la carga masiva van juntas
+        TaskChangesDto group = taskService.findChanges(start, 2);
+        assertEquals(bulk, ids(group));
+        assertTrue(group.isHasMore());
+
+        // Con tres no cabe la siguiente, la marca de agua queda al final de la carga masiva
+        TaskChangesDto page = taskService.findChanges(start, 3);
+        assertEquals(bulk, ids(page));
+        assertEquals(group.getWatermark(), page.getWatermark());
+        assertTrue(page.isHasMore());
+
+        TaskChangesDto next = taskService.findChanges(page.getWatermark(), 3);
+        assertEquals(List.of(last), ids(next));
+        assertFalse(next.isHasMore());
+    }
+
+    @Test
+    void purgedDeletionsRequireAResync(){
+        long start = changeLog.horizon();
+        taskService.delete(create("Borrada"));
+        long current = taskService.findChanges(start, null).getWatermark();
+
+        changeLog.purgeOlderThan(Duration.ZERO);
+
+        TaskChangesDto stale = taskService.findChanges(start, null);
+        assertTrue(stale.isResyncRequired());
+        assertEquals(List.of(), stale.getDeleted());
+        assertFalse(taskService.findChanges(current, null).isResyncRequired());
+
+        // Una marca de agua que este servidor no ha repartido tampoco sirve
+        assertTrue(taskService.findChanges(changeLog.horizon() + 1, null).isResyncRequired());
+    }
+
+    private static List<Long> ids(TaskChangesDto changes){
+        return changes.getChanged().stream().map(TaskDto::getId).toList();
+    }
+
+    private TaskDto task(String description){
+        TaskDto task = new TaskDto();
+        task.setDescription(description);
+        task.setAuthorID(author.getId());
+        return task;
+    }
+
+    private Long create(String description){
+        return taskService.saveAll(List.of(task(description))).get(0).getId();
+    }
+}
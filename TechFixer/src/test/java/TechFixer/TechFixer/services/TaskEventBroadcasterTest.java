@@ -0,0 +1,67 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * Checks that the task change stream only sends the changes the subscriber asked for.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class TaskEventBroadcasterTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private TaskService taskService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+
+    @Test
+    @WithMockUser
+    void userStreamOnlyReceivesTheirTasks() throws Exception {
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        User followed = repoUser.save(new User(prefix + "-a", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        User other = repoUser.save(new User(prefix + "-b", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+
+        MockHttpServletResponse response = mockMvc.perform(get("/api/task/events").param("userId", followed.getId().toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse();
+
+        Long otherTask = create(other.getId());
+        Long followedTask = create(followed.getId());
+
+        // Los eventos se envian desde otro hilo
+        String body = "";
+        for (int i = 0; i < 50 && !body.contains("\"taskID\":" + followedTask); i++) {
+            Thread.sleep(100);
+            body = response.getContentAsString();
+        }
+
+        assertTrue(body.contains("event:task"), body);
+        assertTrue(body.contains("\"type\":\"CREATED\",\"taskID\":" + followedTask), body);
+        assertFalse(body.contains("\"taskID\":" + otherTask), body);
+    }
+
+    private Long create(Long ownerID){
+        TaskDto task = new TaskDto();
+        task.setDescription("Tarea");
+        task.setAuthorID(ownerID);
+        task.setOwnerID(ownerID);
+        return taskService.saveAll(List.of(task)).get(0).getId();
+    }
+}
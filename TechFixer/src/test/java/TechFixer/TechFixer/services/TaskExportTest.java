@@ -0,0 +1,93 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.TaskProperties;
+import TechFixer.TechFixer.dto.FilterDto;
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Process;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the export streams every task of the filter with its processes, also across the batches
+ * after which the persistence context is cleared.
+ */
+@SpringBootTest
+class TaskExportTest {
+
+    @Autowired private TaskService taskService;
+    @Autowired private TaskProperties properties;
+    @Autowired private TaskRepository repoTask;
+    @Autowired private ProcessRepository repoProcess;
+    @Autowired private UserRepository repoUser;
+    @Autowired private StateRepository repoState;
+    @Autowired private DepartmentRepository repoDpt;
+    @Autowired private RolesRepository repoRol;
+
+    private User owner;
+    private int batchSize;
+
+    @BeforeEach
+    void setUp(){
+        owner = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8) + "-export", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        // Lotes de 2 para que la exportacion vacie el contexto varias veces
+        batchSize = properties.getExportBatchSize();
+        properties.setExportBatchSize(2);
+    }
+
+    @AfterEach
+    void tearDown(){
+        properties.setExportBatchSize(batchSize);
+    }
+
+    @Test
+    void everyTaskIsExportedWithItsProcesses(){
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) ids.add(seed("Tarea " + i).getId());
+
+        FilterDto filter = new FilterDto();
+        filter.setOwnerID(owner.getId());
+        List<TaskDto> exported = new ArrayList<>();
+        taskService.exportFilter(filter, exported::add);
+
+        assertEquals(ids.stream().sorted().toList(), exported.stream().map(TaskDto::getId).sorted().toList());
+        for (TaskDto task : exported) {
+            assertEquals(owner.getId(), task.getOwnerID());
+            assertEquals(List.of("Proceso 0", "Proceso 1"), task.getProcessDtos().stream().map(ProcessDto::getDescription).sorted().toList());
+        }
+    }
+
+    private Task seed(String description){
+        Task task = new Task();
+        task.setDescription(description);
+        task.setDateIni(LocalDateTime.now());
+        task.setAuthor(owner);
+        task.setOwnerUser(owner);
+        task.setDpt(repoDpt.findAll().get(0));
+        task.setState(repoState.findById(1L).orElseThrow());
+        task = repoTask.save(task);
+
+        for (int p = 0; p < 2; p++) {
+            Process process = new Process();
+            process.setDescription("Proceso " + p);
+            process.setDate(LocalDateTime.now());
+            process.setAuthor(owner);
+            process.setTask(task);
+            repoProcess.save(process);
+        }
+        return task;
+    }
+}
@@ -0,0 +1,104 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.FilterDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a filter shape is compiled once and reused by every later filter with the same predicates
+ * whatever their values, as counted by the hit and miss metrics, and that list and single values match
+ * any of them.
+ */
+@SpringBootTest
+class TaskFilterEngineTest {
+
+    @Autowired private TaskService taskService;
+    @Autowired private TaskFilterEngine filterEngine;
+    @Autowired private TaskRepository repoTask;
+    @Autowired private UserRepository repoUser;
+    @Autowired private StateRepository repoState;
+    @Autowired private DepartmentRepository repoDpt;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private MeterRegistry registry;
+
+    private User owner;
+    private Task active;
+    private Task paused;
+
+    @BeforeEach
+    void setUp(){
+        owner = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8) + "-filter", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        active = seed(1L);
+        seed(2L);
+        paused = seed(3L);
+    }
+
+    @Test
+    void aShapeIsCompiledOnceAndThenReused(){
+        // Autor, estados y todas las fechas: una forma que no usa ninguna otra prueba
+        FilterDto first = filter(List.of(1L, 3L));
+        long hits = filterEngine.getHits();
+        long misses = filterEngine.getMisses();
+
+        List<Long> found = ids(taskService.findFilter(first));
+        assertEquals(misses + 1, filterEngine.getMisses());
+        assertEquals(hits, filterEngine.getHits());
+        assertEquals(List.of(active.getId(), paused.getId()), found);
+
+        // Mismos predicados con otros valores: se reutiliza la consulta compilada
+        found = ids(taskService.findFilter(filter(List.of(3L))));
+        assertEquals(misses + 1, filterEngine.getMisses());
+        assertEquals(hits + 1, filterEngine.getHits());
+        assertEquals(List.of(paused.getId()), found);
+
+        assertEquals(filterEngine.getHits(), (long) registry.get("techfixer.task.filter.shapes").tag("result", "hit").counter().count());
+        assertEquals(filterEngine.getMisses(), (long) registry.get("techfixer.task.filter.shapes").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void singleAndListValuesAreMerged(){
+        FilterDto filter = new FilterDto();
+        filter.setOwnerID(owner.getId());
+        filter.setStateID(1L);
+        filter.setStateIDs(List.of(3L));
+
+        assertEquals(List.of(active.getId(), paused.getId()), ids(taskService.findFilter(filter)));
+    }
+
+    private FilterDto filter(List<Long> states){
+        FilterDto filter = new FilterDto();
+        filter.setAuthorID(owner.getId());
+        filter.setStateIDs(states);
+        filter.setDateCreationIni(LocalDateTime.now().minusDays(1));
+        filter.setDateCreationEnd(LocalDateTime.now().plusDays(1));
+        return filter;
+    }
+
+    private List<Long> ids(List<TaskDto> tasks){
+        return tasks.stream().map(TaskDto::getId).sorted().toList();
+    }
+
+    private Task seed(Long state){
+        Task task = new Task();
+        task.setDescription("Tarea");
+        task.setDateIni(LocalDateTime.now());
+        task.setAuthor(owner);
+        task.setOwnerUser(owner);
+        task.setDpt(repoDpt.findAll().get(0));
+        task.setState(repoState.findById(state).orElseThrow());
+        return repoTask.save(task);
+    }
+}
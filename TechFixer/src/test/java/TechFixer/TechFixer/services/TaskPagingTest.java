@@ -0,0 +1,102 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.FilterDto;
+import TechFixer.TechFixer.dto.PageDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the task pages walk every task once, from the most recent to the oldest, also when several
+ * tasks share the same creation date, and that malformed cursors and sizes are rejected.
+ */
+@SpringBootTest
+class TaskPagingTest {
+
+    @Autowired private TaskService taskService;
+    @Autowired private TaskRepository repoTask;
+    @Autowired private UserRepository repoUser;
+    @Autowired private StateRepository repoState;
+    @Autowired private DepartmentRepository repoDpt;
+    @Autowired private RolesRepository repoRol;
+
+    private User owner;
+    private List<Long> expected;
+
+    @BeforeEach
+    void setUp(){
+        owner = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8) + "-page", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+
+        // Tres fechas distintas con dos tareas cada una: el ID deshace el empate
+        LocalDateTime base = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).minusDays(1);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 6; i++) tasks.add(seed(base.plusMinutes(i / 2)));
+
+        expected = tasks.stream()
+                .sorted((a, b) -> a.getDateIni().equals(b.getDateIni())
+                        ? b.getId().compareTo(a.getId())
+                        : b.getDateIni().compareTo(a.getDateIni()))
+                .map(Task::getId).toList();
+    }
+
+    @Test
+    void filterPagesWalkEveryTaskOnceInOrder(){
+        FilterDto filter = new FilterDto();
+        filter.setOwnerID(owner.getId());
+
+        assertEquals(expected, walk(cursor -> taskService.findFilterPage(filter, cursor, 4)));
+        assertEquals(expected, walk(cursor -> taskService.findFilterPage(filter, cursor, 1)));
+    }
+
+    @Test
+    void unfilteredPagesKeepTheSameOrder(){
+        // Hay mas tareas en la base de datos: las de la prueba deben salir en el mismo orden dentro del recorrido
+        List<Long> all = walk(cursor -> taskService.findPage(cursor, 50));
+        assertEquals(all.size(), all.stream().distinct().count());
+        assertEquals(expected, all.stream().filter(expected::contains).toList());
+    }
+
+    @Test
+    void malformedCursorsAndSizesAreRejected(){
+        assertThrows(IllegalArgumentException.class, () -> taskService.findPage("no-es-un-cursor", null));
+        assertThrows(IllegalArgumentException.class, () -> taskService.findFilterPage(new FilterDto(), "no-es-un-cursor", null));
+        assertThrows(IllegalArgumentException.class, () -> taskService.findPage(null, 0));
+    }
+
+    // Recorre todas las paginas siguiendo el cursor de cada una
+    private List<Long> walk(Function<String, PageDto<TaskDto>> pages){
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            PageDto<TaskDto> page = pages.apply(cursor);
+            page.getContent().forEach(task -> ids.add(task.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    private Task seed(LocalDateTime dateIni){
+        Task task = new Task();
+        task.setDescription("Tarea");
+        task.setDateIni(dateIni);
+        task.setAuthor(owner);
+        task.setOwnerUser(owner);
+        task.setDpt(repoDpt.findAll().get(0));
+        task.setState(repoState.findById(1L).orElseThrow());
+        return repoTask.save(task);
+    }
+}
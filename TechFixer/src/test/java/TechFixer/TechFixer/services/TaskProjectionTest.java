@@ -0,0 +1,104 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Process;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.*;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the list endpoints are read straight into DTOs, without loading any entity, and that the
+ * DTOs carry the names of the referenced department, users and state.
+ */
+@SpringBootTest
+class TaskProjectionTest {
+
+    @Autowired private TaskService taskService;
+    @Autowired private ProcessService processService;
+    @Autowired private TaskRepository repoTask;
+    @Autowired private ProcessRepository repoProcess;
+    @Autowired private UserRepository repoUser;
+    @Autowired private StateRepository repoState;
+    @Autowired private DepartmentRepository repoDpt;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private EntityManagerFactory emf;
+
+    private User owner;
+    private Task task;
+    private Process process;
+
+    @BeforeEach
+    void setUp(){
+        owner = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8) + "-dto", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+
+        task = new Task();
+        task.setDescription("Tarea");
+        task.setDateIni(LocalDateTime.now());
+        task.setAuthor(owner);
+        task.setOwnerUser(owner);
+        task.setDpt(repoDpt.findAll().get(0));
+        task.setState(repoState.findById(2L).orElseThrow());
+        task = repoTask.save(task);
+
+        process = new Process();
+        process.setDescription("Proceso");
+        process.setDate(LocalDateTime.now());
+        process.setAuthor(owner);
+        process.setTask(task);
+        process = repoProcess.save(process);
+    }
+
+    @Test
+    void pendingTasksAreReadWithoutEntities(){
+        // Tablero de un encargado nuevo: se carga de la base de datos
+        List<TaskDto> pending = withoutEntities(() -> taskService.findPendingBoard(owner.getId())).values().stream()
+                .flatMap(List::stream).toList();
+
+        assertEquals(1, pending.size());
+        TaskDto dto = pending.get(0);
+        assertEquals(task.getId(), dto.getId());
+        assertEquals(task.getDpt().getName(), dto.getDptName());
+        assertEquals(owner.getUserName(), dto.getOwnerName());
+        assertEquals(owner.getUserName(), dto.getAuthorName());
+        assertEquals(task.getState().getName(), dto.getStateName());
+        assertEquals(1L, dto.getProcessCount());
+        assertEquals("Proceso", dto.getLastProcess().getDescription());
+    }
+
+    @Test
+    void allTasksAndProcessesAreReadWithoutEntities(){
+        TaskDto dto = withoutEntities(() -> taskService.findAll()).stream()
+                .filter(t -> t.getId().equals(task.getId())).findFirst().orElseThrow();
+        assertEquals(1L, dto.getProcessCount());
+
+        ProcessDto processDto = withoutEntities(() -> processService.findAll()).stream()
+                .filter(p -> p.getId().equals(process.getId())).findFirst().orElseThrow();
+        assertEquals(task.getId(), processDto.getTaskID());
+        assertEquals(owner.getUserName(), processDto.getAuthorName());
+    }
+
+    // Ejecuta la lectura y comprueba que Hibernate no ha cargado ninguna entidad
+    private <T> T withoutEntities(Supplier<T> read){
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        T result = read.get();
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+        return result;
+    }
+}
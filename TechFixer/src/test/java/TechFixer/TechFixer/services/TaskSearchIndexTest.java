@@ -0,0 +1,219 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.SearchProperties;
+import TechFixer.TechFixer.dto.FilterDto;
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.event.ProcessCreatedEvent;
+import TechFixer.TechFixer.event.TaskArchivedEvent;
+import TechFixer.TechFixer.repositories.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the text search follows the task and process writes and combines with the filters.
+ */
+@SpringBootTest
+class TaskSearchIndexTest {
+
+    @Autowired private TaskService taskService;
+    @Autowired private ProcessService processService;
+    @Autowired private TaskSearchIndex searchIndex;
+    @Autowired private SearchProperties searchProperties;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private TaskRepository repoTask;
+    @Autowired private StateRepository repoState;
+    @Autowired private DepartmentRepository repoDpt;
+    @Autowired private EntityManager entityManager;
+    @Autowired private TransactionTemplate transaction;
+
+    private User author;
+    private String word;
+
+    @BeforeEach
+    void setUp(){
+        author = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8), "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        // Palabra unica por test para no encontrar tareas de otros tests
+        word = "zq" + UUID.randomUUID().toString().replace("-", "").substring(0, 10);
+    }
+
+    @Test
+    void findsTasksByTheirDescriptionAndProcesses(){
+        Long printer = create("La impresora " + word + " no imprime", 1L);
+        Long network = create("Sin red en la oficina", 2L);
+        processService.save(new ProcessDto(null, "Cable " + word + " cambiado", null, network, author.getId(), null));
+
+        assertEquals(List.of(printer, network).stream().sorted().toList(),
+                ids(taskService.search(word, null, null)).stream().sorted().toList());
+        // Todas las palabras tienen que aparecer
+        assertEquals(List.of(printer), ids(taskService.search(word + " impresora", null, null)));
+        assertEquals(List.of(network), ids(taskService.search(word + " -impresora", null, null)));
+    }
+
+    @Test
+    void combinesWithTheFilter(){
+        create("Portatil " + word, 1L);
+        Long second = create("Portatil " + word, 2L);
+
+        FilterDto filter = new FilterDto();
+        filter.setDepartmentID(2L);
+
+        assertEquals(List.of(second), ids(taskService.search(word, filter, null)));
+    }
+
+    @Test
+    void aSelectiveFilterFindsTasksRankedBelowTheFirstPage(){
+        int maxHits = searchProperties.getMaxHits();
+        searchProperties.setMaxHits(3);
+        try {
+            // Una tarea con muchos procesos que coinciden llena por si sola la primera ventana del indice
+            TaskDto busy = new TaskDto();
+            busy.setDescription(word + " " + word);
+            busy.setAuthorID(author.getId());
+            busy.setDptID(1L);
+            List<ProcessDto> processes = new ArrayList<>();
+            for (int i = 0; i < 20; i++) processes.add(new ProcessDto(null, word + " " + word, null, null, author.getId(), null));
+            busy.setProcessDtos(processes);
+            taskService.saveAll(List.of(busy));
+            for (int i = 0; i < 5; i++) create(word + " " + word, 1L);
+            Long target = create("Revision general del equipo de la sala de reuniones, " + word + " pendiente de piezas", 2L);
+
+            assertFalse(searchIndex.search(word).contains(target));
+
+            FilterDto filter = new FilterDto();
+            filter.setDepartmentID(2L);
+            assertEquals(List.of(target), ids(taskService.search(word, filter, null)));
+            assertEquals(7, taskService.search(word, null, 50).size());
+        } finally {
+            searchProperties.setMaxHits(maxHits);
+        }
+    }
+
+    @Test
+    void followsUpdatesAndDeletes(){
+        Long id = create("Monitor " + word, 1L);
+
+        TaskDto update = taskService.findById(id);
+        update.setDescription("Monitor reparado " + word + "x");
+        update.setProcessDtos(null);
+        taskService.update(update);
+        assertTrue(taskService.search(word, null, null).isEmpty());
+        assertEquals(List.of(id), ids(taskService.search(word + "x", null, null)));
+
+        taskService.delete(id);
+        assertTrue(taskService.search(word + "x", null, null).isEmpty());
+    }
+
+    @Test
+    void rebuildRestoresTheIndex() throws Exception {
+        Long id = create("Teclado " + word, 1L);
+
+        searchIndex.rebuild();
+
+        assertEquals(List.of(id), ids(taskService.search(word, null, null)));
+    }
+
+    @Test
+    void aDriftedIndexIsRebuiltWhenTheApplicationStarts() throws Exception {
+        SearchProperties properties = new SearchProperties();
+        properties.setIndexDir(Files.createTempDirectory("techfixer-search").toString());
+
+        TaskSearchIndex first = index(properties);
+        first.rebuildIfStale();
+        first.close();
+
+        // Una tarea escrita sin pasar por el servicio: el indice en disco ya no coincide con la base de datos
+        Task task = new Task();
+        task.setDescription("Raton " + word);
+        task.setDateIni(LocalDateTime.now());
+        task.setAuthor(author);
+        task.setDpt(repoDpt.findAll().get(0));
+        task.setState(repoState.findById(1L).orElseThrow());
+        Long id = repoTask.save(task).getId();
+
+        TaskSearchIndex second = index(properties);
+        try {
+            second.rebuildIfStale();
+            assertEquals(List.of(id), second.search(word));
+        } finally {
+            second.close();
+        }
+    }
+
+    @Test
+    void aFailedUpdateDoesNotFailTheWrite() throws Exception {
+        SearchProperties properties = new SearchProperties();
+        properties.setIndexDir(Files.createTempDirectory("techfixer-search").toString());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TaskSearchIndex index = new TaskSearchIndex(properties, entityManager, transaction, registry);
+
+        // Con el indice cerrado cualquier actualizacion falla
+        index.close();
+        assertDoesNotThrow(() -> index.onProcessCreated(new ProcessCreatedEvent(List.of(new ProcessCreatedEvent.Created(1L, 1L, "Proceso")))));
+        assertDoesNotThrow(() -> index.onTaskArchived(new TaskArchivedEvent(List.of(1L))));
+        assertEquals(2, registry.get("techfixer.search.failures").counter().count());
+
+        // Cada actualizacion fallida se guarda para reintentarla, sin reconstruir todo el indice
+        assertEquals(2, registry.get("techfixer.search.retries").gauge().value());
+        assertDoesNotThrow(index::commit);
+        assertEquals(2, registry.get("techfixer.search.retries").gauge().value());
+    }
+
+    @Test
+    void aRebuildReplacesTheIndexOnlyWhenComplete() throws Exception {
+        Long id = create("Escaner " + word, 1L);
+        SearchProperties properties = new SearchProperties();
+        properties.setIndexDir(Files.createTempDirectory("techfixer-search").toString());
+
+        // Restos de una reconstruccion interrumpida
+        Path leftover = Files.createDirectories(Path.of(properties.getIndexDir() + "-rebuild"));
+        Files.writeString(leftover.resolve("segments_1"), "a medias");
+
+        TaskSearchIndex index = index(properties);
+        try {
+            index.rebuild();
+            assertEquals(List.of(id), index.search(word));
+            assertFalse(Files.exists(leftover));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    void emptyTextIsRejected(){
+        assertThrows(IllegalArgumentException.class, () -> taskService.search(" ", null, null));
+    }
+
+    private Long create(String description, Long dptID){
+        TaskDto task = new TaskDto();
+        task.setDescription(description);
+        task.setAuthorID(author.getId());
+        task.setDptID(dptID);
+        return taskService.saveAll(List.of(task)).get(0).getId();
+    }
+
+    private TaskSearchIndex index(SearchProperties properties) throws Exception {
+        return new TaskSearchIndex(properties, entityManager, transaction, new SimpleMeterRegistry());
+    }
+
+    private static List<Long> ids(List<TaskDto> tasks){
+        return tasks.stream().map(TaskDto::getId).toList();
+    }
+}
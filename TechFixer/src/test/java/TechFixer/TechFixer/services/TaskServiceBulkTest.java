@@ -0,0 +1,118 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.BulkResultDto;
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the bulk endpoint reports errors per item and writes the rows in batches.
+ */
+@SpringBootTest
+class TaskServiceBulkTest {
+
+    @Autowired private TaskService taskService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private EntityManagerFactory emf;
+
+    private Statistics statistics;
+    private User author;
+
+    @BeforeEach
+    void setUp(){
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        author = repoUser.save(new User(prefix + "-author", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+    }
+
+    @Test
+    void invalidItemsDoNotStopTheBatch(){
+        List<TaskDto> tasks = List.of(
+                newTask("Valida", author.getId(), 1L),
+                newTask("Sin autor", null, 1L),
+                newTask("Departamento inexistente", author.getId(), -1L),
+                newTask("Valida 2", author.getId(), null));
+
+        List<BulkResultDto> results = taskService.saveAll(tasks);
+
+        assertEquals(4, results.size());
+        assertNull(results.get(0).getError());
+        assertNotNull(results.get(0).getId());
+        assertEquals("Autor obligatorio", results.get(1).getError());
+        assertEquals("Departamento no encontrado", results.get(2).getError());
+        assertNull(results.get(3).getError());
+
+        TaskDto saved = taskService.findById(results.get(3).getId());
+        assertEquals("Valida 2", saved.getDescription());
+        assertEquals(1L, saved.getStateID());
+        assertEquals(2, saved.getProcessDtos().size());
+    }
+
+    @Test
+    void updatesAreAppliedOnlyWhenTheWholeItemIsValid(){
+        Long id = taskService.saveAll(List.of(newTask("Original", author.getId(), 1L))).get(0).getId();
+
+        TaskDto badOwner = newTask("Cambiada", author.getId(), 2L);
+        badOwner.setId(id);
+        badOwner.setOwnerID(-1L);
+        TaskDto missing = newTask("No existe", author.getId(), 1L);
+        missing.setId(-1L);
+
+        List<BulkResultDto> results = taskService.saveAll(List.of(badOwner, missing));
+
+        assertEquals("Usuario no existe", results.get(0).getError());
+        assertEquals("La tarea no existe", results.get(1).getError());
+
+        // El departamento es valido pero el encargado no, la tarea tiene que quedar como estaba
+        TaskDto unchanged = taskService.findById(id);
+        assertEquals("Original", unchanged.getDescription());
+        assertEquals(1L, unchanged.getDptID());
+    }
+
+    @Test
+    void rowsAreWrittenInBatches(){
+        List<TaskDto> tasks = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            tasks.add(newTask("Tarea " + i, author.getId(), (long) (i % 3) + 1));
+        }
+
+        statistics.clear();
+        List<BulkResultDto> results = taskService.saveAll(tasks);
+
+        assertTrue(results.stream().allMatch(r -> r.getError() == null));
+        // 500 tareas y 1000 procesos: sin lotes serian mas de 1500 sentencias
+        long count = statistics.getPrepareStatementCount();
+        assertTrue(count <= 100, "Demasiadas sentencias: " + count);
+    }
+
+    private TaskDto newTask(String description, Long authorID, Long dptID){
+        TaskDto task = new TaskDto();
+        task.setDescription(description);
+        task.setAuthorID(authorID);
+        task.setDptID(dptID);
+        task.setProcessDtos(List.of(newProcess("Inicio"), newProcess("Revision")));
+        return task;
+    }
+
+    private ProcessDto newProcess(String description){
+        ProcessDto process = new ProcessDto();
+        process.setDescription(description);
+        return process;
+    }
+}
@@ -0,0 +1,227 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.exception.TaskConflictException;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that concurrent updates of the same task are merged or rejected, never lost, and that processes
+ * added at the same time to a task never conflict.
+ */
+@SpringBootTest
+class TaskServiceConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 20;
+
+    @Autowired private TaskService taskService;
+    @Autowired private ProcessService processService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @PersistenceContext private EntityManager entityManager;
+
+    private User author;
+    private User other;
+
+    @BeforeEach
+    void setUp(){
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        author = repoUser.save(new User(prefix + "-author", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        other = repoUser.save(new User(prefix + "-other", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+    }
+
+    @Test
+    void staleUpdateOfAnotherFieldIsMerged(){
+        TaskDto read = taskService.findById(create("Inicial"));
+
+        TaskDto first = copy(read);
+        first.setDescription("Cambiada");
+        taskService.update(first);
+
+        TaskDto second = copy(read);
+        second.setOwnerID(other.getId());
+        taskService.update(second);
+
+        TaskDto result = taskService.findById(read.getId());
+        assertEquals("Cambiada", result.getDescription());
+        assertEquals(other.getId(), result.getOwnerID());
+        assertTrue(result.getVersion() > read.getVersion() + 1);
+    }
+
+    @Test
+    void staleUpdateOfTheSameFieldIsAConflict(){
+        TaskDto read = taskService.findById(create("Inicial"));
+
+        TaskDto first = copy(read);
+        first.setDescription("Primera");
+        taskService.update(first);
+        Long current = taskService.findById(read.getId()).getVersion();
+
+        TaskDto second = copy(read);
+        second.setDescription("Segunda");
+        TaskConflictException conflict = assertThrows(TaskConflictException.class, () -> taskService.update(second));
+
+        assertEquals(current, conflict.getCurrentVersion());
+        assertEquals("Primera", taskService.findById(read.getId()).getDescription());
+    }
+
+    @Test
+    void concurrentUpdatesAreNotLost() throws Exception {
+        Long id = create("0");
+
+        // Cada hilo incrementa el numero de la descripcion, leyendo la tarea y repitiendo si hay conflicto
+        run(thread -> {
+            for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                while (!increment(id)) {
+                    // Conflicto: se vuelve a leer la tarea
+                }
+            }
+        });
+
+        assertEquals(String.valueOf(THREADS * UPDATES_PER_THREAD), taskService.findById(id).getDescription());
+    }
+
+    @Test
+    void concurrentAppendsDoNotConflict() throws Exception {
+        Long id = create("Inicial");
+        TaskDto read = taskService.findById(id);
+
+        // La mitad de los hilos añade procesos con la version leida al principio y la otra mitad uno a uno
+        run(thread -> {
+            for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                if (thread % 2 == 0) {
+                    TaskDto append = copy(read);
+                    append.setProcessDtos(List.of(new ProcessDto(null, "Proceso " + thread + "-" + i, null, null, author.getId(), null)));
+                    taskService.update(append);
+                } else {
+                    processService.save(new ProcessDto(null, "Proceso " + thread + "-" + i, null, id, author.getId(), null));
+                }
+            }
+        });
+
+        TaskDto result = taskService.findById(id);
+        assertEquals(THREADS * UPDATES_PER_THREAD, result.getProcessDtos().size());
+        assertEquals(read.getVersion() + THREADS * UPDATES_PER_THREAD, result.getVersion());
+        assertEquals("Inicial", result.getDescription());
+    }
+
+    /**
+     * Compares the updates per second of the optimistic path with holding a row lock during the same
+     * read-modify-write, on a pool of tasks that the threads pick at random. Run with {@code mvn test -Pbenchmark}.
+     */
+    @Test
+    @Tag("benchmark")
+    void optimisticVersusPessimisticThroughput() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) ids.add(create("0"));
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        int updates = 200;
+
+        long start = System.nanoTime();
+        run(thread -> {
+            for (int i = 0; i < updates; i++) {
+                Long id = ids.get((thread * 31 + i * 7) % ids.size());
+                while (!increment(id)) {
+                    // Conflicto: se vuelve a leer la tarea
+                }
+            }
+        });
+        long optimistic = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        run(thread -> {
+            for (int i = 0; i < updates; i++) {
+                Long id = ids.get((thread * 31 + i * 7) % ids.size());
+                tx.executeWithoutResult(status -> {
+                    Task task = entityManager.find(Task.class, id, LockModeType.PESSIMISTIC_WRITE);
+                    // El mismo trabajo que hace el camino optimista mientras se tiene la fila bloqueada
+                    TaskDto dto = taskService.findById(id);
+                    task.setDescription(String.valueOf(Long.parseLong(dto.getDescription()) + 1));
+                });
+            }
+        });
+        long pessimistic = (System.nanoTime() - start) / 1_000_000;
+
+        long total = (long) THREADS * updates;
+        System.out.printf("Optimista: %d ms (%.0f act/s), pesimista: %d ms (%.0f act/s)%n",
+                optimistic, total * 1000.0 / optimistic, pessimistic, total * 1000.0 / pessimistic);
+        long sum = ids.stream().mapToLong(id -> Long.parseLong(taskService.findById(id).getDescription())).sum();
+        assertEquals(2 * total, sum);
+    }
+
+    // Lee la tarea y guarda su descripcion incrementada en uno, como haria un cliente con la version leida
+    private boolean increment(Long id){
+        TaskDto task = taskService.findById(id);
+        task.setDescription(String.valueOf(Long.parseLong(task.getDescription()) + 1));
+        task.setProcessDtos(null);
+        try {
+            taskService.update(task);
+            return true;
+        } catch (TaskConflictException | ObjectOptimisticLockingFailureException e) {
+            return false;
+        }
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    private void run(Worker worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int number = thread;
+                futures.add(pool.submit((Callable<Void>) () -> { worker.run(number); return null; }));
+            }
+            for (Future<Void> future : futures) future.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Long create(String description){
+        TaskDto task = new TaskDto();
+        task.setDescription(description);
+        task.setAuthorID(author.getId());
+        task.setOwnerID(author.getId());
+        return taskService.saveAll(List.of(task)).get(0).getId();
+    }
+
+    private static TaskDto copy(TaskDto task){
+        TaskDto copy = new TaskDto();
+        copy.setId(task.getId());
+        copy.setVersion(task.getVersion());
+        copy.setDescription(task.getDescription());
+        copy.setDptID(task.getDptID());
+        copy.setOwnerID(task.getOwnerID());
+        copy.setStateID(task.getStateID());
+        return copy;
+    }
+}
@@ -0,0 +1,162 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.PageDto;
+import TechFixer.TechFixer.dto.ProcessDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Process;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.*;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the task read paths issue a bounded number of SQL statements, whatever the number of
+ * tasks and processes they return.
+ */
+@SpringBootTest
+class TaskServiceQueryCountTest {
+
+    @Autowired private TaskService taskService;
+    @Autowired private TaskRepository repoTask;
+    @Autowired private ProcessRepository repoProcess;
+    @Autowired private UserRepository repoUser;
+    @Autowired private StateRepository repoState;
+    @Autowired private DepartmentRepository repoDpt;
+    @Autowired private RolesRepository repoRol;
+    @Autowired private EntityManagerFactory emf;
+
+    private Statistics statistics;
+    private User owner;
+    private List<User> authors;
+
+    @BeforeEach
+    void setUp(){
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        // Un usuario encargado y varios autores de procesos distintos
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        owner = repoUser.save(new User(prefix + "-owner", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        authors = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            authors.add(repoUser.save(new User(prefix + "-author" + i, "x", repoRol.findById(2L).orElseThrow(), List.of())));
+        }
+    }
+
+    @Test
+    void pendingBoardIssuesSameStatementsForAnyRowCount(){
+        // La primera lectura del tablero de cada encargado lo carga de la base de datos
+        seed(10);
+        long small = statements(() -> taskService.findPendingBoard(owner.getId()));
+
+        owner = repoUser.save(new User(owner.getUserName() + "-large", "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        seed(100);
+        long large = statements(() -> taskService.findPendingBoard(owner.getId()));
+
+        assertEquals(100, taskService.findPendingBoard(owner.getId()).values().stream().mapToInt(List::size).sum());
+        assertEquals(small, large, "El tablero de pendientes no deberia depender del numero de tareas");
+        assertTrue(large <= 3, "Demasiadas sentencias: " + large);
+    }
+
+    @Test
+    void listIssuesSameStatementsForAnyRowCount(){
+        seed(10);
+        long small = statements(() -> taskService.findAll());
+
+        seed(90);
+        long large = statements(() -> taskService.findAll());
+
+        assertEquals(small, large, "El listado no deberia depender del numero de tareas");
+        assertTrue(large <= 3, "Demasiadas sentencias: " + large);
+    }
+
+    @Test
+    void detailLoadsTaskAndProcessesTogether(){
+        Long id = seed(1).get(0).getId();
+
+        long count = statements(() -> taskService.findById(id));
+
+        assertEquals(3, taskService.findById(id).getProcessDtos().size());
+        assertTrue(count <= 2, "Demasiadas sentencias: " + count);
+    }
+
+    @Test
+    void pageLoadsProcessesInBatches(){
+        seed(100);
+
+        long count = statements(() -> taskService.findPage(null, 100));
+
+        // Tareas + un lote de procesos + como mucho un lote de autores/roles
+        assertTrue(count <= 4, "Demasiadas sentencias: " + count);
+    }
+
+    @Test
+    void listsCarryProcessSummaryInsteadOfProcesses(){
+        seed(5);
+
+        TaskDto task = taskService.findPage(null, 5).getContent().get(0);
+
+        assertNull(task.getProcessDtos());
+        assertEquals(3, task.getProcessCount());
+        assertEquals("Proceso 2", task.getLastProcess().getDescription());
+    }
+
+    @Test
+    void processHistoryIsPagedByCursor(){
+        Long id = seed(1).get(0).getId();
+
+        PageDto<ProcessDto> first = taskService.findProcessPage(id, null, 2);
+        long count = statements(() -> taskService.findProcessPage(id, first.getNextCursor(), 2));
+        PageDto<ProcessDto> second = taskService.findProcessPage(id, first.getNextCursor(), 2);
+
+        assertEquals(List.of("Proceso 2", "Proceso 1"), first.getContent().stream().map(ProcessDto::getDescription).toList());
+        assertEquals(List.of("Proceso 0"), second.getContent().stream().map(ProcessDto::getDescription).toList());
+        assertNull(second.getNextCursor());
+        assertTrue(count <= 2, "Demasiadas sentencias: " + count);
+    }
+
+    // Crea tareas pendientes para el encargado, cada una con tres procesos de autores distintos
+    private List<Task> seed(int tasks){
+        List<Task> created = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            Task task = new Task();
+            task.setDescription("Tarea " + i);
+            task.setDateIni(LocalDateTime.now());
+            task.setAuthor(authors.get(i % authors.size()));
+            task.setOwnerUser(owner);
+            task.setDpt(repoDpt.findAll().get(i % 3));
+            task.setState(repoState.findById((long) (i % 3) + 1).orElseThrow());
+            created.add(repoTask.save(task));
+
+            for (int p = 0; p < 3; p++) {
+                Process process = new Process();
+                process.setDescription("Proceso " + p);
+                process.setDate(LocalDateTime.now());
+                process.setAuthor(authors.get((i + p) % authors.size()));
+                process.setTask(task);
+                repoProcess.save(process);
+            }
+        }
+        return created;
+    }
+
+    private long statements(Runnable read){
+        statistics.clear();
+        read.run();
+        return statistics.getPrepareStatementCount();
+    }
+}
@@ -0,0 +1,105 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.dto.StatsDto;
+import TechFixer.TechFixer.dto.StatsGroupDto;
+import TechFixer.TechFixer.dto.TaskDto;
+import TechFixer.TechFixer.entity.Task;
+import TechFixer.TechFixer.entity.User;
+import TechFixer.TechFixer.repositories.ArchivedTaskRepository;
+import TechFixer.TechFixer.repositories.RolesRepository;
+import TechFixer.TechFixer.repositories.TaskRepository;
+import TechFixer.TechFixer.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the statistics rollup follows the task writes and matches a GROUP BY over the tasks.
+ */
+@SpringBootTest
+class TaskStatsServiceTest {
+
+    @Autowired private TaskStatsService statsService;
+    @Autowired private TaskService taskService;
+    @Autowired private TaskRepository repoTask;
+    @Autowired private ArchivedTaskRepository repoArchive;
+    @Autowired private UserRepository repoUser;
+    @Autowired private RolesRepository repoRol;
+
+    private User owner;
+
+    @BeforeEach
+    void setUp(){
+        owner = repoUser.save(new User(UUID.randomUUID().toString().substring(0, 8), "x", repoRol.findById(2L).orElseThrow(), List.of()));
+        statsService.rebuild();
+    }
+
+    @Test
+    void rollupFollowsTaskWrites(){
+        Long first = create(1L);
+        Long second = create(2L);
+        assertEquals(2, ownerGroup().getCount());
+        assertEquals(0, ownerGroup().getResolved());
+
+        // Finalizar una tarea la cuenta como resuelta
+        TaskDto update = taskService.findById(first);
+        update.setStateID(4L);
+        update.setProcessDtos(null);
+        taskService.update(update);
+        assertEquals(1, ownerGroup().getResolved());
+        assertNotNull(ownerGroup().getAvgResolutionSeconds());
+
+        taskService.delete(second);
+        assertEquals(1, ownerGroup().getCount());
+
+        assertEquals(0, statsService.verify());
+    }
+
+    @Test
+    void totalsMatchTheTasksTable(){
+        create(1L);
+        create(null);
+
+        StatsDto stats = statsService.getStats();
+
+        // Las tareas archivadas se siguen contando
+        assertEquals(repoTask.count() + repoArchive.count(), stats.getCount());
+        assertEquals(stats.getCount(), stats.getByDepartment().stream().mapToLong(StatsGroupDto::getCount).sum());
+        assertTrue(stats.getByDepartment().stream().anyMatch(group -> group.getId() == null));
+    }
+
+    @Test
+    void verifyDetectsAndRebuildRepairsDrift(){
+        Long id = create(1L);
+
+        // Escritura directa que no pasa por el servicio
+        Task task = repoTask.findById(id).orElseThrow();
+        task.setDateEnd(LocalDateTime.now().plusHours(1));
+        repoTask.save(task);
+        assertTrue(statsService.verify() > 0);
+
+        statsService.rebuild();
+        assertEquals(0, statsService.verify());
+    }
+
+    private StatsGroupDto ownerGroup(){
+        return statsService.getStats().getByOwner().stream()
+                .filter(group -> owner.getId().equals(group.getId())).findFirst().orElseThrow();
+    }
+
+    private Long create(Long dptID){
+        TaskDto task = new TaskDto();
+        task.setDescription("Tarea");
+        task.setAuthorID(owner.getId());
+        task.setOwnerID(owner.getId());
+        task.setDptID(dptID);
+        return taskService.saveAll(List.of(task)).get(0).getId();
+    }
+}
@@ -0,0 +1,187 @@
+package TechFixer.TechFixer.services;
+
+import TechFixer.TechFixer.config.AuthProperties;
+import TechFixer.TechFixer.dto.AuthRequest;
+import TechFixer.TechFixer.dto.UserDto;
+import TechFixer.TechFixer.repositories.UserRepository;
+import TechFixer.TechFixer.security.JwtFilter;
+import TechFixer.TechFixer.security.JwtUtil;
+import TechFixer.TechFixer.security.LoginUser;
+import TechFixer.TechFixer.security.TokenEpochs;
+import TechFixer.TechFixer.security.VerifiedTokens;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that a token is verified once and then served from the cache of verified tokens, that a token
+ * that does not verify is never cached, that a cached token is still revoked and that a token carries the
+ * epoch read with its user, and measures the cost of the filter per request with and without the cache.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class VerifiedTokensTest {
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private UserService userService;
+    @Autowired private UserRepository repoUser;
+    @Autowired private JwtUtil jwtUtil;
+    @Autowired private TokenEpochs tokenEpochs;
+    @Autowired private CustomUserDetailsService userDetailsService;
+    @Autowired private AuthProperties authProperties;
+    @Autowired private MeterRegistry registry;
+    @Autowired private ObjectMapper objectMapper;
+
+    @Test
+    void aTokenIsVerifiedOnce() throws Exception {
+        String name = UUID.randomUUID().toString().substring(0, 8) + "-token";
+        AuthRequest request = new AuthRequest();
+        request.setUserName(name);
+        request.setPassword("secreto");
+        userService.save(request);
+        String token = login(name);
+
+        double hits = hits();
+        for (int i = 0; i < 3; i++) expect(token, status().isOk());
+        assertTrue(hits() - hits >= 2, "Solo la primera peticion deberia verificar la firma");
+
+        // Un token con la firma cambiada no se acepta ni se guarda
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+        assertThrows(JwtException.class, () -> jwtUtil.parse(tampered));
+        assertThrows(JwtException.class, () -> jwtUtil.parse(tampered));
+
+        // La revocacion se sigue comprobando en cada peticion aunque el token este en la cache
+        UserDto update = new UserDto();
+        update.setId(repoUser.findByUserName(name).orElseThrow().getId());
+        update.setPassword("nuevo");
+        userService.update(update);
+        expect(token, status().isForbidden());
+    }
+
+    @Test
+    void aRevocationBetweenLoadingTheUserAndSigningRevokesTheToken() throws Exception {
+        String name = UUID.randomUUID().toString().substring(0, 8) + "-epoch";
+        AuthRequest request = new AuthRequest();
+        request.setUserName(name);
+        request.setPassword("secreto");
+        userService.save(request);
+
+        // El token lleva la epoca leida con el usuario, no la de cuando se firma
+        LoginUser user = userDetailsService.loadUserByUsername(name);
+        tokenEpochs.revoke(user.getId());
+        String token = jwtUtil.generateToken(user, user.getId(), user.getEpoch());
+        expect(token, status().isForbidden());
+
+        expect(login(name), status().isOk());
+    }
+
+    /**
+     * Runs 64 distinct tokens through the filter from 32 threads, first verifying every token on each
+     * request and then with the cache, and prints the microseconds per request. Run with
+     * {@code mvn test -Pbenchmark}.
+     */
+    @Test
+    @Tag("benchmark")
+    void filterOverheadPerRequest() throws Exception {
+        List<String> tokens = new ArrayList<>();
+        for (long userId = 0; userId < 64; userId++) {
+            User user = new User("bench" + userId, "", List.of(new SimpleGrantedAuthority("ROLE_USER")));
+            tokens.add(jwtUtil.generateToken(user, -1_000 - userId, tokenEpochs.current(-1_000 - userId)));
+        }
+
+        // Sin cache: cada peticion verifica la firma y lee el JSON del token
+        VerifiedTokens uncached = new VerifiedTokens(authProperties, new SimpleMeterRegistry()) {
+            @Override
+            public Claims get(String token, Function<String, Claims> verify){
+                return verify.apply(token);
+            }
+        };
+        JwtFilter withoutCache = new JwtFilter(new JwtUtil(tokenEpochs, uncached), userDetailsService, authProperties);
+        JwtFilter withCache = new JwtFilter(new JwtUtil(tokenEpochs, new VerifiedTokens(authProperties, new SimpleMeterRegistry())),
+                userDetailsService, authProperties);
+
+        for (JwtFilter filter : List.of(withoutCache, withCache)) run(filter, tokens, 2_000);
+        double before = run(withoutCache, tokens, 20_000);
+        double after = run(withCache, tokens, 20_000);
+        System.out.printf("Filtro JWT con 32 hilos: %.1f us por peticion verificando la firma, %.1f us con la cache%n", before, after);
+    }
+
+    // Microsegundos por peticion con 32 hilos pasando los tokens por el filtro
+    private double run(JwtFilter filter, List<String> tokens, int requestsPerThread) throws Exception {
+        int threads = 32;
+        FilterChain chain = (request, response) -> {
+            if (SecurityContextHolder.getContext().getAuthentication() == null) throw new IllegalStateException("Token no aceptado");
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/state/getAll");
+                        request.addHeader("Authorization", "Bearer " + tokens.get((offset + i) % tokens.size()));
+                        try {
+                            filter.doFilter(request, new MockHttpServletResponse(), chain);
+                        } finally {
+                            SecurityContextHolder.clearContext();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+            return (System.nanoTime() - start) / 1e3 / ((double) threads * requestsPerThread);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private double hits(){
+        return registry.get("cache.gets").tag("cache", "tokens").tag("result", "hit").functionCounter().count();
+    }
+
+    private void expect(String token, ResultMatcher result) throws Exception {
+        mockMvc.perform(get("/api/state/getAll").header("Authorization", "Bearer " + token)).andExpect(result);
+    }
+
+    private String login(String name) throws Exception {
+        String body = mockMvc.perform(post("/api/user/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("userName", name, "password", "secreto"))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body).get("token").asText();
+    }
+}
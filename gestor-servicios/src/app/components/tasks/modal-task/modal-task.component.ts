@@ -27,6 +27,9 @@ export class ModalTaskComponent implements OnInit{
   seeNewProcess: boolean = false;
   seeButtonNewProcess: boolean = true;
   expandedProcesses: boolean[] = [];
+  // Historial de procesos de la tarea, se carga por paginas
+  history: Process[] = [];
+  nextProcessCursor: string | null = null;
   
   constructor(private api: ApiService, private authService: AuthService, private router: Router, private tasksEvent: TaskEventsService){};
 
@@ -71,8 +74,8 @@ export class ModalTaskComponent implements OnInit{
         this.formTask.disable();
       }
 
-      // Inicializar el array de procesos expandidos
-      this.expandedProcesses = new Array(this.taskToUpdate?.processDtos?.length).fill(false);
+      // Los listados solo traen el ultimo proceso, el historial se pide por paginas
+      this.loadProcesses();
     }
     console.log(this.taskToUpdate);
 
@@ -88,6 +91,20 @@ export class ModalTaskComponent implements OnInit{
 
   });
 
+  /** Carga la siguiente pagina del historial de procesos de la tarea */
+  loadProcesses(): void {
+    if (!this.taskToUpdate?.id) return;
+
+    this.api.getTaskProcesses(this.taskToUpdate.id, this.nextProcessCursor).subscribe({
+      next: (res) => {
+        this.history.push(...res.content);
+        this.expandedProcesses.push(...new Array(res.content.length).fill(false));
+        this.nextProcessCursor = res.nextCursor;
+      },
+      error: (err) => {console.log(err);}
+    });
+  }
+
   /** Método para alternar la expansión de un proceso */
   toggleProcessExpansion(index: number): void {
     if (this.expandedProcesses[index] !== undefined) {
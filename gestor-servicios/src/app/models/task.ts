@@ -14,5 +14,10 @@ export interface Task {
     dateEnd: Date | null;
     description: string;
     processDtos: Process[] | null;
+    // En los listados no vienen los procesos, solo cuantos hay y el mas reciente
+    processCount?: number | null;
+    lastProcess?: Process | null;
+    // Version de la tarea en el servidor, se devuelve al actualizar para detectar cambios de otros usuarios
+    version?: number | null;
 
 }
@@ -60,9 +60,15 @@ export class ApiService {
 
   /** ESTADOS */
 
-  /** Obtener todos los estados de bd */
+  /** Obtener todos los estados de bd, con el numero de tareas de cada uno */
   getStates(): Observable<any> {
-    return this.http.get(`${this.url}/state/getAll`, { headers: this.getHeaders() });
+    return this.http.get(`${this.url}/state/getAll`, { params: { summary: true }, headers: this.getHeaders() });
+  }
+
+  /** Obtener una pagina de IDs de las tareas de un estado, sin cursor la primera */
+  getStateTasks(stateId: number, cursor?: string): Observable<any> {
+    const params: any = cursor ? { cursor: cursor } : {};
+    return this.http.get(`${this.url}/state/${stateId}/tasks`, { params: params, headers: this.getHeaders() });
   }
 
   /** Crear estado */
@@ -82,9 +88,26 @@ export class ApiService {
 
   /** DEPARTAMENTOS */
 
-  /** Obtener todos los departamentos de bd */
+  /** Obtener todos los departamentos de bd, con el numero de usuarios y tareas de cada uno */
   getDepartment(): Observable<any> {
-    return this.http.get(`${this.url}/department/getAll`, { headers: this.getHeaders() });
+    return this.http.get(`${this.url}/department/getAll`, { params: { summary: true }, headers: this.getHeaders() });
+  }
+
+  /** Sustituir los usuarios de un departamento por los indicados */
+  updateDepartmentMembers(dptId: number, userIds: number[]): Observable<any> {
+    return this.http.put(`${this.url}/department/${dptId}/members`, userIds, { headers: this.getHeaders() });
+  }
+
+  /** Obtener una pagina de IDs de los usuarios de un departamento, sin cursor la primera */
+  getDepartmentUsers(dptId: number, cursor?: string): Observable<any> {
+    const params: any = cursor ? { cursor: cursor } : {};
+    return this.http.get(`${this.url}/department/${dptId}/users`, { params: params, headers: this.getHeaders() });
+  }
+
+  /** Obtener una pagina de IDs de las tareas de un departamento, sin cursor la primera */
+  getDepartmentTasks(dptId: number, cursor?: string): Observable<any> {
+    const params: any = cursor ? { cursor: cursor } : {};
+    return this.http.get(`${this.url}/department/${dptId}/tasks`, { params: params, headers: this.getHeaders() });
   }
 
   /** Crear departamento */
@@ -120,6 +143,17 @@ export class ApiService {
     return this.http.post(`${this.url}/task/update`, task, {responseType: 'text', headers: this.getHeaders()});
   }
 
+  /** Obtener una pagina del historial de procesos de una tarea, del mas reciente al mas antiguo */
+  getTaskProcesses(taskId: number, cursor: string | null): Observable<any> {
+    const params: any = cursor ? { cursor: cursor } : {};
+    return this.http.get(`${this.url}/task/${taskId}/processes`, { params: params, headers: this.getHeaders() });
+  }
+
+  /** Obtener las tareas cambiadas y borradas desde la ultima marca de agua (0 para todas) */
+  getTaskChanges(since: number): Observable<any> {
+    return this.http.get(`${this.url}/task/changes`, { params: { since: since }, headers: this.getHeaders() });
+  }
+
   /** Obtener tareas filtradas */
   taskFilter(filterData: Filter): Observable<any>{
     return this.http.post(`${this.url}/task/filter`, filterData, { headers: this.getHeaders() })